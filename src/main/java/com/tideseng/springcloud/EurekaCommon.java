@@ -203,6 +203,7 @@ public class EurekaCommon {
          *          {@link gMap.put(registrant.getId(), lease)}更新map中的实例映射
          *          {@link AbstractInstanceRegistry#invalidateCache(String, String, String)}让二级缓存失效 >> {@link ResponseCacheImpl#invalidate(String, String, String)}让二级缓存失效 >> {@link ResponseCacheImpl#invalidate(Key...)}让二级缓存失效
          *          {@link ReentrantReadWriteLock.ReadLock#unlock()}读锁释放锁
+         *      实例较多时可使用{@link com.tideseng.springcloud.sample.eureka.EnableStripedInstanceRegistry}按应用分段存储，续约不加锁，注册只锁定所在的应用
          */
         public void register() throws Exception {
             EurekaClientAutoConfiguration eurekaClientAutoConfiguration = new EurekaClientAutoConfiguration(null);
@@ -237,6 +238,7 @@ public class EurekaCommon {
          *                  {@link AbstractInstanceRegistry#getOverriddenInstanceStatus(InstanceInfo, Lease, boolean)}获取服务端实例的status（2.当服务端的instance的status为UNKONW时返回404让客户端重新发起注册）
          *                  {@link MeasuredRate#increment()}设置每分钟的续约次数
          *                  {@link Lease#renew()}更新lease续约时间
+         *              {@link com.tideseng.springcloud.sample.eureka.StripedInstanceRegistry#renew(String, String, boolean)}没有覆盖状态时跳过覆盖状态规则，续约时间存储在long数组中，续约只做一次CAS
          *              {@link PeerAwareInstanceRegistryImpl#replicateToPeers(PeerAwareInstanceRegistryImpl.Action, String, String, InstanceInfo, InstanceStatus, boolean)}服务同步逻辑【详见服务同步{@link EurekaServer#syncUp()}】
          *          {@link InstanceResource#validateDirtyTimestamp(Long, boolean)}验证客户端lastDirtyTimestamp和本地lastDirtyTimestamp
          *              {@link AbstractInstanceRegistry#getInstanceByAppAndId(String, String, boolean)}根据应用名和实例ID获取本地instance实例信息
@@ -279,6 +281,7 @@ public class EurekaCommon {
          *      {@link Key#Key(EntityType, String, KeyType, Version, EurekaAccept, String[])}构建获取全量缓存key（ALL_APPS）
          *      {@link ResponseCacheImpl#getGZIP(Key)}从三级缓存中获取全量缓存
          *      {@link AbstractInstanceRegistry#getApplications()}当二、三及缓存不存在时从一级缓存获取全量信息
+         *      使用{@link com.tideseng.springcloud.sample.eureka.EnableStripedInstanceRegistry}时全量信息由按应用预先编码、压缩的分片拼接而成，注册表变化时只重新编码发生变化的应用
          *  {@link ApplicationsResource#getContainerDifferential(String, String, String, String, UriInfo, String)}增量刷新请求
          *      {@link Key#Key(EntityType, String, KeyType, Version, EurekaAccept, String[])}构建获取增量缓存key（ALL_APPS_DELTA ）
          *      {@link ResponseCacheImpl#getGZIP(Key)}从三级缓存中获取全量缓存
@@ -294,11 +297,14 @@ public class EurekaCommon {
             // 服务上线最长感知时间是90s（服务延迟）
             // readOnly是30s同步一次、client每30sfetch一次、ribbon每30s更新一次serverList
             // responseCacheUpdateIntervalMs、registryFetchIntervalSeconds、serverListRefreshInterval
+            // 服务端使用EnableStripedInstanceRegistry、客户端使用EnableRegistryWatch时，注册表变化后通过长轮询立即推送给客户端并更新Ribbon的服务列表（亚秒级），定时获取作为兜底
+            // 此时建议eureka.server.use-read-only-response-cache=false，避免定时获取拿到只读缓存中旧的增量
 
             // 服务下线感知
             // 正常下线同上
             // 非正常下线无限趋近于240s
             // server 每60s清理超过90s未续约得服务 60 + 90 + 90
+            // 使用EnableStripedInstanceRegistry时按过期时间放入时间轮，每500ms只处理到期的租约，不再等待60s的全量扫描
         }
 
         /**
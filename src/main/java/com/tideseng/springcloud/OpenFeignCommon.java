@@ -124,6 +124,18 @@ public class OpenFeignCommon {
      * 二、配置属性
      *      feign.okhttp.enabled=true
      *      feign.httpclient.enabled=false
+     *      或使用{@link com.tideseng.springcloud.sample.openfeign.pool.EnablePooledFeignClient}开启按服务隔离的Apache HttpClient连接池（连接数、超时时间、空闲回收可按服务配置，并暴露连接池指标）
+     * 三、请求压缩（Body体较大且重复度高时，如跨机房带宽受限）
+     *      客户端{@link com.tideseng.springcloud.sample.openfeign.compress.RequestCompressionInterceptor}压缩Body体
+     *      服务端{@link com.tideseng.springcloud.sample.openfeign.compress.RequestDecompressionFilter}透明解压
+     * 四、合并相同的并发请求（热点数据被大量并发查询时）
+     *      方法上添加{@link com.tideseng.springcloud.sample.openfeign.coalesce.SingleFlight}，并在@FeignClient的configuration中指定{@link com.tideseng.springcloud.sample.openfeign.coalesce.SingleFlightFeignClientConfiguration}
+     * 五、合并逐条查询（循环中按ID逐条调用的N+1问题）
+     *      单条查询方法上添加{@link com.tideseng.springcloud.sample.openfeign.dispatch.Batched}指定批量查询方法，多个调用合并为一次批量查询
+     * 六、响应缓存（很少变化但被频繁查询的基础数据）
+     *      在@FeignClient的configuration中指定{@link com.tideseng.springcloud.sample.openfeign.cache.ResponseCachingFeignClientConfiguration}，缓存GET请求及{@link com.tideseng.springcloud.sample.openfeign.cache.FeignCacheable}修饰的方法
+     * 七、重试预算及对冲请求（降低长尾延迟）
+     *      在@FeignClient的configuration中指定{@link com.tideseng.springcloud.sample.ribbon.retry.HedgingFeignClientConfiguration}，{@link com.tideseng.springcloud.sample.ribbon.retry.Hedged}修饰幂等方法
      */
     public void optimize() {
 
@@ -118,7 +118,7 @@ public class RibbonCommon {
      *              {@link AvailabilityPredicate#AvailabilityPredicate(IRule)}
      *              {@link ZoneAvoidanceRule#createCompositePredicate(ZoneAvoidancePredicate, AvailabilityPredicate)}
      *      初始化{@link IPing}负载均衡探活策略
-     *          {@link DummyPing}默认的ping为空操作
+     *          {@link DummyPing}默认的ping为空操作（故障实例要等Eureka剔除后才不再被选中，可使用{@link com.tideseng.springcloud.sample.ribbon.EnablePeakEwmaLoadBalancer}根据请求结果摘除异常实例）
      *      初始化{@link ServerList}服务列表
      *          {@link ConfigurationBasedServerList}默认从配置文件中获取服务地址列表
      *      初始化{@link ServerListUpdater}服务列表更新策略
@@ -157,6 +157,7 @@ public class RibbonCommon {
         RibbonClientConfiguration ribbonClientConfiguration = new RibbonClientConfiguration();
         /**
          * 负载均衡策略有：{@link RandomRule}随机负载均衡、{@link RoundRobinRule}轮询负载均衡、{@link WeightedResponseTimeRule}加权响应时间负载均衡、{@link ZoneAvoidanceRule}区域感知轮询负载均衡等，默认为{@link ZoneAvoidanceRule}
+         * 轮询不感知实例的响应时间，可使用{@link com.tideseng.springcloud.sample.ribbon.EnablePeakEwmaLoadBalancer}开启基于响应时间及进行中请求数的二选一负载均衡（覆盖ribbonRule）
          */
         ribbonClientConfiguration.ribbonRule(null);
         ILoadBalancer loadBalancer = (ILoadBalancer) object;
@@ -174,6 +175,8 @@ public class RibbonCommon {
      *                  {@link AbstractServerPredicate#chooseRoundRobinAfterFiltering(List, Object)}在过滤后的服务列表中进行轮询
      *                      {@link AbstractServerPredicate#getEligibleServers(List, Object)}根据Object过滤出符合条件的服务列表
      *                      {@link AbstractServerPredicate#incrementAndGetModulo(int)}轮询算法
+     * 每次选择都会过滤服务列表并创建新的List，高并发下可使用{@link com.tideseng.springcloud.sample.ribbon.SnapshotLoadBalancer}在服务列表变化时预先生成快照
+     * hint默认为"default"，可传入请求的属性（如用户ID）配合{@link com.tideseng.springcloud.sample.ribbon.hash.ConsistentHashRule}使相同键的请求路由到同一个实例
      */
     public Server getServer(ILoadBalancer loadBalancer, Object hint) throws Exception {
         // 下列对象都在RibbonClientConfiguration中进行创建
@@ -216,6 +219,13 @@ public class RibbonCommon {
 
     }
 
+    /**
+     * 重试
+     * Ribbon通过{@link com.netflix.client.RequestSpecificRetryHandler}按MaxAutoRetries（同一实例）、MaxAutoRetriesNextServer（其它实例）重试，
+     * 引入spring-retry后由RetryTemplate完成重试；重试次数固定，服务整体异常时每个请求都会重试，流量成倍放大
+     *      {@link com.tideseng.springcloud.sample.ribbon.retry.HedgingFeignClientConfiguration}为每个服务设置重试预算，重试及对冲请求都从预算中取出令牌
+     *      {@link com.tideseng.springcloud.sample.ribbon.retry.Hedged}修饰的幂等方法超过响应时间分位数仍未返回时，向另一个实例发起对冲请求
+     */
     public void RetryTemplate() throws Exception {
 
     }
@@ -0,0 +1,136 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.eureka.lease.Lease;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单个应用的租约表（注册表的一个分段）
+ *      续约只读取租约表，不加锁（续约时间存储在{@link LeaseSlotTable}中）
+ *      注册、下线、状态变更以该对象加锁（只与同一应用的写操作互斥），修改后递增版本号
+ *      读取时返回按版本号缓存的不可变Application快照，版本号未变化时不再重新构建
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+final class ApplicationLeases {
+
+    private final String name;
+
+    private final ConcurrentHashMap<String, SlottedLease> leases = new ConcurrentHashMap<>();
+
+    /** 只在持有该对象的锁时修改 */
+    private volatile long version;
+
+    private volatile Snapshot snapshot = new Snapshot(-1, null);
+
+    ApplicationLeases(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    SlottedLease get(String id) {
+        return leases.get(id);
+    }
+
+    Collection<SlottedLease> leases() {
+        return leases.values();
+    }
+
+    int size() {
+        return leases.size();
+    }
+
+    /**
+     * 需持有该对象的锁
+     */
+    SlottedLease put(String id, SlottedLease lease) {
+        return leases.put(id, lease);
+    }
+
+    /**
+     * 需持有该对象的锁
+     */
+    SlottedLease remove(String id) {
+        return leases.remove(id);
+    }
+
+    /**
+     * 租约表或实例信息已修改，需持有该对象的锁
+     */
+    void modified() {
+        version++;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * 应用的快照，没有实例时返回null
+     * 返回的Application被多个请求共享，不能修改
+     * @return
+     */
+    Application snapshot() {
+        Snapshot current = snapshot;
+        long version = this.version;
+        if (current.version == version) {
+            return current.application;
+        }
+        Application application = null;
+        for (SlottedLease lease : leases.values()) {
+            if (application == null) {
+                application = new Application(name);
+            }
+            application.addInstance(decorate(lease));
+        }
+        // 构建期间有修改时不缓存，下次读取重新构建
+        if (this.version == version) {
+            snapshot = new Snapshot(version, application);
+        }
+        return application;
+    }
+
+    /**
+     * 与AbstractInstanceRegistry#decorateInstanceInfo一致，将租约的时间信息设置到实例信息中
+     */
+    static InstanceInfo decorate(Lease<InstanceInfo> lease) {
+        InstanceInfo info = lease.getHolder();
+        int renewalInterval = LeaseInfo.DEFAULT_LEASE_RENEWAL_INTERVAL;
+        int leaseDuration = LeaseInfo.DEFAULT_LEASE_DURATION;
+        if (info.getLeaseInfo() != null) {
+            renewalInterval = info.getLeaseInfo().getRenewalIntervalInSecs();
+            leaseDuration = info.getLeaseInfo().getDurationInSecs();
+        }
+        info.setLeaseInfo(LeaseInfo.Builder.newBuilder()
+                .setRegistrationTimestamp(lease.getRegistrationTimestamp())
+                .setRenewalTimestamp(lease.getLastRenewalTimestamp())
+                .setServiceUpTimestamp(lease.getServiceUpTimestamp())
+                .setRenewalIntervalInSecs(renewalInterval)
+                .setDurationInSecs(leaseDuration)
+                .setEvictionTimestamp(lease.getEvictionTimestamp())
+                .build());
+        info.setIsCoordinatingDiscoveryServer();
+        return info;
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final Application application;
+
+        Snapshot(long version, Application application) {
+            this.version = version;
+            this.application = application;
+        }
+
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.*;
+
+/**
+ * 开启按应用分段的Eureka Server注册表（{@link StripedInstanceRegistry}），与@EnableEurekaServer一起使用
+ * 可通过application.eureka.striped-registry.enabled=false关闭
+ * 适用于实例数较多（数千个）的注册中心，网络抖动后大量实例同时续约、重新注册时注册表不再成为瓶颈
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@Import(EnableStripedInstanceRegistryImportSelector.class)
+public @interface EnableStripedInstanceRegistry {
+}
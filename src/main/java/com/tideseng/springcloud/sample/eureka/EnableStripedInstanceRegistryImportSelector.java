@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import org.springframework.cloud.commons.util.SpringFactoryImportSelector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class EnableStripedInstanceRegistryImportSelector extends SpringFactoryImportSelector<EnableStripedInstanceRegistry> {
+
+    @Override
+    protected boolean isEnabled() {
+        return getEnvironment().getProperty("application.eureka.striped-registry.enabled", Boolean.class, Boolean.TRUE);
+    }
+
+}
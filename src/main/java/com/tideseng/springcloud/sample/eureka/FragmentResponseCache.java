@@ -0,0 +1,339 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.EurekaAccept;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.EurekaServerConfig;
+import com.netflix.eureka.registry.Key;
+import com.netflix.eureka.registry.ResponseCache;
+import com.netflix.eureka.registry.ResponseCacheImpl;
+import com.netflix.eureka.resources.ServerCodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 按应用分片的全量注册表响应缓存，包装{@link ResponseCacheImpl}
+ *      每种编码（JSON/XML、full/compact）的每个应用缓存一个预先编码的分片及其gzip member，分片按应用的版本号失效，只有发生过变化的应用需要重新编码、压缩
+ *      全量注册表的响应由头部、各应用分片、尾部拼接而成，gzip响应直接拼接各分片的gzip member（RFC 1952允许多个member，GZIPInputStream可直接解压）
+ *      拼接结果按注册表的修改计数缓存，注册表没有变化时直接返回
+ *      分片及拼接结果超过responseCacheAutoExpirationInSeconds后重新编码（与原实现一致，刷新实例的续约时间）
+ * 只处理本地区域的全量注册表（ALL_APPS），增量、单个应用、VIP及包含其它区域的请求仍由{@link ResponseCacheImpl}处理
+ * @author jiahuan
+ * @create 2022/7/8
+ */
+final class FragmentResponseCache implements ResponseCache {
+
+    private final ResponseCache delegate;
+
+    private final StripedInstanceRegistry registry;
+
+    private final EurekaServerConfig serverConfig;
+
+    private final ServerCodecs serverCodecs;
+
+    /** 按KeyType、EurekaAccept */
+    private final Format[] formats = new Format[Key.KeyType.values().length * EurekaAccept.values().length];
+
+    FragmentResponseCache(ResponseCache delegate, StripedInstanceRegistry registry, EurekaServerConfig serverConfig, ServerCodecs serverCodecs) {
+        this.delegate = delegate;
+        this.registry = registry;
+        this.serverConfig = serverConfig;
+        this.serverCodecs = serverCodecs;
+        for (Key.KeyType type : Key.KeyType.values()) {
+            for (EurekaAccept accept : EurekaAccept.values()) {
+                formats[index(type, accept)] = new Format(type, accept);
+            }
+        }
+    }
+
+    @Override
+    public String get(Key key) {
+        Assembly assembly = assemble(key);
+        return assembly != null ? assembly.text() : delegate.get(key);
+    }
+
+    @Override
+    public byte[] getGZIP(Key key) {
+        Assembly assembly = assemble(key);
+        return assembly != null ? assembly.gzip() : delegate.getGZIP(key);
+    }
+
+    /**
+     * 分片按应用的版本号失效，只需让原缓存失效
+     */
+    @Override
+    public void invalidate(String appName, String vipAddress, String secureVipAddress) {
+        delegate.invalidate(appName, vipAddress, secureVipAddress);
+    }
+
+    @Override
+    public AtomicLong getVersionDelta() {
+        return delegate.getVersionDelta();
+    }
+
+    @Override
+    public AtomicLong getVersionDeltaWithRegions() {
+        return delegate.getVersionDeltaWithRegions();
+    }
+
+    /**
+     * @return 不是本地区域的全量注册表请求或无法按应用拆分时返回null，由原缓存处理
+     */
+    private Assembly assemble(Key key) {
+        if (key.getEntityType() != Key.EntityType.Application || !ResponseCacheImpl.ALL_APPS.equals(key.getName())
+                || key.hasRegions() || registry.includesRemoteRegions()) {
+            return null;
+        }
+        try {
+            return formats[index(key.getType(), key.getEurekaAccept())].assemble();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private long expirationMs() {
+        return serverConfig.getResponseCacheAutoExpirationInSeconds() * 1000L;
+    }
+
+    private static int index(Key.KeyType type, EurekaAccept accept) {
+        return type.ordinal() * EurekaAccept.values().length + accept.ordinal();
+    }
+
+    private static byte[] gzip(String payload) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(payload.length() / 4, 32));
+        try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+            out.write(payload.getBytes(StandardCharsets.UTF_8));
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * 一种编码的分片及拼接结果
+     */
+    private final class Format {
+
+        private final Key.KeyType type;
+
+        private final EurekaAccept accept;
+
+        private final ConcurrentHashMap<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+        private volatile PayloadFraming framing;
+
+        private volatile boolean unsupported;
+
+        private byte[] gzipSeparator;
+
+        private volatile Assembly assembly;
+
+        Format(Key.KeyType type, EurekaAccept accept) {
+            this.type = type;
+            this.accept = accept;
+        }
+
+        Assembly assemble() throws IOException {
+            Assembly current = assembly;
+            long modificationCount = registry.getModificationCount();
+            if (current != null && current.isValid(modificationCount, System.currentTimeMillis())) {
+                return current;
+            }
+            synchronized (this) {
+                current = assembly;
+                if (current != null && current.isValid(modificationCount, System.currentTimeMillis())) {
+                    return current;
+                }
+                if (unsupported || !initFraming()) {
+                    return null;
+                }
+                current = build(modificationCount);
+                assembly = current;
+                return current;
+            }
+        }
+
+        private boolean initFraming() throws IOException {
+            if (framing == null) {
+                PayloadFraming created = PayloadFraming.of(serverCodecs.getEncoder(type, accept));
+                if (created == null) {
+                    unsupported = true;
+                    return false;
+                }
+                gzipSeparator = created.separator().isEmpty() ? new byte[0] : gzip(created.separator());
+                framing = created;
+            }
+            return true;
+        }
+
+        /**
+         * 需持有该对象的锁
+         * @return 有应用无法编码时返回null
+         */
+        private Assembly build(long modificationCount) throws IOException {
+            long now = System.currentTimeMillis();
+            long expirationMs = expirationMs();
+            List<Fragment> parts = new ArrayList<>();
+            Map<String, AtomicInteger> instanceCountMap = new TreeMap<>();
+            Set<String> names = new HashSet<>();
+            for (ApplicationLeases leases : registry.applicationLeases()) {
+                Fragment fragment = fragments.get(leases.getName());
+                long version = leases.getVersion();
+                if (fragment == null || fragment.version != version || now - fragment.encodedAt >= expirationMs) {
+                    Application application = leases.snapshot();
+                    if (application == null) {
+                        continue;
+                    }
+                    fragment = encode(version, now, application);
+                    if (fragment == null) {
+                        return null;
+                    }
+                    fragments.put(leases.getName(), fragment);
+                }
+                names.add(leases.getName());
+                parts.add(fragment);
+                for (Map.Entry<String, Integer> count : fragment.instanceCounts.entrySet()) {
+                    instanceCountMap.computeIfAbsent(count.getKey(), k -> new AtomicInteger()).addAndGet(count.getValue());
+                }
+            }
+            // 已删除的应用
+            fragments.keySet().retainAll(names);
+            return new Assembly(framing, gzipSeparator, parts, Applications.getReconcileHashCode(instanceCountMap), modificationCount, now + expirationMs);
+        }
+
+        private Fragment encode(long version, long now, Application application) throws IOException {
+            String payload = framing.encode(application);
+            if (payload == null) {
+                return null;
+            }
+            Map<String, Integer> instanceCounts = new HashMap<>();
+            for (InstanceInfo instanceInfo : application.getInstancesAsIsFromEureka()) {
+                instanceCounts.merge(instanceInfo.getStatus().name(), 1, Integer::sum);
+            }
+            return new Fragment(version, now, payload, gzip(payload), instanceCounts);
+        }
+
+    }
+
+    /**
+     * 单个应用预先编码的分片
+     */
+    private static final class Fragment {
+
+        private final long version;
+
+        private final long encodedAt;
+
+        private final String payload;
+
+        private final byte[] gzip;
+
+        /** 各状态的实例数，用于计算全量注册表的hashcode */
+        private final Map<String, Integer> instanceCounts;
+
+        Fragment(long version, long encodedAt, String payload, byte[] gzip, Map<String, Integer> instanceCounts) {
+            this.version = version;
+            this.encodedAt = encodedAt;
+            this.payload = payload;
+            this.gzip = gzip;
+            this.instanceCounts = instanceCounts;
+        }
+
+    }
+
+    /**
+     * 拼接结果，文本及gzip在首次获取时拼接
+     */
+    private static final class Assembly {
+
+        private final PayloadFraming framing;
+
+        private final byte[] gzipSeparator;
+
+        private final List<Fragment> parts;
+
+        private final String appsHashCode;
+
+        private final long modificationCount;
+
+        private final long expiresAt;
+
+        private volatile String text;
+
+        private volatile byte[] gzip;
+
+        Assembly(PayloadFraming framing, byte[] gzipSeparator, List<Fragment> parts, String appsHashCode, long modificationCount, long expiresAt) {
+            this.framing = framing;
+            this.gzipSeparator = gzipSeparator;
+            this.parts = parts;
+            this.appsHashCode = appsHashCode;
+            this.modificationCount = modificationCount;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isValid(long modificationCount, long now) {
+            return this.modificationCount == modificationCount && now < expiresAt;
+        }
+
+        String text() {
+            String result = text;
+            if (result == null) {
+                String separator = framing.separator();
+                String head = framing.head(appsHashCode);
+                String tail = framing.tail(appsHashCode);
+                int length = head.length() + tail.length() + separator.length() * parts.size();
+                for (Fragment part : parts) {
+                    length += part.payload.length();
+                }
+                StringBuilder builder = new StringBuilder(length);
+                builder.append(head);
+                for (int i = 0; i < parts.size(); i++) {
+                    if (i > 0) {
+                        builder.append(separator);
+                    }
+                    builder.append(parts.get(i).payload);
+                }
+                result = builder.append(tail).toString();
+                text = result;
+            }
+            return result;
+        }
+
+        byte[] gzip() {
+            byte[] result = gzip;
+            if (result == null) {
+                try {
+                    byte[] head = FragmentResponseCache.gzip(framing.head(appsHashCode));
+                    byte[] tail = FragmentResponseCache.gzip(framing.tail(appsHashCode));
+                    int length = head.length + tail.length + gzipSeparator.length * Math.max(parts.size() - 1, 0);
+                    for (Fragment part : parts) {
+                        length += part.gzip.length;
+                    }
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream(length);
+                    bos.write(head);
+                    for (int i = 0; i < parts.size(); i++) {
+                        if (i > 0) {
+                            bos.write(gzipSeparator);
+                        }
+                        bos.write(parts.get(i).gzip);
+                    }
+                    bos.write(tail);
+                    result = bos.toByteArray();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                gzip = result;
+            }
+            return result;
+        }
+
+    }
+
+}
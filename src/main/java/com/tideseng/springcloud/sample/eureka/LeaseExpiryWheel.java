@@ -0,0 +1,139 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 租约过期的分层时间轮，每层64个桶，第n层每个桶跨度为64^n个刻度，共4层（刻度500毫秒时可覆盖约97天）
+ *      租约按过期时间放入对应的桶，每个刻度只处理到期的桶，不再遍历整个注册表
+ *      续约不操作时间轮（续约只对槽位做一次CAS），桶到期时按租约当前的过期时间重新放入（续约过的租约），每个租约在每个租约周期内最多被处理常数次
+ *      高层的桶到期时按过期时间降级到低层
+ *      已下线、已重新注册（槽位已释放）的租约在桶到期时丢弃
+ * 注册线程通过{@link #schedule(SlottedLease)}提交租约，其它方法只由驱动线程调用
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+final class LeaseExpiryWheel {
+
+    private static final int WHEEL_BITS = 6;
+
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 4;
+
+    private final long tickMs;
+
+    private final long startMs;
+
+    private final ConcurrentLinkedQueue<SlottedLease> submitted = new ConcurrentLinkedQueue<>();
+
+    private final List<List<SlottedLease>> buckets = new ArrayList<>(LEVELS * WHEEL_SIZE);
+
+    private List<SlottedLease> spare = new ArrayList<>();
+
+    /** 已处理到的刻度 */
+    private long currentTick;
+
+    /**
+     * @param tickMs 刻度（毫秒）
+     * @param startMs 开始时间（毫秒）
+     */
+    LeaseExpiryWheel(long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.startMs = startMs;
+        for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 提交新的租约，线程安全，下一次{@link #advance}时放入时间轮
+     */
+    void schedule(SlottedLease lease) {
+        submitted.offer(lease);
+    }
+
+    /**
+     * 推进到当前时间，收集已过期的租约
+     * @param now 当前时间（毫秒）
+     * @param additionalLeaseMs 额外的租约时间（补偿驱动线程的延迟，与原实现的补偿时间一致）
+     * @param expired 已过期的租约，由调用方决定是否剔除，未剔除的租约需调用{@link #reschedule}放回
+     */
+    void advance(long now, long additionalLeaseMs, List<SlottedLease> expired) {
+        SlottedLease lease;
+        while ((lease = submitted.poll()) != null) {
+            if (!lease.scheduled) {
+                lease.scheduled = true;
+                place(lease, now, additionalLeaseMs, expired);
+            }
+        }
+        long targetTick = tick(now);
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 高层的桶到期时降级
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                drain(level, (int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK, now, additionalLeaseMs, expired);
+            }
+            drain(0, (int) currentTick & WHEEL_MASK, now, additionalLeaseMs, expired);
+        }
+    }
+
+    /**
+     * 将未剔除（已续约、自我保护、超过单次剔除数量）的过期租约放回时间轮
+     */
+    void reschedule(SlottedLease lease, long now) {
+        if (lease.isReleased() || lease.getEvictionTimestamp() > 0) {
+            lease.scheduled = false;
+            return;
+        }
+        long deadlineTick = Math.max(tick(lease.getExpiryTimestamp()) + 1, currentTick + 1);
+        long delta = deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        if (level == LEVELS - 1 && delta >= 1L << (WHEEL_BITS * LEVELS)) {
+            // 超出时间轮的范围，放入最高层最远的桶，到期后重新计算
+            deadlineTick = currentTick + (1L << (WHEEL_BITS * LEVELS)) - 1;
+        }
+        bucket(level, (int) (deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK).add(lease);
+    }
+
+    private void drain(int level, int index, long now, long additionalLeaseMs, List<SlottedLease> expired) {
+        List<SlottedLease> bucket = bucket(level, index);
+        if (bucket.isEmpty()) {
+            return;
+        }
+        buckets.set(level * WHEEL_SIZE + index, spare);
+        spare = bucket;
+        for (SlottedLease lease : bucket) {
+            place(lease, now, additionalLeaseMs, expired);
+        }
+        bucket.clear();
+    }
+
+    private void place(SlottedLease lease, long now, long additionalLeaseMs, List<SlottedLease> expired) {
+        if (lease.isReleased() || lease.getEvictionTimestamp() > 0) {
+            lease.scheduled = false;
+        } else if (now > lease.getExpiryTimestamp() + additionalLeaseMs) {
+            expired.add(lease);
+        } else {
+            reschedule(lease, now);
+        }
+    }
+
+    private List<SlottedLease> bucket(int level, int index) {
+        return buckets.get(level * WHEEL_SIZE + index);
+    }
+
+    private long tick(long timestamp) {
+        return Math.max(timestamp - startMs, 0) / tickMs;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 租约续约时间表：每个实例在注册时分配一个槽位，续约时间以long存储在分页的AtomicLongArray中（不随续约创建对象）
+ * 每个槽位的值：高位为槽位的代数（槽位释放时递增），低{@link #TIME_BITS}位为相对{@link #base}的续约时间（毫秒）
+ * 续约只对槽位做一次CAS，代数不一致（槽位已释放或被其它实例重新分配）时续约失败，不会错误地续约其它实例
+ * 分页存储，扩容只复制页引用，已分配的槽位不会移动
+ * @author jiahuan
+ * @create 2022/7/4
+ */
+final class LeaseSlotTable {
+
+    private static final int PAGE_SHIFT = 10;
+
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /** 相对时间的位数，可表示约34年 */
+    private static final int TIME_BITS = 40;
+
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    /** 代数的位数（不使用符号位） */
+    private static final int GENERATION_MASK = (1 << (63 - TIME_BITS)) - 1;
+
+    /** 续约时间的基准（毫秒） */
+    private final long base = System.currentTimeMillis() - 1;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    /** 以下字段只在持有该对象的锁时访问 */
+    private int[] freeSlots = new int[PAGE_SIZE];
+
+    private int freeCount;
+
+    private int nextSlot;
+
+    /**
+     * 分配槽位
+     * @param timestamp 初始续约时间（毫秒）
+     * @return 槽位句柄（高32位为代数，低32位为槽位）
+     */
+    synchronized long allocate(long timestamp) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = nextSlot++;
+            int page = slot >>> PAGE_SHIFT;
+            if (page == pages.length) {
+                AtomicLongArray[] grown = Arrays.copyOf(pages, page + 1);
+                grown[page] = new AtomicLongArray(PAGE_SIZE);
+                pages = grown;
+            }
+        }
+        AtomicLongArray page = pages[slot >>> PAGE_SHIFT];
+        int generation = generation(page.get(slot & PAGE_MASK));
+        page.set(slot & PAGE_MASK, pack(generation, timestamp));
+        return ((long) generation << 32) | slot;
+    }
+
+    /**
+     * 释放槽位，递增代数使已持有的句柄失效
+     * @return 释放前的续约时间（毫秒），句柄已失效时返回-1
+     */
+    synchronized long release(long handle) {
+        int slot = slot(handle);
+        AtomicLongArray page = pages[slot >>> PAGE_SHIFT];
+        long value = page.get(slot & PAGE_MASK);
+        if (generation(value) != generationOf(handle)) {
+            return -1;
+        }
+        // getAndSet保证与并发的续约CAS不会同时成功
+        value = page.getAndSet(slot & PAGE_MASK, (long) ((generationOf(handle) + 1) & GENERATION_MASK) << TIME_BITS);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        return base + (value & TIME_MASK);
+    }
+
+    /**
+     * 续约：一次CAS，不加锁、不创建对象
+     * @return 句柄已失效时返回false
+     */
+    boolean renew(long handle, long timestamp) {
+        int slot = slot(handle);
+        AtomicLongArray page = pages[slot >>> PAGE_SHIFT];
+        int index = slot & PAGE_MASK;
+        long value = page.get(index);
+        if (generation(value) != generationOf(handle)) {
+            return false;
+        }
+        long update = pack(generationOf(handle), timestamp);
+        // 并发续约时只要有一个成功即可，失败时只需确认不是因为槽位被释放
+        return page.compareAndSet(index, value, update) || generation(page.get(index)) == generationOf(handle);
+    }
+
+    /**
+     * @return 续约时间（毫秒），句柄已失效时返回-1
+     */
+    long get(long handle) {
+        int slot = slot(handle);
+        long value = pages[slot >>> PAGE_SHIFT].get(slot & PAGE_MASK);
+        return generation(value) == generationOf(handle) ? base + (value & TIME_MASK) : -1;
+    }
+
+    /**
+     * 清空（注册表清空时），所有已分配的句柄失效
+     */
+    synchronized void clear() {
+        for (int slot = 0; slot < nextSlot; slot++) {
+            AtomicLongArray page = pages[slot >>> PAGE_SHIFT];
+            long value = page.get(slot & PAGE_MASK);
+            page.set(slot & PAGE_MASK, (long) ((generation(value) + 1) & GENERATION_MASK) << TIME_BITS);
+        }
+        freeCount = 0;
+        for (int slot = nextSlot - 1; slot >= 0; slot--) {
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    private long pack(int generation, long timestamp) {
+        return ((long) generation << TIME_BITS) | (Math.max(timestamp - base, 0) & TIME_MASK);
+    }
+
+    private static int generation(long value) {
+        return (int) (value >>> TIME_BITS) & GENERATION_MASK;
+    }
+
+    private static int generationOf(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static int slot(long handle) {
+        return (int) handle;
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.MyDataCenterInfo;
+import com.netflix.discovery.converters.wrappers.EncoderWrapper;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 全量注册表响应的结构：头部 + 应用1 + 分隔符 + 应用2 + ... + 尾部
+ * 不同编码（JSON/XML、full/compact）的结构不同（如compact的hashcode在应用列表之后、XML full有缩进），
+ * 因此不硬编码各格式，而是用编码器分别编码空的、只有一个应用、有两个应用的注册表，对比得到头部、尾部和分隔符，并校验拼接结果与直接编码一致
+ * 头部或尾部中的hashcode使用占位符，拼接时替换为实际的hashcode
+ * @author jiahuan
+ * @create 2022/7/8
+ */
+final class PayloadFraming {
+
+    /** 与实际hashcode格式一致（状态_数量_），不会与编码结果中的其它内容冲突 */
+    private static final String HASH_PLACEHOLDER = "FRAMING_0_";
+
+    private final EncoderWrapper encoder;
+
+    private final String head;
+
+    private final String tail;
+
+    private final String separator;
+
+    private PayloadFraming(EncoderWrapper encoder, String head, String tail, String separator) {
+        this.encoder = encoder;
+        this.head = head;
+        this.tail = tail;
+        this.separator = separator;
+    }
+
+    /**
+     * @return 编码结果无法按应用拆分时返回null
+     */
+    static PayloadFraming of(EncoderWrapper encoder) throws IOException {
+        Application first = sample("FRAMING-FIRST");
+        Application second = sample("FRAMING-SECOND");
+        String empty = encoder.encode(applications());
+        String one = encoder.encode(applications(first));
+        String two = encoder.encode(applications(first, second));
+        String other = encoder.encode(applications(second));
+        // 空注册表 = 头部 + 尾部，插入位置之前为头部
+        int prefix = commonPrefix(empty, one);
+        int suffix = commonSuffix(empty, one);
+        if (prefix + suffix < empty.length()) {
+            return null;
+        }
+        String head = empty.substring(0, prefix);
+        String tail = empty.substring(prefix);
+        String firstBody = body(one, head, tail);
+        String secondBody = body(other, head, tail);
+        if (firstBody == null || secondBody == null || firstBody.isEmpty()
+                || (head.contains(HASH_PLACEHOLDER) == tail.contains(HASH_PLACEHOLDER))) {
+            return null;
+        }
+        String start = head + firstBody;
+        String end = secondBody + tail;
+        if (!two.startsWith(start) || !two.endsWith(end) || two.length() < start.length() + end.length()) {
+            return null;
+        }
+        return new PayloadFraming(encoder, head, tail, two.substring(start.length(), two.length() - end.length()));
+    }
+
+    /**
+     * 编码单个应用，与在全量注册表中的编码结果一致
+     * @return 编码结果结构与预期不一致时返回null
+     */
+    String encode(Application application) throws IOException {
+        return body(encoder.encode(applications(application)), head, tail);
+    }
+
+    String head(String appsHashCode) {
+        return head.replace(HASH_PLACEHOLDER, appsHashCode);
+    }
+
+    String tail(String appsHashCode) {
+        return tail.replace(HASH_PLACEHOLDER, appsHashCode);
+    }
+
+    String separator() {
+        return separator;
+    }
+
+    private static String body(String encoded, String head, String tail) {
+        if (!encoded.startsWith(head) || !encoded.endsWith(tail) || encoded.length() < head.length() + tail.length()) {
+            return null;
+        }
+        return encoded.substring(head.length(), encoded.length() - tail.length());
+    }
+
+    /**
+     * 与StripedInstanceRegistry的全量注册表一致，版本号为1
+     */
+    private static Applications applications(Application... applications) {
+        return new Applications(HASH_PLACEHOLDER, 1L, Arrays.asList(applications));
+    }
+
+    private static Application sample(String name) {
+        Application application = new Application(name);
+        application.addInstance(InstanceInfo.Builder.newBuilder()
+                .setAppName(name)
+                .setInstanceId(name)
+                .setHostName("localhost")
+                .setIPAddr("127.0.0.1")
+                .setMetadata(new HashMap<>())
+                .setDataCenterInfo(new MyDataCenterInfo(DataCenterInfo.Name.MyOwn))
+                .build());
+        return application;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int commonSuffix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.resources.ServerCodecs;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 注册表变化的长轮询接口，客户端（{@link com.tideseng.springcloud.sample.eureka.watch.RegistryWatcher}）携带已获取的最后一个变化的序号发起请求
+ *      有新的变化时立即返回序号之后的变化（与增量获取的格式一致），没有变化时挂起请求，注册表变化后返回，超时返回204；最后一个变化的序号通过X-Registry-Sequence返回
+ *      序号已被清理（超过retentionTimeInMSInDeltaQueue）、不是同一个注册表实例（X-Registry-Epoch不一致）时返回本地区域的全量注册表（X-Registry-Type: snapshot）
+ *      挂起的请求按序号分组，注册表变化后延迟batch-delay毫秒统一处理，短时间内的多个变化合并返回，每个序号只查询一次变化，同组的请求共享同一个响应
+ *      全量注册表按序号缓存一份编码结果，注册表没有变化时直接返回（服务端重启后所有客户端同时获取全量注册表只编码一次）
+ * 路径不在/eureka下（Jersey的Filter不支持异步请求），由Spring MVC处理
+ * <pre>
+ *     application.eureka.watch.path=/registry/watch   接口路径
+ *     application.eureka.watch.max-timeout=60000      请求挂起的最长时间（毫秒）
+ *     application.eureka.watch.batch-delay=20         注册表变化后延迟处理挂起请求的时间（毫秒）
+ * </pre>
+ * @author jiahuan
+ * @create 2022/7/12
+ */
+@RestController
+public class RegistryWatchController implements DisposableBean {
+
+    public static final String EPOCH_HEADER = "X-Registry-Epoch";
+
+    public static final String TYPE_HEADER = "X-Registry-Type";
+
+    public static final String SEQUENCE_HEADER = "X-Registry-Sequence";
+
+    public static final String TYPE_SNAPSHOT = "snapshot";
+
+    public static final String TYPE_DELTA = "delta";
+
+    private final StripedInstanceRegistry registry;
+
+    private final ServerCodecs serverCodecs;
+
+    private final long maxTimeout;
+
+    private final long batchDelay;
+
+    /** 挂起的请求，按序号分组（请求完成时按序号O(1)移除） */
+    private final ConcurrentMap<Long, Set<DeferredResult<ResponseEntity<String>>>> watches = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    private final Timer timer = new Timer("Eureka-RegistryWatchTimer", true);
+
+    /** 最近一次编码的全量注册表，序号不变时复用 */
+    private volatile Snapshot snapshot;
+
+    private volatile boolean closed;
+
+    public RegistryWatchController(StripedInstanceRegistry registry, ServerCodecs serverCodecs, long maxTimeout, long batchDelay) {
+        this.registry = registry;
+        this.serverCodecs = serverCodecs;
+        this.maxTimeout = maxTimeout;
+        this.batchDelay = batchDelay;
+        registry.addChangeListener(this::changed);
+    }
+
+    /**
+     * @param since 已获取的最后一个变化的序号，小于0时返回全量注册表
+     * @param epoch 上次响应的X-Registry-Epoch
+     * @param timeout 没有变化时挂起的时间（毫秒），不超过max-timeout，至少1毫秒（DeferredResult的超时为0时表示不超时）
+     * @return
+     */
+    @GetMapping(path = "${application.eureka.watch.path:/registry/watch}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> watch(@RequestParam(defaultValue = "-1") long since,
+                                                        @RequestParam(required = false) String epoch,
+                                                        @RequestParam(defaultValue = "30000") long timeout) throws IOException {
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(Math.max(Math.min(timeout, maxTimeout), 1),
+                ResponseEntity.noContent().header(EPOCH_HEADER, registry.getChangeEpoch()).build());
+        if (!registry.getChangeEpoch().equals(epoch) || since < 0 || since > registry.getChangeSequence()) {
+            result.setResult(snapshot());
+            return result;
+        }
+        ResponseEntity<String> response = changes(since);
+        if (response != null) {
+            result.setResult(response);
+            return result;
+        }
+        result.onCompletion(() -> watches.computeIfPresent(since, (key, group) -> group.remove(result) && group.isEmpty() ? null : group));
+        // 与dispatch移除分组互斥，移除后加入的请求进入新的分组
+        watches.compute(since, (key, group) -> {
+            Set<DeferredResult<ResponseEntity<String>>> current = group != null ? group : ConcurrentHashMap.newKeySet();
+            current.add(result);
+            return current;
+        });
+        // 加入前发生的变化不会再通知
+        if (registry.getChangeSequence() > since) {
+            changed();
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        timer.cancel();
+    }
+
+    private void changed() {
+        // 在注册表写操作的线程中调用，只提交处理任务
+        if (!closed && !watches.isEmpty() && dispatchScheduled.compareAndSet(false, true)) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    dispatchScheduled.set(false);
+                    try {
+                        dispatch();
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, batchDelay);
+        }
+    }
+
+    private void dispatch() throws IOException {
+        for (Long since : watches.keySet()) {
+            ResponseEntity<String> response = changes(since);
+            if (response == null) {
+                continue;
+            }
+            Set<DeferredResult<ResponseEntity<String>>> group = watches.remove(since);
+            if (group != null) {
+                for (DeferredResult<ResponseEntity<String>> watch : group) {
+                    watch.setResult(response);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 没有变化时返回null
+     */
+    private ResponseEntity<String> changes(long since) throws IOException {
+        long until = registry.getChangeSequence();
+        if (until <= since) {
+            return null;
+        }
+        Applications changes = registry.getChangesSince(since, until);
+        if (changes == null) {
+            return snapshot();
+        }
+        if (changes.getRegisteredApplications().isEmpty()) {
+            return null;
+        }
+        return response(TYPE_DELTA, until, changes);
+    }
+
+    private ResponseEntity<String> snapshot() throws IOException {
+        // 先获取序号，全量注册表可能包含该序号之后的变化，客户端下次获取时会再次收到（只多刷新一次注册表）
+        long sequence = registry.getChangeSequence();
+        Snapshot current = snapshot;
+        if (current != null && current.sequence == sequence) {
+            return current.response;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.sequence != sequence) {
+                current = new Snapshot(sequence, response(TYPE_SNAPSHOT, sequence, registry.getApplicationsFromLocalRegionOnly()));
+                snapshot = current;
+            }
+            return current.response;
+        }
+    }
+
+    private ResponseEntity<String> response(String type, long sequence, Applications apps) throws IOException {
+        return ResponseEntity.ok()
+                .header(EPOCH_HEADER, registry.getChangeEpoch())
+                .header(TYPE_HEADER, type)
+                .header(SEQUENCE_HEADER, Long.toString(sequence))
+                .body(serverCodecs.getFullJsonCodec().encode(apps));
+    }
+
+    private static final class Snapshot {
+
+        private final long sequence;
+
+        private final ResponseEntity<String> response;
+
+        Snapshot(long sequence, ResponseEntity<String> response) {
+            this.sequence = sequence;
+            this.response = response;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.lease.Lease;
+
+/**
+ * 续约时间存储在{@link LeaseSlotTable}中的租约，续约不修改租约对象
+ * 续约时间、过期判断与{@link Lease}一致（续约时间为当前时间加租约时间，过期判断时再加一次租约时间）
+ * @author jiahuan
+ * @create 2022/7/4
+ */
+final class SlottedLease extends Lease<InstanceInfo> {
+
+    private final LeaseSlotTable table;
+
+    private final long handle;
+
+    private final long duration;
+
+    /** 释放槽位时的续约时间，未释放时为-1 */
+    private volatile long releasedRenewalTimestamp = -1;
+
+    /** 是否已在{@link LeaseExpiryWheel}中，只由时间轮的驱动线程访问 */
+    boolean scheduled;
+
+    SlottedLease(InstanceInfo holder, int durationInSecs, LeaseSlotTable table) {
+        super(holder, durationInSecs);
+        this.table = table;
+        this.duration = durationInSecs * 1000L;
+        this.handle = table.allocate(getRegistrationTimestamp());
+    }
+
+    /**
+     * 续约的快速路径
+     * @return 槽位已释放（租约已下线）时返回false
+     */
+    boolean tryRenew() {
+        return table.renew(handle, System.currentTimeMillis() + duration);
+    }
+
+    @Override
+    public void renew() {
+        tryRenew();
+    }
+
+    /**
+     * 释放槽位（租约从注册表中移除时），之后读取的续约时间固定为释放时的值
+     */
+    void release() {
+        long timestamp = table.get(handle);
+        if (timestamp >= 0) {
+            releasedRenewalTimestamp = timestamp;
+            long released = table.release(handle);
+            if (released >= 0) {
+                releasedRenewalTimestamp = released;
+            }
+        }
+    }
+
+    boolean isReleased() {
+        return table.get(handle) < 0;
+    }
+
+    /**
+     * @return 过期时间（毫秒），超过该时间未续约视为过期
+     */
+    long getExpiryTimestamp() {
+        return getLastRenewalTimestamp() + duration;
+    }
+
+    @Override
+    public long getLastRenewalTimestamp() {
+        long timestamp = table.get(handle);
+        return timestamp >= 0 ? timestamp : releasedRenewalTimestamp;
+    }
+
+    @Override
+    public boolean isExpired() {
+        return isExpired(0L);
+    }
+
+    @Override
+    public boolean isExpired(long additionalLeaseMs) {
+        return getEvictionTimestamp() > 0 || System.currentTimeMillis() > getExpiryTimestamp() + additionalLeaseMs;
+    }
+
+}
@@ -0,0 +1,1050 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.ActionType;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.Pair;
+import com.netflix.eureka.EurekaServerConfig;
+import com.netflix.eureka.cluster.PeerEurekaNode;
+import com.netflix.eureka.cluster.PeerEurekaNodes;
+import com.netflix.eureka.lease.Lease;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistryImpl;
+import com.netflix.eureka.registry.RemoteRegionRegistry;
+import com.netflix.eureka.registry.ResponseCache;
+import com.netflix.eureka.resources.ServerCodecs;
+import com.netflix.eureka.util.EurekaMonitors;
+import org.springframework.beans.BeansException;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceCanceledEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceRegisteredEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceRenewedEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按应用分段的Eureka Server注册表，替换Spring Cloud的{@link org.springframework.cloud.netflix.eureka.server.InstanceRegistry}
+ * AbstractInstanceRegistry的注册表、增量队列及全局读写锁都是私有的，因此重新实现了所有读写注册表的方法（语义与原实现一致），集群同步通过PeerEurekaNodes#getPeerEurekaNodes()完成：
+ *      每个应用一个{@link ApplicationLeases}，注册、下线、状态变更只锁定所在的应用；续约不加锁（原实现中续约事件会遍历并构建全量注册表）
+ *      续约时间存储在{@link LeaseSlotTable}中，没有覆盖状态的实例续约时只对所在槽位做一次CAS，不计算覆盖状态、不创建对象
+ *          续约事件默认发布（与Spring Cloud一致），没有监听续约事件时可通过application.eureka.striped-registry.renew-events=false关闭
+ *      过期剔除使用分层时间轮（{@link LeaseExpiryWheel}），默认每500毫秒只处理到期的桶，不再每60秒遍历整个注册表，非正常下线的实例在租约过期后一个刻度内被剔除
+ *          自我保护、单次剔除比例与原实现一致（每个剔除周期evictionIntervalTimerInMs内最多剔除注册表的1 - renewalPercentThreshold）
+ *          application.eureka.striped-registry.eviction-tick=0时使用原实现的定时全量扫描
+ *      全量注册表的响应由按应用预先编码的分片拼接而成（{@link FragmentResponseCache}），只有发生过变化的应用需要重新编码，可通过application.eureka.striped-registry.fragment-cache=false关闭
+ *      近期变化的实例按顺序编号，供{@link RegistryWatchController}向客户端推送变化
+ *      全量获取时组装各应用按版本号缓存的快照，只有发生过变化的应用需要重新构建
+ *      增量获取时不再使用全局写锁阻塞所有注册，而是根据修改计数判断读取期间是否有修改，有修改时重新读取（最多3次，之后客户端会因hashCode不一致发起全量获取）
+ *      与Spring Cloud的InstanceRegistry一样发布实例注册、下线、续约事件
+ * @see EnableStripedInstanceRegistry
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+public class StripedInstanceRegistry extends PeerAwareInstanceRegistryImpl implements ApplicationContextAware {
+
+    private static final int RECENT_QUEUE_SIZE = 1000;
+
+    private static final int CONSISTENT_READ_ATTEMPTS = 3;
+
+    private final ConcurrentHashMap<String, ApplicationLeases> applications = new ConcurrentHashMap<>();
+
+    private final LeaseSlotTable leaseSlotTable = new LeaseSlotTable();
+
+    /** 近期变化的实例（增量获取），由定时器按保留时间清理，按序号的顺序加入 */
+    private final ConcurrentLinkedQueue<RecentlyChangedItem> recentlyChangedQueue = new ConcurrentLinkedQueue<>();
+
+    /** 最后一个变化的序号，只在持有recentlyChangedQueue的锁时递增，且在变化加入队列之后递增（读取到的序号对应的变化都已在队列中） */
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    /** 已从recentlyChangedQueue中清理的最大序号 */
+    private volatile long truncatedSequence;
+
+    /** 注册表实例的标识，序号只在同一个注册表实例内有意义（重启、切换Eureka Server节点后需重新获取全量注册表） */
+    private final String changeEpoch = Long.toString(System.currentTimeMillis(), 36) + "-" + Integer.toString(System.identityHashCode(this), 36);
+
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final Deque<Pair<Long, String>> recentRegisteredQueue = new ArrayDeque<>();
+
+    private final Deque<Pair<Long, String>> recentCanceledQueue = new ArrayDeque<>();
+
+    private final StripedMeasuredRate renewsLastMin = new StripedMeasuredRate("Eureka-StripedRenewRateTimer", 1000 * 60);
+
+    private final StripedMeasuredRate replicationsLastMin = new StripedMeasuredRate("Eureka-StripedReplicationRateTimer", 1000 * 60);
+
+    /** 进行中的写操作数及已完成的写操作数，用于判断读取期间注册表是否有修改 */
+    private final AtomicInteger writers = new AtomicInteger();
+
+    private final AtomicLong modifications = new AtomicLong();
+
+    private final Timer deltaRetentionTimer = new Timer("Eureka-StripedDeltaRetentionTimer", true);
+
+    private final int defaultOpenForTrafficCount;
+
+    private ApplicationContext context;
+
+    private volatile boolean publishRenewEvents = true;
+
+    private volatile long evictionTickMs = 500;
+
+    private volatile boolean fragmentResponseCache = true;
+
+    private volatile LeaseExpiryWheel leaseExpiryWheel;
+
+    private Timer evictionTimer;
+
+    /** 以下字段只由剔除定时器线程访问 */
+    private final List<SlottedLease> expiredLeases = new ArrayList<>();
+
+    private long lastEvictionMs;
+
+    private long evictionWindowStartMs;
+
+    private int evictedInWindow;
+
+    /**
+     * 与Spring Cloud的InstanceRegistry的构造函数一致
+     * @param serverConfig
+     * @param clientConfig
+     * @param serverCodecs
+     * @param eurekaClient
+     * @param expectedNumberOfClientsSendingRenews
+     * @param defaultOpenForTrafficCount
+     */
+    public StripedInstanceRegistry(EurekaServerConfig serverConfig, EurekaClientConfig clientConfig, ServerCodecs serverCodecs,
+                                   EurekaClient eurekaClient, int expectedNumberOfClientsSendingRenews, int defaultOpenForTrafficCount) {
+        super(serverConfig, clientConfig, serverCodecs, eurekaClient);
+        this.expectedNumberOfClientsSendingRenews = expectedNumberOfClientsSendingRenews;
+        this.defaultOpenForTrafficCount = defaultOpenForTrafficCount;
+        deltaRetentionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                long expiredBefore = System.currentTimeMillis() - serverConfig.getRetentionTimeInMSInDeltaQueue();
+                Iterator<RecentlyChangedItem> iterator = recentlyChangedQueue.iterator();
+                while (iterator.hasNext()) {
+                    RecentlyChangedItem item = iterator.next();
+                    if (item.lastUpdateTime >= expiredBefore) {
+                        break;
+                    }
+                    truncatedSequence = item.sequence;
+                    iterator.remove();
+                }
+            }
+        }, serverConfig.getDeltaRetentionTimerIntervalInMs(), serverConfig.getDeltaRetentionTimerIntervalInMs());
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext context) throws BeansException {
+        this.context = context;
+    }
+
+    /**
+     * 是否发布续约事件（{@link EurekaInstanceRenewedEvent}），每次续约都会创建事件对象
+     * @param publishRenewEvents
+     */
+    public void setPublishRenewEvents(boolean publishRenewEvents) {
+        this.publishRenewEvents = publishRenewEvents;
+    }
+
+    /**
+     * 时间轮剔除的刻度（毫秒），小于等于0时使用原实现的定时全量扫描，需在{@link #openForTraffic}之前设置
+     * @param evictionTickMs
+     */
+    public void setEvictionTickMs(long evictionTickMs) {
+        this.evictionTickMs = evictionTickMs;
+    }
+
+    /**
+     * 是否使用按应用分片的全量注册表响应缓存，需在{@link #initializedResponseCache()}之前设置
+     * @param fragmentResponseCache
+     */
+    public void setFragmentResponseCache(boolean fragmentResponseCache) {
+        this.fragmentResponseCache = fragmentResponseCache;
+    }
+
+    @Override
+    public void init(PeerEurekaNodes peerEurekaNodes) throws Exception {
+        super.init(peerEurekaNodes);
+        replicationsLastMin.start();
+    }
+
+    /**
+     * ResponseCacheImpl的构造函数不是公开的，由父类创建后再包装
+     */
+    @Override
+    public synchronized void initializedResponseCache() {
+        super.initializedResponseCache();
+        if (fragmentResponseCache && !(responseCache instanceof FragmentResponseCache)) {
+            responseCache = new FragmentResponseCache(responseCache, this, serverConfig, serverCodecs);
+        }
+    }
+
+    /**
+     * 父类的openForTraffic通过super.postInit()直接调用AbstractInstanceRegistry#postInit()（不会调用子类重写的postInit），
+     * 其开启的是父类私有的续约计数及每60秒全量扫描的剔除任务，因此在此之后开启本类的续约计数及时间轮剔除
+     *      续约计数未开启时getNumOfRenewsInLastMin()始终为0，自我保护始终开启，过期实例不会被剔除
+     *      父类的剔除任务无法取消（私有），时间轮开启后其调用的{@link #evict(long)}直接返回
+     */
+    @Override
+    public void openForTraffic(ApplicationInfoManager applicationInfoManager, int count) {
+        super.openForTraffic(applicationInfoManager, count == 0 ? defaultOpenForTrafficCount : count);
+        renewsLastMin.start();
+        startLeaseExpiryWheel();
+    }
+
+    /**
+     * 开启时间轮剔除，刻度小于等于0时不开启（由父类的剔除任务全量扫描）
+     */
+    private synchronized void startLeaseExpiryWheel() {
+        long tickMs = evictionTickMs;
+        if (tickMs <= 0) {
+            return;
+        }
+        if (evictionTimer != null) {
+            evictionTimer.cancel();
+        }
+        LeaseExpiryWheel wheel = new LeaseExpiryWheel(tickMs, System.currentTimeMillis());
+        leaseExpiryWheel = wheel;
+        // 启动前（同步相邻节点注册表时）注册的租约
+        for (ApplicationLeases leases : applications.values()) {
+            for (SlottedLease lease : leases.leases()) {
+                wheel.schedule(lease);
+            }
+        }
+        evictionTimer = new Timer("Eureka-StripedEvictionTimer", true);
+        evictionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    evictExpired(wheel, tickMs);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }, tickMs, tickMs);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        renewsLastMin.stop();
+        replicationsLastMin.stop();
+        deltaRetentionTimer.cancel();
+        synchronized (this) {
+            if (evictionTimer != null) {
+                evictionTimer.cancel();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 写操作
+
+    @Override
+    public void register(InstanceInfo info, boolean isReplication) {
+        int leaseDuration = Lease.DEFAULT_DURATION_IN_SECS;
+        if (info.getLeaseInfo() != null && info.getLeaseInfo().getDurationInSecs() > 0) {
+            leaseDuration = info.getLeaseInfo().getDurationInSecs();
+        }
+        register(info, leaseDuration, isReplication);
+        replicate(Action.Register, info.getAppName(), info.getId(), info, null, isReplication);
+    }
+
+    /**
+     * 注册（不同步到集群，启动时同步相邻节点的注册表也调用该方法）
+     */
+    @Override
+    public void register(InstanceInfo registrant, int leaseDuration, boolean isReplication) {
+        publishEvent(new EurekaInstanceRegisteredEvent(this, registrant, leaseDuration, isReplication));
+        EurekaMonitors.REGISTER.increment(isReplication);
+        ApplicationLeases leases = applications.computeIfAbsent(registrant.getAppName(), ApplicationLeases::new);
+        boolean added;
+        beginWrite();
+        try {
+            synchronized (leases) {
+                SlottedLease existingLease = leases.get(registrant.getId());
+                added = existingLease == null || existingLease.getHolder() == null;
+                if (!added && existingLease.getHolder().getLastDirtyTimestamp() > registrant.getLastDirtyTimestamp()) {
+                    // 已有实例的信息更新，使用已有的实例信息
+                    registrant = existingLease.getHolder();
+                }
+                SlottedLease lease = new SlottedLease(registrant, leaseDuration, leaseSlotTable);
+                if (existingLease != null) {
+                    lease.setServiceUpTimestamp(existingLease.getServiceUpTimestamp());
+                    existingLease.release();
+                }
+                leases.put(registrant.getId(), lease);
+                LeaseExpiryWheel wheel = leaseExpiryWheel;
+                if (wheel != null) {
+                    wheel.schedule(lease);
+                }
+                if (!InstanceStatus.UNKNOWN.equals(registrant.getOverriddenStatus())) {
+                    overriddenInstanceStatusMap.putIfAbsent(registrant.getId(), registrant.getOverriddenStatus());
+                }
+                InstanceStatus overriddenStatusFromMap = overriddenInstanceStatusMap.get(registrant.getId());
+                if (overriddenStatusFromMap != null) {
+                    registrant.setOverriddenStatus(overriddenStatusFromMap);
+                }
+                registrant.setStatusWithoutDirty(getOverriddenInstanceStatus(registrant, existingLease, isReplication));
+                if (InstanceStatus.UP.equals(registrant.getStatus())) {
+                    lease.serviceUp();
+                }
+                registrant.setActionType(ActionType.ADDED);
+                recordChange(lease);
+                registrant.setLastUpdatedTimestamp();
+                leases.modified();
+            }
+        } finally {
+            endWrite();
+        }
+        if (added) {
+            synchronized (lock) {
+                if (expectedNumberOfClientsSendingRenews > 0) {
+                    expectedNumberOfClientsSendingRenews++;
+                    updateRenewsPerMinThreshold();
+                }
+            }
+        }
+        addRecent(recentRegisteredQueue, registrant.getAppName(), registrant.getId());
+        invalidateCache(registrant.getAppName(), registrant.getVIPAddress(), registrant.getSecureVipAddress());
+    }
+
+    @Override
+    public boolean cancel(String appName, String id, boolean isReplication) {
+        if (!internalCancel(appName, id, isReplication)) {
+            return false;
+        }
+        replicate(Action.Cancel, appName, id, null, null, isReplication);
+        synchronized (lock) {
+            if (expectedNumberOfClientsSendingRenews > 0) {
+                expectedNumberOfClientsSendingRenews--;
+                updateRenewsPerMinThreshold();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 下线及过期剔除
+     */
+    @Override
+    protected boolean internalCancel(String appName, String id, boolean isReplication) {
+        publishEvent(new EurekaInstanceCanceledEvent(this, appName, id, isReplication));
+        EurekaMonitors.CANCEL.increment(isReplication);
+        ApplicationLeases leases = applications.get(appName);
+        SlottedLease leaseToCancel = null;
+        if (leases != null) {
+            beginWrite();
+            try {
+                synchronized (leases) {
+                    leaseToCancel = leases.remove(id);
+                    if (leaseToCancel != null) {
+                        leaseToCancel.cancel();
+                        leaseToCancel.release();
+                        if (leaseToCancel.getHolder() != null) {
+                            leaseToCancel.getHolder().setActionType(ActionType.DELETED);
+                            recordChange(leaseToCancel);
+                            leaseToCancel.getHolder().setLastUpdatedTimestamp();
+                        }
+                        leases.modified();
+                    }
+                }
+            } finally {
+                endWrite();
+            }
+        }
+        addRecent(recentCanceledQueue, appName, id);
+        overriddenInstanceStatusMap.remove(id);
+        if (leaseToCancel == null) {
+            EurekaMonitors.CANCEL_NOT_FOUND.increment(isReplication);
+            return false;
+        }
+        InstanceInfo info = leaseToCancel.getHolder();
+        invalidateCache(appName, info != null ? info.getVIPAddress() : null, info != null ? info.getSecureVipAddress() : null);
+        return true;
+    }
+
+    /**
+     * 续约：不加锁
+     *      实例没有覆盖状态（绝大多数实例）时，覆盖状态规则的结果必然是实例当前的状态，直接对租约所在的槽位做一次CAS
+     *      有覆盖状态时与原实现一致，覆盖状态导致实例状态变化时锁定所在的应用
+     */
+    @Override
+    public boolean renew(String appName, String id, boolean isReplication) {
+        EurekaMonitors.RENEW.increment(isReplication);
+        ApplicationLeases leases = applications.get(appName);
+        SlottedLease leaseToRenew = leases != null ? leases.get(id) : null;
+        if (leases != null && publishRenewEvents) {
+            // 与Spring Cloud的InstanceRegistry一致，应用存在时发布续约事件（直接获取实例，不再遍历全量注册表）
+            publishEvent(new EurekaInstanceRenewedEvent(this, appName, id, leaseToRenew != null ? leaseToRenew.getHolder() : null, isReplication));
+        }
+        if (leaseToRenew == null) {
+            EurekaMonitors.RENEW_NOT_FOUND.increment(isReplication);
+            return false;
+        }
+        InstanceInfo instanceInfo = leaseToRenew.getHolder();
+        if (instanceInfo != null && (instanceInfo.getOverriddenStatus() != InstanceStatus.UNKNOWN || instanceInfo.getStatus() == InstanceStatus.UNKNOWN)) {
+            InstanceStatus overriddenInstanceStatus = getOverriddenInstanceStatus(instanceInfo, leaseToRenew, isReplication);
+            if (overriddenInstanceStatus == InstanceStatus.UNKNOWN) {
+                // 覆盖状态已被删除，返回404让客户端重新注册
+                EurekaMonitors.RENEW_NOT_FOUND.increment(isReplication);
+                return false;
+            }
+            if (!instanceInfo.getStatus().equals(overriddenInstanceStatus)) {
+                beginWrite();
+                try {
+                    synchronized (leases) {
+                        instanceInfo.setStatusWithoutDirty(overriddenInstanceStatus);
+                        leases.modified();
+                    }
+                } finally {
+                    endWrite();
+                }
+            }
+        }
+        if (!leaseToRenew.tryRenew()) {
+            // 续约期间已下线或重新注册
+            EurekaMonitors.RENEW_NOT_FOUND.increment(isReplication);
+            return false;
+        }
+        renewsLastMin.increment();
+        replicate(Action.Heartbeat, appName, id, null, null, isReplication);
+        return true;
+    }
+
+    @Override
+    public boolean statusUpdate(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp, boolean isReplication) {
+        EurekaMonitors.STATUS_UPDATE.increment(isReplication);
+        ApplicationLeases leases = applications.get(appName);
+        SlottedLease lease = leases != null ? leases.get(id) : null;
+        if (lease == null) {
+            return false;
+        }
+        lease.renew();
+        InstanceInfo info = lease.getHolder();
+        if (info != null && !info.getStatus().equals(newStatus)) {
+            beginWrite();
+            try {
+                synchronized (leases) {
+                    if (InstanceStatus.UP.equals(newStatus)) {
+                        lease.serviceUp();
+                    }
+                    overriddenInstanceStatusMap.put(id, newStatus);
+                    info.setOverriddenStatus(newStatus);
+                    info.setStatusWithoutDirty(newStatus);
+                    updateDirtyTimestamp(info, lastDirtyTimestamp);
+                    info.setActionType(ActionType.MODIFIED);
+                    recordChange(lease);
+                    info.setLastUpdatedTimestamp();
+                    leases.modified();
+                }
+            } finally {
+                endWrite();
+            }
+            invalidateCache(appName, info.getVIPAddress(), info.getSecureVipAddress());
+        }
+        replicate(Action.StatusUpdate, appName, id, null, newStatus, isReplication);
+        return true;
+    }
+
+    @Override
+    public boolean deleteStatusOverride(String appName, String id, InstanceStatus newStatus, String lastDirtyTimestamp, boolean isReplication) {
+        EurekaMonitors.STATUS_OVERRIDE_DELETE.increment(isReplication);
+        ApplicationLeases leases = applications.get(appName);
+        SlottedLease lease = leases != null ? leases.get(id) : null;
+        if (lease == null) {
+            return false;
+        }
+        lease.renew();
+        InstanceInfo info = lease.getHolder();
+        InstanceStatus currentOverride = overriddenInstanceStatusMap.remove(id);
+        if (currentOverride != null && info != null) {
+            beginWrite();
+            try {
+                synchronized (leases) {
+                    info.setOverriddenStatus(InstanceStatus.UNKNOWN);
+                    info.setStatusWithoutDirty(newStatus);
+                    updateDirtyTimestamp(info, lastDirtyTimestamp);
+                    info.setActionType(ActionType.MODIFIED);
+                    recordChange(lease);
+                    info.setLastUpdatedTimestamp();
+                    leases.modified();
+                }
+            } finally {
+                endWrite();
+            }
+            invalidateCache(appName, info.getVIPAddress(), info.getSecureVipAddress());
+        }
+        replicate(Action.DeleteStatusOverride, appName, id, null, null, isReplication);
+        return true;
+    }
+
+    /**
+     * 剔除过期实例，与原实现一致：每次最多剔除注册表的(1 - renewalPercentThreshold)，随机选择
+     * 由父类的剔除任务定时调用，开启时间轮剔除后不再全量扫描
+     */
+    @Override
+    public void evict(long additionalLeaseMs) {
+        if (leaseExpiryWheel != null || !isLeaseExpirationEnabled()) {
+            return;
+        }
+        List<Lease<InstanceInfo>> expiredLeases = new ArrayList<>();
+        for (ApplicationLeases leases : applications.values()) {
+            for (Lease<InstanceInfo> lease : leases.leases()) {
+                if (lease.isExpired(additionalLeaseMs) && lease.getHolder() != null) {
+                    expiredLeases.add(lease);
+                }
+            }
+        }
+        int registrySize = (int) getLocalRegistrySize();
+        int registrySizeThreshold = (int) (registrySize * serverConfig.getRenewalPercentThreshold());
+        int toEvict = Math.min(expiredLeases.size(), registrySize - registrySizeThreshold);
+        if (toEvict <= 0) {
+            return;
+        }
+        Random random = new Random(System.currentTimeMillis());
+        for (int i = 0; i < toEvict; i++) {
+            Collections.swap(expiredLeases, i, i + random.nextInt(expiredLeases.size() - i));
+            InstanceInfo info = expiredLeases.get(i).getHolder();
+            EurekaMonitors.EXPIRED.increment();
+            internalCancel(info.getAppName(), info.getId(), false);
+        }
+    }
+
+    /**
+     * 时间轮剔除：推进时间轮，剔除到期且未续约的租约
+     *      补偿时间与原实现EvictionTask#getCompensationTimeMs一致，避免定时器延迟（如GC停顿）导致误剔除
+     *      自我保护开启时不剔除；每个剔除周期内剔除的数量不超过原实现单次剔除的上限，随机选择
+     *      未剔除的过期租约放回时间轮，下一个刻度重新判断
+     */
+    private void evictExpired(LeaseExpiryWheel wheel, long tickMs) {
+        long now = System.currentTimeMillis();
+        long compensationMs = lastEvictionMs > 0 ? Math.max(now - lastEvictionMs - tickMs, 0) : 0;
+        lastEvictionMs = now;
+        wheel.advance(now, compensationMs, expiredLeases);
+        if (expiredLeases.isEmpty()) {
+            return;
+        }
+        int toEvict = 0;
+        if (isLeaseExpirationEnabled()) {
+            if (now - evictionWindowStartMs >= serverConfig.getEvictionIntervalTimerInMs()) {
+                evictionWindowStartMs = now;
+                evictedInWindow = 0;
+            }
+            int registrySize = (int) getLocalRegistrySize() + evictedInWindow;
+            int registrySizeThreshold = (int) (registrySize * serverConfig.getRenewalPercentThreshold());
+            toEvict = Math.max(Math.min(expiredLeases.size(), registrySize - registrySizeThreshold - evictedInWindow), 0);
+        }
+        Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < toEvict; i++) {
+            Collections.swap(expiredLeases, i, i + random.nextInt(expiredLeases.size() - i));
+            SlottedLease lease = expiredLeases.get(i);
+            InstanceInfo info = lease.getHolder();
+            ApplicationLeases leases = applications.get(info.getAppName());
+            // 剔除前确认租约没有被重新注册替换
+            if (leases != null && leases.get(info.getId()) == lease) {
+                EurekaMonitors.EXPIRED.increment();
+                internalCancel(info.getAppName(), info.getId(), false);
+                evictedInWindow++;
+            }
+            lease.scheduled = false;
+        }
+        for (int i = toEvict; i < expiredLeases.size(); i++) {
+            wheel.reschedule(expiredLeases.get(i), now);
+        }
+        expiredLeases.clear();
+    }
+
+    @Override
+    public void clearRegistry() {
+        overriddenInstanceStatusMap.clear();
+        synchronized (recentCanceledQueue) {
+            recentCanceledQueue.clear();
+        }
+        synchronized (recentRegisteredQueue) {
+            recentRegisteredQueue.clear();
+        }
+        synchronized (recentlyChangedQueue) {
+            recentlyChangedQueue.clear();
+            truncatedSequence = changeSequence.get();
+        }
+        beginWrite();
+        try {
+            applications.clear();
+            leaseSlotTable.clear();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // ---------------------------------------------------------------- 读操作
+
+    @Override
+    public Application getApplication(String appName, boolean includeRemoteRegion) {
+        ApplicationLeases leases = applications.get(appName);
+        Application app = leases != null ? leases.snapshot() : null;
+        if (app == null && includeRemoteRegion) {
+            for (RemoteRegionRegistry remoteRegistry : regionNameVSRemoteRegistry.values()) {
+                Application application = remoteRegistry.getApplication(appName);
+                if (application != null) {
+                    return application;
+                }
+            }
+        }
+        return app;
+    }
+
+    @Override
+    @Deprecated
+    public Applications getApplications(boolean includeRemoteRegion) {
+        return includeRemoteRegion ? getApplicationsFromAllRemoteRegions() : getApplicationsFromLocalRegionOnly();
+    }
+
+    @Override
+    public Applications getApplicationsFromMultipleRegions(String[] remoteRegions) {
+        boolean includeRemoteRegion = remoteRegions != null && remoteRegions.length != 0;
+        if (includeRemoteRegion) {
+            EurekaMonitors.GET_ALL_WITH_REMOTE_REGIONS_CACHE_MISS.increment();
+        } else {
+            EurekaMonitors.GET_ALL_CACHE_MISS.increment();
+        }
+        Applications apps = localApplications();
+        if (includeRemoteRegion) {
+            // 本地应用的快照是共享的，需要合并其它区域的实例时先复制
+            Set<String> copied = new HashSet<>();
+            for (String remoteRegion : remoteRegions) {
+                RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
+                if (remoteRegistry == null) {
+                    continue;
+                }
+                for (Application application : remoteRegistry.getApplications().getRegisteredApplications()) {
+                    if (!shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
+                        continue;
+                    }
+                    Application appInstanceTillNow = apps.getRegisteredApplications(application.getName());
+                    if (appInstanceTillNow == null) {
+                        appInstanceTillNow = new Application(application.getName());
+                        apps.addApplication(appInstanceTillNow);
+                        copied.add(application.getName());
+                    } else if (copied.add(application.getName())) {
+                        Application copy = new Application(appInstanceTillNow.getName());
+                        for (InstanceInfo instanceInfo : appInstanceTillNow.getInstances()) {
+                            copy.addInstance(instanceInfo);
+                        }
+                        apps.removeApplication(appInstanceTillNow);
+                        apps.addApplication(copy);
+                        appInstanceTillNow = copy;
+                    }
+                    for (InstanceInfo instanceInfo : application.getInstances()) {
+                        appInstanceTillNow.addInstance(instanceInfo);
+                    }
+                }
+            }
+        }
+        apps.setAppsHashCode(apps.getReconcileHashCode());
+        return apps;
+    }
+
+    @Override
+    @Deprecated
+    public Applications getApplicationDeltas() {
+        EurekaMonitors.GET_ALL_CACHE_MISS_DELTA.increment();
+        boolean disableTransparentFallback = serverConfig.disableTransparentFallbackToOtherRegion();
+        return readConsistently(() -> {
+            Applications apps = recentlyChangedApplications(responseCache.getVersionDelta().get());
+            if (!disableTransparentFallback) {
+                Applications allAppsInLocalRegion = getApplicationsFromLocalRegionOnly();
+                for (RemoteRegionRegistry remoteRegistry : regionNameVSRemoteRegistry.values()) {
+                    for (Application application : remoteRegistry.getApplicationDeltas().getRegisteredApplications()) {
+                        if (allAppsInLocalRegion.getRegisteredApplications(application.getName()) == null) {
+                            apps.addApplication(application);
+                        }
+                    }
+                }
+            }
+            apps.setAppsHashCode((disableTransparentFallback ? getApplicationsFromLocalRegionOnly() : getApplicationsFromAllRemoteRegions()).getReconcileHashCode());
+            return apps;
+        });
+    }
+
+    @Override
+    public Applications getApplicationDeltasFromMultipleRegions(String[] remoteRegions) {
+        String[] regions = remoteRegions != null ? remoteRegions : allKnownRemoteRegions;
+        boolean includeRemoteRegion = regions.length != 0;
+        if (includeRemoteRegion) {
+            EurekaMonitors.GET_ALL_WITH_REMOTE_REGIONS_CACHE_MISS_DELTA.increment();
+        } else {
+            EurekaMonitors.GET_ALL_CACHE_MISS_DELTA.increment();
+        }
+        return readConsistently(() -> {
+            Applications apps = recentlyChangedApplications(responseCache.getVersionDeltaWithRegions().get());
+            if (includeRemoteRegion) {
+                for (String remoteRegion : regions) {
+                    RemoteRegionRegistry remoteRegistry = regionNameVSRemoteRegistry.get(remoteRegion);
+                    Applications remoteAppsDelta = remoteRegistry != null ? remoteRegistry.getApplicationDeltas() : null;
+                    if (remoteAppsDelta == null) {
+                        continue;
+                    }
+                    for (Application application : remoteAppsDelta.getRegisteredApplications()) {
+                        if (!shouldFetchFromRemoteRegistry(application.getName(), remoteRegion)) {
+                            continue;
+                        }
+                        Application appInstanceTillNow = apps.getRegisteredApplications(application.getName());
+                        if (appInstanceTillNow == null) {
+                            appInstanceTillNow = new Application(application.getName());
+                            apps.addApplication(appInstanceTillNow);
+                        }
+                        for (InstanceInfo instanceInfo : application.getInstances()) {
+                            appInstanceTillNow.addInstance(new InstanceInfo(instanceInfo));
+                        }
+                    }
+                }
+            }
+            apps.setAppsHashCode(getApplicationsFromMultipleRegions(regions).getReconcileHashCode());
+            return apps;
+        });
+    }
+
+    @Override
+    public InstanceInfo getInstanceByAppAndId(String appName, String id, boolean includeRemoteRegions) {
+        ApplicationLeases leases = applications.get(appName);
+        SlottedLease lease = leases != null ? leases.get(id) : null;
+        if (lease != null && (!isLeaseExpirationEnabled() || !lease.isExpired())) {
+            return ApplicationLeases.decorate(lease);
+        }
+        if (includeRemoteRegions) {
+            for (RemoteRegionRegistry remoteRegistry : regionNameVSRemoteRegistry.values()) {
+                Application application = remoteRegistry.getApplication(appName);
+                if (application != null) {
+                    return application.getByInstanceId(id);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Deprecated
+    public List<InstanceInfo> getInstancesById(String id, boolean includeRemoteRegions) {
+        List<InstanceInfo> list = new ArrayList<>();
+        for (ApplicationLeases leases : applications.values()) {
+            SlottedLease lease = leases.get(id);
+            if (lease != null && (!isLeaseExpirationEnabled() || !lease.isExpired())) {
+                list.add(ApplicationLeases.decorate(lease));
+            }
+        }
+        if (list.isEmpty() && includeRemoteRegions) {
+            for (RemoteRegionRegistry remoteRegistry : regionNameVSRemoteRegistry.values()) {
+                for (Application application : remoteRegistry.getApplications().getRegisteredApplications()) {
+                    InstanceInfo instanceInfo = application.getByInstanceId(id);
+                    if (instanceInfo != null) {
+                        list.add(instanceInfo);
+                        return list;
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public long getLocalRegistrySize() {
+        long total = 0;
+        for (ApplicationLeases leases : applications.values()) {
+            total += leases.size();
+        }
+        return total;
+    }
+
+    @Override
+    public long getNumOfRenewsInLastMin() {
+        return renewsLastMin.getCount();
+    }
+
+    @Override
+    public long getNumOfReplicationsInLastMin() {
+        return replicationsLastMin.getCount();
+    }
+
+    @Override
+    public List<Pair<Long, String>> getLastNRegisteredInstances() {
+        return recent(recentRegisteredQueue);
+    }
+
+    @Override
+    public List<Pair<Long, String>> getLastNCanceledInstances() {
+        return recent(recentCanceledQueue);
+    }
+
+    // ---------------------------------------------------------------- 供响应缓存使用
+
+    Collection<ApplicationLeases> applicationLeases() {
+        return applications.values();
+    }
+
+    /**
+     * @return 已完成的写操作数，没有变化时注册表没有修改
+     */
+    long getModificationCount() {
+        return modifications.get();
+    }
+
+    /**
+     * @return 全量注册表（{@link #getApplications()}）是否包含其它区域的应用
+     */
+    boolean includesRemoteRegions() {
+        return !serverConfig.disableTransparentFallbackToOtherRegion() && allKnownRemoteRegions != null && allKnownRemoteRegions.length > 0;
+    }
+
+    // ---------------------------------------------------------------- 供注册表变化推送使用
+
+    String getChangeEpoch() {
+        return changeEpoch;
+    }
+
+    /**
+     * @return 最后一个变化的序号
+     */
+    long getChangeSequence() {
+        return changeSequence.get();
+    }
+
+    /**
+     * 注册表修改后（写操作完成后）通知，在写操作的线程中执行，不能阻塞
+     */
+    void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * 序号在(since, until]之间的变化，与增量获取的格式一致（实例的ActionType为变化类型），版本号为until，apps hashcode为本地区域全量注册表的hashcode
+     * @param since 客户端已获取的最后一个变化的序号
+     * @param until 本次返回的最后一个变化的序号（{@link #getChangeSequence()}），之后的变化下次获取
+     * @return 没有变化时返回没有应用的Applications；since之后的变化已被清理（超过保留时间）时返回null，需重新获取全量注册表
+     */
+    Applications getChangesSince(long since, long until) {
+        return readConsistently(() -> {
+            List<Application> changed = new ArrayList<>();
+            Map<String, Application> applicationInstancesMap = new HashMap<>();
+            for (RecentlyChangedItem item : recentlyChangedQueue) {
+                if (item.sequence <= since) {
+                    continue;
+                }
+                if (item.sequence > until) {
+                    break;
+                }
+                InstanceInfo instanceInfo = item.lease.getHolder();
+                Application app = applicationInstancesMap.get(instanceInfo.getAppName());
+                if (app == null) {
+                    app = new Application(instanceInfo.getAppName());
+                    applicationInstancesMap.put(instanceInfo.getAppName(), app);
+                    changed.add(app);
+                }
+                app.addInstance(new InstanceInfo(ApplicationLeases.decorate(item.lease)));
+            }
+            // 遍历期间清理了since之后的变化
+            if (since < truncatedSequence) {
+                return null;
+            }
+            return new Applications(localApplications().getReconcileHashCode(), until, changed);
+        });
+    }
+
+    // ---------------------------------------------------------------- 内部方法
+
+    /**
+     * 记录实例的变化，加锁保证队列中的顺序与序号一致（按序号读取时不会遗漏）
+     */
+    private void recordChange(Lease<InstanceInfo> lease) {
+        synchronized (recentlyChangedQueue) {
+            long sequence = changeSequence.get() + 1;
+            recentlyChangedQueue.add(new RecentlyChangedItem(lease, sequence));
+            changeSequence.set(sequence);
+        }
+    }
+
+    private void beginWrite() {
+        writers.incrementAndGet();
+    }
+
+    private void endWrite() {
+        modifications.incrementAndGet();
+        writers.decrementAndGet();
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 读取期间没有写操作时返回读取结果，否则重新读取
+     */
+    private <T> T readConsistently(Supplier<T> reader) {
+        T result = null;
+        for (int i = 0; i < CONSISTENT_READ_ATTEMPTS; i++) {
+            long before = modifications.get();
+            if (writers.get() != 0) {
+                Thread.yield();
+                continue;
+            }
+            result = reader.get();
+            if (writers.get() == 0 && modifications.get() == before) {
+                return result;
+            }
+        }
+        return result != null ? result : reader.get();
+    }
+
+    /**
+     * 版本号通过构造函数设置（Applications#setVersion已废弃）
+     */
+    private Applications localApplications() {
+        List<Application> local = new ArrayList<>(applications.size());
+        for (ApplicationLeases leases : applications.values()) {
+            Application app = leases.snapshot();
+            if (app != null) {
+                local.add(app);
+            }
+        }
+        return new Applications(null, 1L, local);
+    }
+
+    private Applications recentlyChangedApplications(long version) {
+        List<Application> changed = new ArrayList<>();
+        Map<String, Application> applicationInstancesMap = new HashMap<>();
+        for (RecentlyChangedItem item : recentlyChangedQueue) {
+            InstanceInfo instanceInfo = item.lease.getHolder();
+            Application app = applicationInstancesMap.get(instanceInfo.getAppName());
+            if (app == null) {
+                app = new Application(instanceInfo.getAppName());
+                applicationInstancesMap.put(instanceInfo.getAppName(), app);
+                changed.add(app);
+            }
+            app.addInstance(new InstanceInfo(ApplicationLeases.decorate(item.lease)));
+        }
+        return new Applications(null, version, changed);
+    }
+
+    private boolean shouldFetchFromRemoteRegistry(String appName, String remoteRegion) {
+        Set<String> whiteList = serverConfig.getRemoteRegionAppWhitelist(remoteRegion);
+        if (whiteList == null) {
+            whiteList = serverConfig.getRemoteRegionAppWhitelist(null);
+        }
+        return whiteList == null || whiteList.contains(appName);
+    }
+
+    private void invalidateCache(String appName, String vipAddress, String secureVipAddress) {
+        ResponseCache cache = responseCache;
+        if (cache != null) {
+            cache.invalidate(appName, vipAddress, secureVipAddress);
+        }
+    }
+
+    /**
+     * 与PeerAwareInstanceRegistryImpl#replicateToPeers一致，同步到集群中的其它节点（集群同步的请求不再同步）
+     */
+    private void replicate(Action action, String appName, String id, InstanceInfo info, InstanceStatus newStatus, boolean isReplication) {
+        if (isReplication) {
+            replicationsLastMin.increment();
+            return;
+        }
+        PeerEurekaNodes nodes = peerEurekaNodes;
+        if (nodes == null) {
+            return;
+        }
+        // 实例信息只获取一次（原实现对每个节点都会重新获取，并构建一次租约信息）
+        InstanceInfo current = null;
+        for (PeerEurekaNode node : nodes.getPeerEurekaNodes()) {
+            if (nodes.isThisMyUrl(node.getServiceUrl())) {
+                continue;
+            }
+            if (current == null && action != Action.Register && action != Action.Cancel) {
+                current = getInstanceByAppAndId(appName, id, false);
+            }
+            try {
+                switch (action) {
+                    case Cancel:
+                        node.cancel(appName, id);
+                        break;
+                    case Heartbeat:
+                        node.heartbeat(appName, id, current, overriddenInstanceStatusMap.get(id), false);
+                        break;
+                    case Register:
+                        node.register(info);
+                        break;
+                    case StatusUpdate:
+                        node.statusUpdate(appName, id, newStatus, current);
+                        break;
+                    case DeleteStatusOverride:
+                        node.deleteStatusOverride(appName, id, current);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void publishEvent(ApplicationEvent event) {
+        if (context != null) {
+            context.publishEvent(event);
+        }
+    }
+
+    private static void updateDirtyTimestamp(InstanceInfo info, String lastDirtyTimestamp) {
+        long replicaDirtyTimestamp = lastDirtyTimestamp != null ? Long.parseLong(lastDirtyTimestamp) : 0;
+        if (replicaDirtyTimestamp > info.getLastDirtyTimestamp()) {
+            info.setLastDirtyTimestamp(replicaDirtyTimestamp);
+        }
+    }
+
+    private static void addRecent(Deque<Pair<Long, String>> queue, String appName, String id) {
+        synchronized (queue) {
+            if (queue.size() >= RECENT_QUEUE_SIZE) {
+                queue.pollFirst();
+            }
+            queue.addLast(new Pair<>(System.currentTimeMillis(), appName + "(" + id + ")"));
+        }
+    }
+
+    /**
+     * @return 最近的在前
+     */
+    private static List<Pair<Long, String>> recent(Deque<Pair<Long, String>> queue) {
+        synchronized (queue) {
+            List<Pair<Long, String>> list = new ArrayList<>(queue);
+            Collections.reverse(list);
+            return list;
+        }
+    }
+
+    private static final class RecentlyChangedItem {
+
+        private final Lease<InstanceInfo> lease;
+
+        private final long lastUpdateTime;
+
+        private final long sequence;
+
+        RecentlyChangedItem(Lease<InstanceInfo> lease, long sequence) {
+            this.lease = lease;
+            this.lastUpdateTime = System.currentTimeMillis();
+            this.sequence = sequence;
+        }
+
+    }
+
+}
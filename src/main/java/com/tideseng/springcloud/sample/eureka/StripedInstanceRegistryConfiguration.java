@@ -0,0 +1,41 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.eureka.resources.ServerCodecs;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 由{@link EnableStripedInstanceRegistry}通过spring.factories导入
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+@Configuration
+public class StripedInstanceRegistryConfiguration {
+
+    /**
+     * BeanDefinitionRegistryPostProcessor需尽早注册，使用静态方法避免提前初始化配置类
+     * @return
+     */
+    @Bean
+    public static StripedInstanceRegistryPostProcessor stripedInstanceRegistryPostProcessor() {
+        return new StripedInstanceRegistryPostProcessor();
+    }
+
+    /**
+     * 注册表变化的长轮询接口，没有客户端监听时不产生开销，与EurekaServerAutoConfiguration一样只在@EnableEurekaServer时注册
+     * @param registry
+     * @param serverCodecs
+     * @param environment
+     * @return
+     */
+    @Bean
+    @ConditionalOnBean(type = "org.springframework.cloud.netflix.eureka.server.EurekaServerMarkerConfiguration$Marker")
+    public RegistryWatchController registryWatchController(StripedInstanceRegistry registry, ServerCodecs serverCodecs, Environment environment) {
+        return new RegistryWatchController(registry, serverCodecs,
+                environment.getProperty("application.eureka.watch.max-timeout", Long.class, 60000L),
+                environment.getProperty("application.eureka.watch.batch-delay", Long.class, 20L));
+    }
+
+}
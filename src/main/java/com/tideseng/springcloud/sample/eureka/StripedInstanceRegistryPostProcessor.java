@@ -0,0 +1,57 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaClientConfig;
+import com.netflix.eureka.EurekaServerConfig;
+import com.netflix.eureka.resources.ServerCodecs;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.cloud.netflix.eureka.server.InstanceRegistryProperties;
+import org.springframework.core.env.Environment;
+
+/**
+ * 将EurekaServerAutoConfiguration注册的peerAwareInstanceRegistry（没有@ConditionalOnMissingBean，无法直接覆盖）替换为{@link StripedInstanceRegistry}
+ * PeerEurekaNodes、EurekaServerContext、EurekaServerBootstrap按PeerAwareInstanceRegistry类型注入，不受影响
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+public class StripedInstanceRegistryPostProcessor implements BeanDefinitionRegistryPostProcessor {
+
+    static final String REGISTRY_BEAN_NAME = "peerAwareInstanceRegistry";
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        if (!registry.containsBeanDefinition(REGISTRY_BEAN_NAME)) {
+            return;
+        }
+        RootBeanDefinition definition = new RootBeanDefinition(StripedInstanceRegistryPostProcessor.class);
+        definition.setFactoryMethodName("stripedInstanceRegistry");
+        definition.setAutowireMode(AutowireCapableBeanFactory.AUTOWIRE_CONSTRUCTOR);
+        registry.removeBeanDefinition(REGISTRY_BEAN_NAME);
+        registry.registerBeanDefinition(REGISTRY_BEAN_NAME, definition);
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    }
+
+    /**
+     * 与EurekaServerAutoConfiguration#peerAwareInstanceRegistry一致
+     */
+    public static StripedInstanceRegistry stripedInstanceRegistry(EurekaServerConfig serverConfig, EurekaClientConfig clientConfig, ServerCodecs serverCodecs,
+                                                                  EurekaClient eurekaClient, InstanceRegistryProperties properties, Environment environment) {
+        // 提前初始化EurekaClient
+        eurekaClient.getApplications();
+        StripedInstanceRegistry registry = new StripedInstanceRegistry(serverConfig, clientConfig, serverCodecs, eurekaClient,
+                properties.getExpectedNumberOfClientsSendingRenews(), properties.getDefaultOpenForTrafficCount());
+        registry.setPublishRenewEvents(environment.getProperty("application.eureka.striped-registry.renew-events", Boolean.class, true));
+        registry.setFragmentResponseCache(environment.getProperty("application.eureka.striped-registry.fragment-cache", Boolean.class, true));
+        registry.setEvictionTickMs(environment.getProperty("application.eureka.striped-registry.eviction-tick", Long.class, 500L));
+        return registry;
+    }
+
+}
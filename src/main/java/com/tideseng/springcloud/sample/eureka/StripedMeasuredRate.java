@@ -0,0 +1,64 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 与{@link com.netflix.eureka.util.MeasuredRate}一致的每个周期计数，使用LongAdder计数，续约高峰时多个线程递增不相互竞争
+ * @author jiahuan
+ * @create 2022/7/1
+ */
+final class StripedMeasuredRate {
+
+    private final String name;
+
+    private final long sampleInterval;
+
+    private final LongAdder currentBucket = new LongAdder();
+
+    private volatile long lastBucket;
+
+    private Timer timer;
+
+    /**
+     * @param name 定时器线程名称
+     * @param sampleInterval 统计周期（毫秒）
+     */
+    StripedMeasuredRate(String name, long sampleInterval) {
+        this.name = name;
+        this.sampleInterval = sampleInterval;
+    }
+
+    synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = new Timer(name, true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                lastBucket = currentBucket.sumThenReset();
+            }
+        }, sampleInterval, sampleInterval);
+    }
+
+    synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * @return 上一个周期的计数
+     */
+    long getCount() {
+        return lastBucket;
+    }
+
+    void increment() {
+        currentBucket.increment();
+    }
+
+}
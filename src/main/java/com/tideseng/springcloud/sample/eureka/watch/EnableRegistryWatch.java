@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.eureka.watch;
+
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.*;
+
+/**
+ * 开启注册表变化的监听（{@link RegistryWatcher}），Eureka Server的注册表变化后立即更新本地注册表及Ribbon的服务列表
+ * 服务端需使用{@link com.tideseng.springcloud.sample.eureka.EnableStripedInstanceRegistry}，可通过application.eureka.watch.enabled=false关闭
+ * @author jiahuan
+ * @create 2022/7/12
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@Import(EnableRegistryWatchImportSelector.class)
+public @interface EnableRegistryWatch {
+}
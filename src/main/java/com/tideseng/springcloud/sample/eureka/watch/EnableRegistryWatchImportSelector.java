@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.eureka.watch;
+
+import org.springframework.cloud.commons.util.SpringFactoryImportSelector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * @author jiahuan
+ * @create 2022/7/12
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class EnableRegistryWatchImportSelector extends SpringFactoryImportSelector<EnableRegistryWatch> {
+
+    @Override
+    protected boolean isEnabled() {
+        return getEnvironment().getProperty("application.eureka.watch.enabled", Boolean.class, Boolean.TRUE);
+    }
+
+}
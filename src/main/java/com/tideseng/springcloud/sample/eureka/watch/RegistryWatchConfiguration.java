@@ -0,0 +1,28 @@
+package com.tideseng.springcloud.sample.eureka.watch;
+
+import com.netflix.discovery.EurekaClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 由{@link EnableRegistryWatch}通过spring.factories导入
+ * @author jiahuan
+ * @create 2022/7/12
+ */
+@Configuration
+public class RegistryWatchConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public RegistryWatcher registryWatcher(EurekaClient eurekaClient, EurekaClientConfigBean clientConfig,
+                                           ObjectProvider<SpringClientFactory> springClientFactory, Environment environment) {
+        return new RegistryWatcher(eurekaClient, clientConfig, springClientFactory,
+                environment.getProperty("application.eureka.watch.path", "/registry/watch"),
+                environment.getProperty("application.eureka.watch.timeout", Long.class, 30000L),
+                environment.getProperty("application.eureka.watch.retry-delay", Long.class, 5000L));
+    }
+
+}
@@ -0,0 +1,289 @@
+package com.tideseng.springcloud.sample.eureka.watch;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.converters.wrappers.DecoderWrapper;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.loadbalancer.DynamicServerListLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.tideseng.springcloud.sample.eureka.RegistryWatchController;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 监听Eureka Server的注册表变化（{@link RegistryWatchController}），收到变化后立即刷新本地注册表及Ribbon的服务列表
+ *      一个守护线程循环发起长轮询，携带已获取的最后一个变化的序号（X-Registry-Sequence），没有变化时请求挂起，服务端超时返回204后重新发起
+ *      收到变化后不直接修改本地注册表，而是将DiscoveryClient#refreshRegistry()提交到DiscoveryClient的cacheRefreshExecutor执行（与定时获取相同的线程池及更新路径），
+ *      由DiscoveryClient按增量获取、校验hashcode（不一致时获取全量注册表）并发布缓存刷新事件（CloudEurekaClient发布{@link HeartbeatEvent}，网关等刷新路由），
+ *      与定时获取的并发由DiscoveryClient自身的更新锁及获取代数处理，不再有监听线程直接修改注册表的竞争；刷新失败时不更新序号，重试时重新收到这些变化
+ *      刷新完成后更新使用了变化的服务（按应用名、VIP匹配，全量注册表时为所有服务）的Ribbon负载均衡器的服务列表（{@link DynamicServerListLoadBalancer#updateListOfServers()}）
+ *      请求失败时换下一个serviceUrl，间隔retry-delay毫秒后重试
+ *      refreshRegistry、cacheRefreshExecutor不是公开的，通过反射获取（Eureka 1.9.x，获取不到时不启动），EurekaClient为刷新范围的代理时每次刷新获取当前的目标对象
+ * 原有的定时获取（registryFetchIntervalSeconds）及Ribbon的定时更新保持不变，作为兜底
+ * 服务端需设置eureka.server.use-read-only-response-cache=false，否则刷新时获取到的是只读缓存中旧的增量（只读缓存默认30秒同步一次）
+ * 不获取注册表（eureka.client.fetch-registry=false）或获取其它区域的注册表时不启动
+ * <pre>
+ *     application.eureka.watch.path=/registry/watch   服务端接口路径，serviceUrl去掉/eureka/后拼接
+ *     application.eureka.watch.timeout=30000          没有变化时服务端挂起请求的时间（毫秒）
+ *     application.eureka.watch.retry-delay=5000       请求失败后重试的间隔（毫秒）
+ * </pre>
+ * @author jiahuan
+ * @create 2022/7/12
+ */
+public class RegistryWatcher implements Closeable {
+
+    private static final Method REFRESH_REGISTRY = ReflectionUtils.findMethod(DiscoveryClient.class, "refreshRegistry");
+
+    private static final Field CACHE_REFRESH_EXECUTOR = ReflectionUtils.findField(DiscoveryClient.class, "cacheRefreshExecutor");
+
+    static {
+        if (REFRESH_REGISTRY != null && CACHE_REFRESH_EXECUTOR != null) {
+            ReflectionUtils.makeAccessible(REFRESH_REGISTRY);
+            ReflectionUtils.makeAccessible(CACHE_REFRESH_EXECUTOR);
+        }
+    }
+
+    private final EurekaClient eurekaClient;
+
+    private final EurekaClientConfigBean clientConfig;
+
+    private final ObjectProvider<SpringClientFactory> springClientFactory;
+
+    private final String path;
+
+    private final long timeout;
+
+    private final long retryDelay;
+
+    private final DecoderWrapper decoder = CodecWrappers.getCodec(CodecWrappers.LegacyJacksonJson.class);
+
+    private ExecutorService executor;
+
+    private volatile HttpURLConnection connection;
+
+    private volatile boolean closed;
+
+    /** 以下字段只由监听线程访问 */
+    private long since = -1;
+
+    private String epoch;
+
+    private int urlIndex;
+
+    public RegistryWatcher(EurekaClient eurekaClient, EurekaClientConfigBean clientConfig, ObjectProvider<SpringClientFactory> springClientFactory,
+                           String path, long timeout, long retryDelay) {
+        this.eurekaClient = eurekaClient;
+        this.clientConfig = clientConfig;
+        this.springClientFactory = springClientFactory;
+        this.path = path;
+        this.timeout = timeout;
+        this.retryDelay = retryDelay;
+    }
+
+    public synchronized void start() {
+        if (executor != null || closed || REFRESH_REGISTRY == null || CACHE_REFRESH_EXECUTOR == null || !clientConfig.shouldFetchRegistry()
+                || (clientConfig.fetchRegistryForRemoteRegions() != null && !clientConfig.fetchRegistryForRemoteRegions().isEmpty())) {
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eureka-registry-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::run);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        HttpURLConnection current = connection;
+        if (current != null) {
+            current.disconnect();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                poll();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                e.printStackTrace();
+                urlIndex++;
+                try {
+                    TimeUnit.MILLISECONDS.sleep(retryDelay);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        List<String> serviceUrls = clientConfig.getEurekaServerServiceUrls(zone());
+        if (serviceUrls.isEmpty()) {
+            throw new IllegalStateException("No eureka server service url");
+        }
+        URL url = new URL(watchUrl(serviceUrls.get(Math.floorMod(urlIndex, serviceUrls.size()))));
+        HttpURLConnection current = (HttpURLConnection) url.openConnection();
+        connection = current;
+        try {
+            current.setConnectTimeout(clientConfig.getEurekaServerConnectTimeoutSeconds() * 1000);
+            current.setReadTimeout((int) timeout + clientConfig.getEurekaServerReadTimeoutSeconds() * 1000);
+            current.setRequestProperty("Accept", "application/json");
+            if (url.getUserInfo() != null) {
+                String userInfo = URLDecoder.decode(url.getUserInfo(), "UTF-8");
+                current.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(userInfo.getBytes(StandardCharsets.UTF_8)));
+            }
+            int status = current.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NO_CONTENT) {
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response status " + status + " from " + url);
+            }
+            String body;
+            try (InputStream in = current.getInputStream()) {
+                body = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+            }
+            long sequence = Long.parseLong(current.getHeaderField(RegistryWatchController.SEQUENCE_HEADER));
+            boolean snapshot = RegistryWatchController.TYPE_SNAPSHOT.equals(current.getHeaderField(RegistryWatchController.TYPE_HEADER));
+            refreshRegistry();
+            refreshLoadBalancers(snapshot ? null : changed(decoder.decode(body, Applications.class)));
+            since = sequence;
+            epoch = current.getHeaderField(RegistryWatchController.EPOCH_HEADER);
+        } finally {
+            connection = null;
+        }
+    }
+
+    /**
+     * 在DiscoveryClient的cacheRefreshExecutor中执行refreshRegistry并等待完成
+     *      refreshRegistry会捕获获取失败的异常，通过最后一次获取成功的时间判断本次是否成功
+     */
+    private void refreshRegistry() throws IOException, InterruptedException {
+        DiscoveryClient discoveryClient = discoveryClient();
+        ThreadPoolExecutor cacheRefreshExecutor = (ThreadPoolExecutor) ReflectionUtils.getField(CACHE_REFRESH_EXECUTOR, discoveryClient);
+        long start = System.currentTimeMillis();
+        try {
+            cacheRefreshExecutor.submit(() -> ReflectionUtils.invokeMethod(REFRESH_REGISTRY, discoveryClient)).get();
+        } catch (RejectedExecutionException | ExecutionException e) {
+            throw new IOException("Failed to refresh registry", e);
+        }
+        long period = discoveryClient.getLastSuccessfulRegistryFetchTimePeriod();
+        if (period < 0 || period > System.currentTimeMillis() - start) {
+            throw new IOException("Failed to refresh registry, last successful fetch " + period + "ms ago");
+        }
+    }
+
+    private DiscoveryClient discoveryClient() {
+        Object target = eurekaClient;
+        if (target instanceof Advised) {
+            try {
+                target = ((Advised) target).getTargetSource().getTarget();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to get target of " + eurekaClient, e);
+            }
+        }
+        if (!(target instanceof DiscoveryClient)) {
+            throw new IllegalStateException("EurekaClient is not a DiscoveryClient: " + target);
+        }
+        return (DiscoveryClient) target;
+    }
+
+    /**
+     * @return 发生变化的应用名及VIP（小写）
+     */
+    private static Set<String> changed(Applications changes) {
+        Set<String> changed = new HashSet<>();
+        for (Application application : changes.getRegisteredApplications()) {
+            for (InstanceInfo instanceInfo : application.getInstancesAsIsFromEureka()) {
+                collect(changed, instanceInfo);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param changed 发生变化的应用名及VIP，为null时更新所有服务
+     */
+    private void refreshLoadBalancers(Set<String> changed) {
+        SpringClientFactory factory = springClientFactory.getIfAvailable();
+        if (factory == null) {
+            return;
+        }
+        // 只更新已创建的Ribbon客户端
+        for (String name : factory.getContextNames()) {
+            if (changed != null && !changed.contains(name.toLowerCase())) {
+                continue;
+            }
+            try {
+                ILoadBalancer loadBalancer = factory.getLoadBalancer(name);
+                if (loadBalancer instanceof DynamicServerListLoadBalancer) {
+                    ((DynamicServerListLoadBalancer<?>) loadBalancer).updateListOfServers();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private String watchUrl(String serviceUrl) throws IOException {
+        String base = serviceUrl.endsWith("/") ? serviceUrl.substring(0, serviceUrl.length() - 1) : serviceUrl;
+        if (base.endsWith("/eureka")) {
+            base = base.substring(0, base.length() - "/eureka".length());
+        }
+        StringBuilder url = new StringBuilder(base).append(path)
+                .append("?since=").append(since)
+                .append("&timeout=").append(timeout);
+        if (epoch != null) {
+            url.append("&epoch=").append(URLEncoder.encode(epoch, "UTF-8"));
+        }
+        return url.toString();
+    }
+
+    private String zone() {
+        String[] zones = clientConfig.getAvailabilityZones(clientConfig.getRegion());
+        return zones != null && zones.length > 0 ? zones[0] : EurekaClientConfigBean.DEFAULT_ZONE;
+    }
+
+    private static void collect(Set<String> changed, InstanceInfo instanceInfo) {
+        changed.add(instanceInfo.getAppName().toLowerCase());
+        for (String vipAddress : new String[]{instanceInfo.getVIPAddress(), instanceInfo.getSecureVipAddress()}) {
+            if (vipAddress != null) {
+                for (String vip : vipAddress.split(",")) {
+                    changed.add(vip.trim().toLowerCase());
+                }
+            }
+        }
+    }
+
+}
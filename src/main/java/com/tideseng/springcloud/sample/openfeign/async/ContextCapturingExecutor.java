@@ -0,0 +1,26 @@
+package com.tideseng.springcloud.sample.openfeign.async;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 包装Executor，将提交任务线程中的{@link FeignRequestContext}传递到执行任务的线程（用于CompletableFuture等场景）
+ * <pre>
+ *     CompletableFuture.supplyAsync(() -> instanceClient.getList(application), new ContextCapturingExecutor(executor));
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class ContextCapturingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    public ContextCapturingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(FeignRequestContextHolder.wrap(command));
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.tideseng.springcloud.sample.openfeign.async;
+
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Hystrix的并发策略，将调用线程中的{@link FeignRequestContext}及{@link FeignMethodContext}传递到Hystrix线程池中执行的Feign调用
+ * 需在启动时注册（Hystrix的插件只能注册一次）：
+ * <pre>
+ *     HystrixPlugins.getInstance().registerConcurrencyStrategy(new ContextCapturingHystrixConcurrencyStrategy());
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class ContextCapturingHystrixConcurrencyStrategy extends HystrixConcurrencyStrategy {
+
+    @Override
+    public <T> Callable<T> wrapCallable(Callable<T> callable) {
+        return FeignRequestContextHolder.wrap(FeignMethodContext.wrap(callable));
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.tideseng.springcloud.sample.openfeign.async;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Spring线程池的任务装饰器，将提交任务线程中的{@link FeignRequestContext}传递到执行任务的线程（用于@Async等场景）
+ * <pre>
+ *     ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+ *     executor.setTaskDecorator(new ContextCapturingTaskDecorator());
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class ContextCapturingTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return FeignRequestContextHolder.wrap(runnable);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.tideseng.springcloud.sample.openfeign.async;
+
+import com.tideseng.springcloud.sample.openfeign.request.HeaderPropagationPolicy;
+import com.tideseng.springcloud.sample.openfeign.request.PropagatedHeaders;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 原Request中需要透传给Feign调用的信息快照（不可变）：原请求头（每个请求头的第一个值）、请求参数
+ * 在Request线程中捕获后可安全地传递到其它线程（原Request对象在请求结束后会被容器回收复用，不能跨线程持有）
+ *      快照保存原请求头，各透传策略在使用时才从快照中解析（每个策略只解析一次），捕获之后才创建的拦截器（FeignClient子容器懒加载）同样按自己的策略透传
+ *      快照只在进程内传递，只有透传策略允许的请求头会被设置到Feign请求中
+ * @see FeignRequestContextHolder
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public final class FeignRequestContext {
+
+    /** 原请求头，名称忽略大小写 */
+    private final Map<String, String> headers;
+
+    /** 透传策略 -> 按该策略解析的请求头 */
+    private final ConcurrentMap<HeaderPropagationPolicy, PropagatedHeaders> propagated = new ConcurrentHashMap<>(4);
+
+    private final Map<String, String[]> parameters;
+
+    private FeignRequestContext(Map<String, String> headers, Map<String, String[]> parameters) {
+        this.headers = headers;
+        this.parameters = parameters;
+    }
+
+    /**
+     * 在Request线程中捕获快照
+     * @param request
+     * @return
+     */
+    public static FeignRequestContext capture(HttpServletRequest request) {
+        Map<String, String> headers;
+        Enumeration<String> headerNames = request.getHeaderNames();
+        if (headerNames == null || !headerNames.hasMoreElements()) {
+            headers = Collections.emptyMap();
+        } else {
+            LinkedCaseInsensitiveMap<String> copy = new LinkedCaseInsensitiveMap<>();
+            while (headerNames.hasMoreElements()) {
+                String name = headerNames.nextElement();
+                copy.putIfAbsent(name, request.getHeader(name));
+            }
+            headers = Collections.unmodifiableMap(copy);
+        }
+        Map<String, String[]> parameterMap = request.getParameterMap();
+        Map<String, String[]> parameters;
+        if (parameterMap == null || parameterMap.isEmpty()) {
+            parameters = Collections.emptyMap();
+        } else {
+            parameters = new LinkedHashMap<>(parameterMap.size());
+            for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+                parameters.put(entry.getKey(), entry.getValue().clone());
+            }
+            parameters = Collections.unmodifiableMap(parameters);
+        }
+        return new FeignRequestContext(headers, parameters);
+    }
+
+    /**
+     * 原Request的请求头（忽略大小写，与{@link HttpServletRequest#getHeader(String)}一致），不受透传策略影响
+     * @param name
+     * @return
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * 按指定策略解析的请求头
+     * @param policy
+     * @return
+     */
+    public PropagatedHeaders getHeaders(HeaderPropagationPolicy policy) {
+        return propagated.computeIfAbsent(policy, key -> key.capture(headers));
+    }
+
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+
+    public Map<String, String[]> getParameters() {
+        return parameters;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.tideseng.springcloud.sample.openfeign.async;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link FeignRequestContext}的持有者
+ *      Request线程中：从原Request捕获快照（同一个原Request只捕获一次，缓存在Request属性中）
+ *      异步线程中（CompletableFuture、@Async、Hystrix线程池等）：返回由{@link ContextCapturingTaskDecorator}/{@link ContextCapturingExecutor}传递过来的快照
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public abstract class FeignRequestContextHolder {
+
+    private static final String CONTEXT_ATTRIBUTE = FeignRequestContext.class.getName();
+
+    private static final ThreadLocal<FeignRequestContext> CONTEXT_HOLDER = new ThreadLocal<>();
+
+    /**
+     * 获取当前线程的快照：优先使用线程中传递过来的快照，其次从当前线程的原Request中捕获
+     * @return 既不在Request线程中、也没有传递快照时返回null
+     */
+    public static FeignRequestContext current() {
+        FeignRequestContext context = CONTEXT_HOLDER.get();
+        if (context != null) {
+            return context;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        Object cached = request.getAttribute(CONTEXT_ATTRIBUTE);
+        if (cached instanceof FeignRequestContext) {
+            return (FeignRequestContext) cached;
+        }
+        context = FeignRequestContext.capture(request);
+        request.setAttribute(CONTEXT_ATTRIBUTE, context);
+        return context;
+    }
+
+    /**
+     * 仅获取线程中传递过来的快照（不从原Request捕获）
+     * @return
+     */
+    public static FeignRequestContext getPropagated() {
+        return CONTEXT_HOLDER.get();
+    }
+
+    public static void set(FeignRequestContext context) {
+        if (context == null) {
+            CONTEXT_HOLDER.remove();
+        } else {
+            CONTEXT_HOLDER.set(context);
+        }
+    }
+
+    public static void reset() {
+        CONTEXT_HOLDER.remove();
+    }
+
+    /**
+     * 包装任务：在当前线程捕获快照，在执行任务的线程中设置快照，执行完成后恢复执行线程原有的快照
+     * @param runnable
+     * @return
+     */
+    public static Runnable wrap(Runnable runnable) {
+        FeignRequestContext context = current();
+        if (context == null) {
+            return runnable;
+        }
+        return () -> {
+            FeignRequestContext previous = CONTEXT_HOLDER.get();
+            CONTEXT_HOLDER.set(context);
+            try {
+                runnable.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * 包装任务，同{@link #wrap(Runnable)}
+     * @param callable
+     * @param <T>
+     * @return
+     */
+    public static <T> Callable<T> wrap(Callable<T> callable) {
+        FeignRequestContext context = current();
+        if (context == null) {
+            return callable;
+        }
+        return () -> {
+            FeignRequestContext previous = CONTEXT_HOLDER.get();
+            CONTEXT_HOLDER.set(context);
+            try {
+                return callable.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.tideseng.springcloud.sample.openfeign.autoconfiguration;
 
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodDispatchConfiguration;
 import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinitionHolder;
@@ -23,6 +24,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -39,6 +41,8 @@ public class OperationLogConfiguration implements ImportBeanDefinitionRegistrar,
 
     private String[] feignClientPackages;
 
+    private boolean precomputedDispatch;
+
     @Override
     public void setResourceLoader(ResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
@@ -49,6 +53,7 @@ public class OperationLogConfiguration implements ImportBeanDefinitionRegistrar,
         this.environment = environment;
         this.componentPackages = StringUtils.commaDelimitedListToStringArray(environment.getProperty("application.log.conmponent.package", String.class, "com.tideseng.common"));
         this.feignClientPackages = StringUtils.commaDelimitedListToStringArray(environment.getProperty("application.log.feign-client.package", String.class, "com.tideseng.common.feign"));
+        this.precomputedDispatch = environment.getProperty("application.log.feign-client.precomputed-dispatch", Boolean.class, Boolean.FALSE);
     }
 
     @Override
@@ -89,7 +94,7 @@ public class OperationLogConfiguration implements ImportBeanDefinitionRegistrar,
 
                     Map<String, Object> attributes = annotationMetadata.getAnnotationAttributes(FeignClient.class.getCanonicalName());
                     if(!registry.containsBeanDefinition(annotationMetadata.getClassName())) {
-                        registerClientConfiguration(registry, getClientName(attributes), attributes.get("configuration"));
+                        registerClientConfiguration(registry, getClientName(attributes), getConfiguration(attributes));
                         registerFeignClient(registry, annotationMetadata, attributes);
                     }
                 }
@@ -104,6 +109,22 @@ public class OperationLogConfiguration implements ImportBeanDefinitionRegistrar,
         registry.registerBeanDefinition(name + "." + Class.forName("org.springframework.cloud.openfeign.FeignClientSpecification").getSimpleName(), builder.getBeanDefinition());
     }
 
+    /**
+     * 获取FeignClient的配置类，开启预先计算方法分发时追加{@link FeignMethodDispatchConfiguration}
+     * @param attributes
+     * @return
+     */
+    private Object getConfiguration(Map<String, Object> attributes) {
+        Object configuration = attributes.get("configuration");
+        if (!precomputedDispatch || !(configuration instanceof Class[])) {
+            return configuration;
+        }
+        Class<?>[] configurations = (Class<?>[]) configuration;
+        Class<?>[] merged = Arrays.copyOf(configurations, configurations.length + 1);
+        merged[configurations.length] = FeignMethodDispatchConfiguration.class;
+        return merged;
+    }
+
     private void registerFeignClient(BeanDefinitionRegistry registry, AnnotationMetadata annotationMetadata, Map<String, Object> attributes) throws ClassNotFoundException {
         String className = annotationMetadata.getClassName();
         BeanDefinitionBuilder definition = BeanDefinitionBuilder.genericBeanDefinition(Class.forName("org.springframework.cloud.openfeign.FeignClientFactoryBean"));
@@ -1,6 +1,10 @@
 package com.tideseng.springcloud.sample.openfeign.body;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
 import feign.Request;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
@@ -8,14 +12,39 @@ import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 默认的FeignClient拦截Body体配置，在请求前自定义修改Body体
+ * ObjectMapper及按类型缓存的ObjectReader/ObjectWriter全局共享，避免每次请求重复创建；
+ * doFilter返回{@link #readBody(RequestTemplate, Class)}读取出的原对象时，只有调用过{@link #markModified()}（原地修改过）才重新序列化并替换Body，
+ * 未修改时不序列化、不替换Body；返回其它对象时总是序列化并替换
  * @author jiahuan
  * @create 2022/6/14
  */
 public abstract class DefaultFeignClientInterceptorBodyConfig implements RequestInterceptor {
 
+    /**
+     * 共享的ObjectMapper（线程安全，创建成本高，不应在每次请求中创建）
+     */
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    /**
+     * 记录当前线程最近一次通过readBody反序列化出的对象，用于判断doFilter是否返回了原对象
+     */
+    private static final ThreadLocal<Object> DECODED_BODY = new ThreadLocal<>();
+
+    /**
+     * 当前线程通过readBody反序列化出的对象是否被原地修改过（{@link #markModified()}）
+     */
+    private static final ThreadLocal<Boolean> MODIFIED = new ThreadLocal<>();
+
     /**
      * OpenFeign拦截器的拦截方法
      * @param requestTemplate
@@ -23,27 +52,120 @@ public abstract class DefaultFeignClientInterceptorBodyConfig implements Request
     @Override
     public void apply(RequestTemplate requestTemplate) {
         ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        if(attributes != null) {
-            HttpServletRequest request = attributes.getRequest();
-            // 获取要更换的Body对象
-            Object object = doFilter(requestTemplate, request);
-            if(object != null) {
-                try {
-                    // 更换Body体，需要先序列化对象，再转为字节数组【这里仅仅是为了演示】
-                    requestTemplate.body(Request.Body.encoded(new ObjectMapper().writeValueAsString(object).getBytes(requestTemplate.requestCharset()), requestTemplate.requestCharset()));
-                } catch (Exception e) {
-                    e.printStackTrace();
+        // 异步线程中使用从Request线程传递过来的快照，都没有时不进行处理
+        FeignRequestContext context = attributes == null ? FeignRequestContextHolder.getPropagated() : null;
+        if(attributes != null || context != null) {
+            try {
+                // 获取要更换的Body对象，返回未修改的原对象时视为不替换
+                Object object = changedBody(attributes != null ? doFilter(requestTemplate, attributes.getRequest()) : doFilter(requestTemplate, context));
+                if(object != null) {
+                    // 直接序列化为字节数组，不经过String中转
+                    byte[] bytes = writer(object.getClass()).writeValueAsBytes(object);
+                    requestTemplate.body(Request.Body.encoded(bytes, requestTemplate.requestCharset()));
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                DECODED_BODY.remove();
+                MODIFIED.remove();
             }
         }
     }
 
+    /**
+     * 执行{@link #doFilter(RequestTemplate, HttpServletRequest)}并清理readBody记录的线程变量，不修改Body
+     * 供组合拦截器（{@link com.tideseng.springcloud.sample.openfeign.chain.BodyConfigStage}）调用，返回值由共享的上下文统一序列化写回
+     * @param requestTemplate
+     * @param request
+     * @return 不需要替换Body（返回null或未修改的原对象）时返回null
+     */
+    public Object filterBody(RequestTemplate requestTemplate, HttpServletRequest request) {
+        try {
+            return changedBody(doFilter(requestTemplate, request));
+        } finally {
+            DECODED_BODY.remove();
+            MODIFIED.remove();
+        }
+    }
+
+    /**
+     * 异步线程中执行{@link #doFilter(RequestTemplate, FeignRequestContext)}，同{@link #filterBody(RequestTemplate, HttpServletRequest)}
+     * @param requestTemplate
+     * @param context
+     * @return
+     */
+    public Object filterBody(RequestTemplate requestTemplate, FeignRequestContext context) {
+        try {
+            return changedBody(doFilter(requestTemplate, context));
+        } finally {
+            DECODED_BODY.remove();
+            MODIFIED.remove();
+        }
+    }
+
+    /**
+     * doFilter返回readBody读取出的原对象且未调用{@link #markModified()}时不需要替换Body
+     */
+    private static Object changedBody(Object object) {
+        if (object != null && object == DECODED_BODY.get() && !Boolean.TRUE.equals(MODIFIED.get())) {
+            return null;
+        }
+        return object;
+    }
+
     /**
      * 抽象方法，由子类实现；返回值不为空时则替换body体、返回值为空时不进行任何处理
+     * 只在Request线程中调用，request不为空；异步线程中调用{@link #doFilter(RequestTemplate, FeignRequestContext)}
+     * 可直接修改{@link #readBody(RequestTemplate, Class)}读取的对象并返回，修改后需调用{@link #markModified()}，否则视为未修改、不替换Body
      * @param requestTemplate
      * @param request
      * @return
      */
     public abstract Object doFilter(RequestTemplate requestTemplate, HttpServletRequest request);
 
-}
\ No newline at end of file
+    /**
+     * 异步线程中（CompletableFuture、@Async、Hystrix线程池等，没有原Request）调用，从Request线程传递过来的快照中获取原请求头、请求参数
+     * 默认返回null（不修改Body），需要在异步线程中修改Body的子类重写该方法，返回值的处理与{@link #doFilter(RequestTemplate, HttpServletRequest)}一致
+     * @param requestTemplate
+     * @param context
+     * @return
+     */
+    public Object doFilter(RequestTemplate requestTemplate, FeignRequestContext context) {
+        return null;
+    }
+
+    /**
+     * 使用缓存的ObjectReader直接从Body字节数组反序列化（不经过asString中转）
+     * @param requestTemplate
+     * @param type
+     * @param <T>
+     * @return Body为空时返回null
+     * @throws IOException
+     */
+    protected <T> T readBody(RequestTemplate requestTemplate, Class<T> type) throws IOException {
+        byte[] bytes = requestTemplate.requestBody().asBytes();
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        T body = reader(type).readValue(bytes);
+        DECODED_BODY.set(body);
+        MODIFIED.remove();
+        return body;
+    }
+
+    /**
+     * 标记{@link #readBody(RequestTemplate, Class)}读取出的对象已被原地修改，doFilter返回该对象时重新序列化并替换Body
+     */
+    protected static void markModified() {
+        MODIFIED.set(Boolean.TRUE);
+    }
+
+    protected static ObjectReader reader(Class<?> type) {
+        return READERS.computeIfAbsent(type, OBJECT_MAPPER::readerFor);
+    }
+
+    protected static ObjectWriter writer(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, OBJECT_MAPPER::writerFor);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.tideseng.springcloud.sample.openfeign.body;
+
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
+import com.tideseng.springcloud.sample.openfeign.request.FeignRequestPath;
+import feign.Request;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FeignClient的Body体转换器，按FeignClient方法（请求方式 + 方法上声明的请求路径）声明字段级修改规则
+ * 与{@link DefaultFeignClientInterceptorBodyConfig}不同，Body体不会被反序列化为对象，而是通过{@link JsonBodyPatch}对字节流式修改
+ * 使用方式：在@FeignClient的configuration配置类中声明该拦截器（只作用于该FeignClient），
+ * 请求路径不包含@FeignClient的path前缀（见{@link FeignRequestPath}），如@FeignClient(name = "data-model", path = "/api/data-model")中的@PostMapping("/instance/list")：
+ * <pre>
+ *     &#64;Bean
+ *     public FeignClientBodyTransformer bodyTransformer() {
+ *         FeignClientBodyTransformer transformer = new FeignClientBodyTransformer();
+ *         transformer.on("POST", "/instance/list").remove("password").rename("ids", "idList").header("X-Tenant-Id", "tenantId");
+ *         return transformer;
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/14
+ */
+public class FeignClientBodyTransformer implements RequestInterceptor {
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    /** 精确路径的规则，key为"请求方式 请求路径" */
+    private final Map<String, JsonBodyPatch> exactPatches = new LinkedHashMap<>();
+
+    /** 含通配符/路径变量的规则，仅在精确匹配失败时遍历 */
+    private final Map<String, JsonBodyPatch> patternPatches = new LinkedHashMap<>();
+
+    /**
+     * 获取（不存在时创建）指定FeignClient方法的修改规则，应在启动阶段完成声明
+     * @param method 请求方式，如POST
+     * @param path FeignClient方法上声明的请求路径（不包含@FeignClient的path前缀），支持Ant风格通配符
+     * @return
+     */
+    public JsonBodyPatch on(String method, String path) {
+        String normalized = FeignRequestPath.normalize(path);
+        Map<String, JsonBodyPatch> patches = pathMatcher.isPattern(normalized) ? patternPatches : exactPatches;
+        return patches.computeIfAbsent(method.toUpperCase() + " " + normalized, key -> new JsonBodyPatch());
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        byte[] body = template.requestBody().asBytes();
+        if (body == null || body.length == 0) {
+            return;
+        }
+        JsonBodyPatch patch = getPatch(template.method(), template.path());
+        if (patch == null || patch.isEmpty()) {
+            return;
+        }
+        Charset charset = template.requestCharset();
+        if (charset != null && !StandardCharsets.UTF_8.equals(charset)) {
+            return;
+        }
+        try {
+            HttpServletRequest request = currentRequest();
+            FeignRequestContext context = request == null ? FeignRequestContextHolder.getPropagated() : null;
+            // 异步线程中从Request线程传递过来的快照中获取原请求头
+            byte[] patched = context != null ? patch.apply(body, context::getHeader) : patch.apply(body, request);
+            if (patched != null) {
+                template.body(Request.Body.encoded(patched, StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param method 请求方式
+     * @param path 请求路径，即{@link RequestTemplate#path()}（不包含@FeignClient的path前缀）
+     * @return
+     */
+    public JsonBodyPatch getPatch(String method, String path) {
+        path = FeignRequestPath.normalize(path);
+        JsonBodyPatch patch = exactPatches.get(method + " " + path);
+        if (patch != null || patternPatches.isEmpty()) {
+            return patch;
+        }
+        for (Map.Entry<String, JsonBodyPatch> entry : patternPatches.entrySet()) {
+            String key = entry.getKey();
+            int split = key.indexOf(' ');
+            if (key.regionMatches(0, method, 0, split) && method.length() == split && pathMatcher.match(key.substring(split + 1), path)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    protected HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest() : null;
+    }
+
+}
@@ -1,7 +1,7 @@
 package com.tideseng.springcloud.sample.openfeign.body;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tideseng.Application;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
 import feign.RequestTemplate;
 
 import javax.servlet.http.HttpServletRequest;
@@ -22,17 +22,28 @@ public class InstanceFeignClientInterceptorBodyConfig extends DefaultFeignClient
      */
     @Override
     public Object doFilter(RequestTemplate requestTemplate, HttpServletRequest request) {
+        return extendBody(requestTemplate);
+    }
+
+    /**
+     * 异步线程中同样扩展Body体（不依赖原Request）
+     * @param requestTemplate
+     * @param context
+     * @return
+     */
+    @Override
+    public Object doFilter(RequestTemplate requestTemplate, FeignRequestContext context) {
+        return extendBody(requestTemplate);
+    }
+
+    private Object extendBody(RequestTemplate requestTemplate) {
         // 拦截指定的远程调用接口
         if(requestTemplate.url().contains("/list")) {
-            // 获取原Body数据
-            String content = requestTemplate.requestBody().asString();
-
             try {
-                // 反序列化成指定对象，并根据对象属性进行扩展对象【这里仅仅是为了演示】
-                ObjectMapper objectMapper = new ObjectMapper();
-                Application instanceListVO = objectMapper.readValue(content, Application.class);
+                // 反序列化成指定对象（共享的ObjectReader直接读取字节数组），并根据对象属性进行扩展对象【这里仅仅是为了演示】
+                Application instanceListVO = readBody(requestTemplate, Application.class);
                 if (instanceListVO != null) {
-                    // 根据对象属性进行扩展对象
+                    // 根据对象属性进行扩展对象，可直接修改原对象并返回，修改后调用markModified()；未标记修改时不重新序列化、不替换Body
                     return instanceListVO;
                 }
             } catch (Exception e) {
@@ -42,4 +53,4 @@ public class InstanceFeignClientInterceptorBodyConfig extends DefaultFeignClient
         return null;
     }
 
-}
\ No newline at end of file
+}
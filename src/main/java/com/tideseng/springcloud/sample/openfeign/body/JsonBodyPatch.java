@@ -0,0 +1,242 @@
+package com.tideseng.springcloud.sample.openfeign.body;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Body体的字段级修改规则（新增字段、删除字段、重命名字段、将请求头注入为字段），仅作用于JSON对象的第一层字段
+ * 修改时通过{@link JsonParser}/{@link JsonGenerator}对编码后的字节进行单次流式处理，Body不会被反序列化为POJO或String
+ * @see FeignClientBodyTransformer
+ * @author jiahuan
+ * @create 2022/6/14
+ */
+public class JsonBodyPatch {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+    private enum Type { REMOVE, RENAME, SET, HEADER }
+
+    private static class Edit {
+        private final Type type;
+        private final String field;
+        /** RENAME为新字段名、SET为预先序列化好的JSON值、HEADER为请求头名称 */
+        private final String argument;
+        private final int index;
+
+        private Edit(Type type, String field, String argument, int index) {
+            this.type = type;
+            this.field = field;
+            this.argument = argument;
+            this.index = index;
+        }
+    }
+
+    private static final Function<String, String> NO_HEADERS = name -> null;
+
+    private final Map<String, Edit> edits = new HashMap<>();
+
+    /** 需要写入值的字段（SET/HEADER），原Body中不存在时追加到对象末尾 */
+    private final List<Edit> writes = new ArrayList<>();
+
+    /** 重命名后的字段名 -> 重命名的字段，原Body中已存在同名字段时由重命名的字段覆盖 */
+    private final Map<String, Edit> renames = new HashMap<>();
+
+    /**
+     * 新增字段（字段已存在时覆盖原值），值在定义时序列化一次，之后每次请求直接写入
+     * @param field
+     * @param value
+     * @return
+     */
+    public JsonBodyPatch add(String field, Object value) {
+        try {
+            return write(new Edit(Type.SET, field, OBJECT_MAPPER.writeValueAsString(value), writes.size()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("value of field " + field + " can not be serialized", e);
+        }
+    }
+
+    /**
+     * 删除字段
+     * @param field
+     * @return
+     */
+    public JsonBodyPatch remove(String field) {
+        return put(new Edit(Type.REMOVE, field, null, -1));
+    }
+
+    /**
+     * 重命名字段，原Body中已存在newName字段时覆盖该字段（原字段不存在时保留）
+     * @param field
+     * @param newName
+     * @return
+     */
+    public JsonBodyPatch rename(String field, String newName) {
+        Assert.hasText(newName, "newName must not be empty");
+        Assert.isTrue(!renames.containsKey(newName), "field " + newName + " is already a rename target");
+        Edit edit = edits.get(newName);
+        Assert.isTrue(edit == null || edit.type == Type.REMOVE || edit.type == Type.RENAME, "field " + newName + " is already written by another edit");
+        put(new Edit(Type.RENAME, field, newName, -1));
+        renames.put(newName, edits.get(field));
+        return this;
+    }
+
+    /**
+     * 将原Request的请求头注入到Body字段中（请求头不存在时不做处理，Body中已有的字段保持原值）
+     * @param headerName
+     * @param field
+     * @return
+     */
+    public JsonBodyPatch header(String headerName, String field) {
+        return write(new Edit(Type.HEADER, field, headerName, writes.size()));
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /**
+     * 对Body字节进行流式修改
+     * @param body 编码后的JSON字节（UTF-8）
+     * @param request 原Request，可为空（为空时跳过请求头注入）
+     * @return 修改后的字节；Body不是JSON对象时返回null
+     * @throws IOException
+     */
+    public byte[] apply(byte[] body, HttpServletRequest request) throws IOException {
+        return apply(body, request != null ? request::getHeader : NO_HEADERS);
+    }
+
+    /**
+     * 对Body字节进行流式修改
+     * @param body 编码后的JSON字节（UTF-8）
+     * @param headers 请求头的取值方式（如异步线程中从{@link com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext}快照中取值）
+     * @return 修改后的字节；Body不是JSON对象时返回null
+     * @throws IOException
+     */
+    public byte[] apply(byte[] body, Function<String, String> headers) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder(body.length + 64);
+        try (JsonParser parser = JSON_FACTORY.createParser(body);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            boolean[] written = new boolean[writes.size()];
+            // 已重命名的字段，及在重命名的字段之前出现的同名字段（重命名的字段不存在时在末尾写回）
+            List<String> renamed = null;
+            Map<String, TokenBuffer> shadowed = null;
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                Edit edit = edits.get(name);
+                if (edit == null) {
+                    if (renames.containsKey(name)) {
+                        // 与重命名后的字段同名，已重命名时丢弃，否则暂存
+                        if (renamed == null || !renamed.contains(name)) {
+                            TokenBuffer buffer = new TokenBuffer(parser);
+                            buffer.copyCurrentStructure(parser);
+                            shadowed = shadowed != null ? shadowed : new LinkedHashMap<>();
+                            shadowed.put(name, buffer);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        continue;
+                    }
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                    continue;
+                }
+                switch (edit.type) {
+                    case RENAME:
+                        generator.writeFieldName(edit.argument);
+                        generator.copyCurrentStructure(parser);
+                        renamed = renamed != null ? renamed : new ArrayList<>();
+                        renamed.add(edit.argument);
+                        if (shadowed != null) {
+                            shadowed.remove(edit.argument);
+                        }
+                        break;
+                    case SET:
+                        // 原值被覆盖，在原位置写入新值以保持字段顺序
+                        parser.skipChildren();
+                        written[edit.index] = writeValue(generator, edit, headers);
+                        break;
+                    case HEADER:
+                        // 请求头不存在时保留原值
+                        written[edit.index] = true;
+                        if (!writeValue(generator, edit, headers)) {
+                            generator.writeFieldName(name);
+                            generator.copyCurrentStructure(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (shadowed != null) {
+                for (Map.Entry<String, TokenBuffer> entry : shadowed.entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    try (JsonParser buffered = entry.getValue().asParser()) {
+                        buffered.nextToken();
+                        generator.copyCurrentStructure(buffered);
+                    }
+                }
+            }
+            for (Edit edit : writes) {
+                if (!written[edit.index]) {
+                    writeValue(generator, edit, headers);
+                }
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private boolean writeValue(JsonGenerator generator, Edit edit, Function<String, String> headers) throws IOException {
+        if (edit.type == Type.SET) {
+            generator.writeFieldName(edit.field);
+            generator.writeRawValue(edit.argument);
+            return true;
+        }
+        String value = headers.apply(edit.argument);
+        if (value == null) {
+            return false;
+        }
+        generator.writeStringField(edit.field, value);
+        return true;
+    }
+
+    private JsonBodyPatch write(Edit edit) {
+        Assert.isTrue(!renames.containsKey(edit.field), "field " + edit.field + " is already a rename target");
+        put(edit);
+        writes.add(edit);
+        return this;
+    }
+
+    private JsonBodyPatch put(Edit edit) {
+        Assert.hasText(edit.field, "field must not be empty");
+        Assert.isTrue(!edits.containsKey(edit.field), "field " + edit.field + " already has an edit");
+        edits.put(edit.field, edit);
+        return this;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按字节数限制大小的LRU缓存，分段加锁（每段一个按访问顺序排序的LinkedHashMap及独立的字节数上限）
+ * 缓存的是原始响应字节，占用的内存（响应及缓存键）可预期；超过单段上限的响应不缓存
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+final class BoundedResponseStore {
+
+    private final Segment[] segments;
+
+    private final long segmentCapacity;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes 缓存的最大字节数
+     * @param segmentCount 分段数，会调整为2的幂
+     */
+    BoundedResponseStore(long maxBytes, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(segmentCount, 1 << 10)) * 2 - 1);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentCapacity = Math.max(1, maxBytes / count);
+    }
+
+    CachedResponse get(CacheKey key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * 放入缓存，超过单段上限时不缓存
+     * @return 是否已缓存
+     */
+    boolean put(CacheKey key, CachedResponse response) {
+        long weight = key.weight() + response.weight();
+        if (weight > segmentCapacity) {
+            return false;
+        }
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            CachedResponse previous = segment.put(key, response);
+            if (previous != null) {
+                segment.weight -= key.weight() + previous.weight();
+            }
+            segment.weight += weight;
+            Iterator<Map.Entry<CacheKey, CachedResponse>> eldest = segment.entrySet().iterator();
+            while (segment.weight > segmentCapacity && eldest.hasNext()) {
+                Map.Entry<CacheKey, CachedResponse> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    continue;
+                }
+                segment.weight -= entry.getKey().weight() + entry.getValue().weight();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只在缓存的仍是指定响应时移除
+     */
+    void remove(CacheKey key, CachedResponse response) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.remove(key, response)) {
+                segment.weight -= key.weight() + response.weight();
+            }
+        }
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(CacheKey key) {
+        return segments[key.hashCode() & (segments.length - 1)];
+    }
+
+    private static final class Segment extends LinkedHashMap<CacheKey, CachedResponse> {
+
+        /** 只在进程内使用，不会被序列化；LinkedHashMap实现了Serializable，声明以固定版本号 */
+        private static final long serialVersionUID = 1L;
+
+        private long weight;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+
+    }
+
+}
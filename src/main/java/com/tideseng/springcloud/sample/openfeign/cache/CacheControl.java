@@ -0,0 +1,68 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import java.util.Collection;
+
+/**
+ * Cache-Control请求头/响应头中与客户端缓存相关的指令
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+final class CacheControl {
+
+    static final String HEADER = "Cache-Control";
+
+    private static final CacheControl NONE = new CacheControl(-1, false, false);
+
+    /** max-age（秒），没有时为-1 */
+    private final long maxAge;
+
+    private final boolean noStore;
+
+    private final boolean noCache;
+
+    private CacheControl(long maxAge, boolean noStore, boolean noCache) {
+        this.maxAge = maxAge;
+        this.noStore = noStore;
+        this.noCache = noCache;
+    }
+
+    static CacheControl parse(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return NONE;
+        }
+        long maxAge = -1;
+        boolean noStore = false;
+        boolean noCache = false;
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if ("no-store".equals(directive)) {
+                    noStore = true;
+                } else if (directive.startsWith("no-cache")) {
+                    noCache = true;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                    } catch (NumberFormatException e) {
+                        // 格式不正确时按没有max-age处理
+                        maxAge = -1;
+                    }
+                }
+            }
+        }
+        return new CacheControl(maxAge, noStore, noCache);
+    }
+
+    long getMaxAge() {
+        return maxAge;
+    }
+
+    boolean isNoStore() {
+        return noStore;
+    }
+
+    boolean isNoCache() {
+        return noCache;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import feign.Request;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 缓存键：请求方式、URL、参与缓存判断的请求头（规范化后的字符串）及Body体的SHA-256摘要
+ * 缓存键作为缓存条目的键保存，命中时按完整的规范化内容比较（不只比较哈希值），哈希冲突的两个请求不会取到对方的响应；
+ * Body体只保留32字节的摘要，不保留原始内容
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+final class CacheKey {
+
+    /** 对象头、字段及摘要数组的估算大小（字节） */
+    private static final long OVERHEAD = 96;
+
+    private final String canonical;
+
+    private final byte[] bodyDigest;
+
+    private final int hash;
+
+    private CacheKey(String canonical, byte[] bodyDigest) {
+        this.canonical = canonical;
+        this.bodyDigest = bodyDigest;
+        this.hash = spread(31 * canonical.hashCode() + Arrays.hashCode(bodyDigest));
+    }
+
+    static CacheKey of(Request request, String[] varyHeaders) {
+        StringBuilder canonical = new StringBuilder(request.url().length() + 32);
+        canonical.append(request.httpMethod().name()).append(' ').append(request.url());
+        for (String name : varyHeaders) {
+            // 带长度前缀，避免值中的分隔符使不同的请求头组合得到相同的字符串
+            Collection<String> values = request.headers().get(name);
+            canonical.append('\n').append(values != null ? values.size() : -1);
+            if (values != null) {
+                for (String value : values) {
+                    canonical.append(':').append(value.length()).append(':').append(value);
+                }
+            }
+        }
+        byte[] body = request.requestBody().asBytes();
+        return new CacheKey(canonical.toString(), body != null ? digest(body) : null);
+    }
+
+    /**
+     * 缓存键占用的内存（字节），计入缓存的字节数上限
+     * @return
+     */
+    long weight() {
+        return OVERHEAD + canonical.length() * 2L;
+    }
+
+    private static byte[] digest(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            // 每个Java平台都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 分段按低位选择，将高位混合到低位
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey other = (CacheKey) obj;
+        return hash == other.hash && canonical.equals(other.canonical) && Arrays.equals(bodyDigest, other.bodyDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+}
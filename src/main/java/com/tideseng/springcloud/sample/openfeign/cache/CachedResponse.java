@@ -0,0 +1,91 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import feign.Request;
+import feign.Response;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 缓存的原始响应（不可变），过期后有ETag/Last-Modified时保留，用于条件请求
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+final class CachedResponse {
+
+    /** 每个缓存项除响应内容外的估算开销（LinkedHashMap节点、对象头等，缓存键见{@link CacheKey#weight()}） */
+    private static final int OVERHEAD = 128;
+
+    private final int status;
+
+    private final String reason;
+
+    private final Map<String, Collection<String>> headers;
+
+    private final byte[] body;
+
+    private final String etag;
+
+    private final String lastModified;
+
+    /** 过期时间（System.nanoTime） */
+    private final long expiresAt;
+
+    private final long weight;
+
+    CachedResponse(int status, String reason, Map<String, Collection<String>> headers, byte[] body, String etag, String lastModified, long expiresAt) {
+        this.status = status;
+        this.reason = reason;
+        this.headers = headers;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+        long weight = OVERHEAD + (body != null ? body.length : 0);
+        for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+            weight += header.getKey().length() * 2L;
+            for (String value : header.getValue()) {
+                weight += value.length() * 2L;
+            }
+        }
+        this.weight = weight;
+    }
+
+    boolean isFresh(long now) {
+        return expiresAt - now > 0;
+    }
+
+    boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    long weight() {
+        return weight;
+    }
+
+    /**
+     * 条件请求返回304后更新过期时间
+     */
+    CachedResponse withExpiresAt(long expiresAt) {
+        return new CachedResponse(status, reason, headers, body, etag, lastModified, expiresAt);
+    }
+
+    Response toResponse(Request request) {
+        return Response.builder()
+                .status(status)
+                .reason(reason)
+                .headers(headers)
+                .request(request)
+                .body(body)
+                .build();
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethod;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodContext;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存响应的Feign Client，缓存原始响应字节（按需由各自的Decoder解码），不缓存解码后的对象
+ *      可缓存的请求：GET请求，及{@link FeignCacheable}修饰的方法（如幂等的POST查询）；请求头Cache-Control: no-store时不使用缓存
+ *      只缓存200响应；响应Cache-Control: no-store时不缓存，no-cache时每次都需条件请求验证
+ *      缓存时间：响应的max-age > 方法上{@link FeignCacheable#ttl()} > 默认缓存时间；缓存时间为0且没有ETag/Last-Modified时不缓存
+ *      过期后有ETag/Last-Modified时发起条件请求（If-None-Match/If-Modified-Since），服务端返回304时继续使用缓存的响应并更新过期时间
+ *      请求头Cache-Control: no-cache时跳过未过期的缓存，直接发起条件请求
+ * 统计指标：feign.cache.requests（result=hit/miss/revalidated，miss只统计响应可缓存的请求）、feign.cache.evictions、feign.cache.size（字节数）、feign.cache.entries
+ * @see ResponseCachingFeignClientConfiguration
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+public class CachingClient implements Client, MeterBinder {
+
+    private static final String ETAG = "ETag";
+
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final Client delegate;
+
+    private final String name;
+
+    private final BoundedResponseStore store;
+
+    private final long defaultTtl;
+
+    private final String[] varyHeaders;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * @param delegate 被包装的Client
+     * @param name 缓存名称（FeignClient名称），用于指标的标签
+     * @param maxBytes 缓存的最大字节数
+     * @param segments 分段数
+     * @param defaultTtl 默认缓存时间（毫秒）
+     * @param varyHeaders 参与缓存键计算的请求头，值不同的请求不会共享缓存（如Authorization）
+     */
+    public CachingClient(Client delegate, String name, long maxBytes, int segments, long defaultTtl, String... varyHeaders) {
+        this.delegate = delegate;
+        this.name = name;
+        this.store = new BoundedResponseStore(maxBytes, segments);
+        this.defaultTtl = defaultTtl;
+        this.varyHeaders = varyHeaders;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        FeignMethod feignMethod = FeignMethodContext.current();
+        FeignCacheable cacheable = feignMethod != null ? feignMethod.getAnnotation(FeignCacheable.class) : null;
+        if (cacheable == null && request.httpMethod() != Request.HttpMethod.GET) {
+            return delegate.execute(request, options);
+        }
+        CacheControl requestCacheControl = CacheControl.parse(request.headers().get(CacheControl.HEADER));
+        if (requestCacheControl.isNoStore()) {
+            return delegate.execute(request, options);
+        }
+        CacheKey key = CacheKey.of(request, varyHeaders);
+        CachedResponse cached = store.get(key);
+        long now = System.nanoTime();
+        if (cached != null && !requestCacheControl.isNoCache() && cached.isFresh(now)) {
+            hits.increment();
+            return cached.toResponse(request);
+        }
+        if (cached != null && !cached.hasValidators()) {
+            store.remove(key, cached);
+            cached = null;
+        }
+        Response response = delegate.execute(cached != null ? conditional(request, cached) : request, options);
+        long ttl = ttl(response, cacheable);
+        if (cached != null && response.status() == 304) {
+            response.close();
+            revalidations.increment();
+            CachedResponse refreshed = cached.withExpiresAt(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(ttl, 0)));
+            store.put(key, refreshed);
+            return refreshed.toResponse(request);
+        }
+        String etag = header(response, ETAG);
+        String lastModified = header(response, LAST_MODIFIED);
+        if (response.status() != 200 || ttl < 0 || (ttl == 0 && etag == null && lastModified == null)) {
+            // 验证时资源已变化且新的响应不可缓存，旧的缓存不能再用于条件请求
+            if (cached != null) {
+                store.remove(key, cached);
+            }
+            return response;
+        }
+        misses.increment();
+        CachedResponse fresh = read(response, etag, lastModified, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+        store.put(key, fresh);
+        return fresh.toResponse(request);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCounter(registry, "hit", hits);
+        bindCounter(registry, "miss", misses);
+        bindCounter(registry, "revalidated", revalidations);
+        FunctionCounter.builder("feign.cache.evictions", store, BoundedResponseStore::getEvictionCount)
+                .tag("client", name)
+                .register(registry);
+        Gauge.builder("feign.cache.size", store, BoundedResponseStore::getWeight)
+                .tag("client", name)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("feign.cache.entries", store, BoundedResponseStore::getSize)
+                .tag("client", name)
+                .register(registry);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    public long getEvictionCount() {
+        return store.getEvictionCount();
+    }
+
+    private void bindCounter(MeterRegistry registry, String result, LongAdder counter) {
+        FunctionCounter.builder("feign.cache.requests", counter, LongAdder::sum)
+                .tag("client", name)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * 缓存时间（毫秒），小于0表示不可缓存
+     */
+    private long ttl(Response response, FeignCacheable cacheable) {
+        CacheControl cacheControl = CacheControl.parse(response.headers().get(CacheControl.HEADER));
+        if (cacheControl.isNoStore()) {
+            return -1;
+        }
+        if (cacheControl.isNoCache()) {
+            return 0;
+        }
+        if (cacheControl.getMaxAge() >= 0) {
+            return TimeUnit.SECONDS.toMillis(cacheControl.getMaxAge());
+        }
+        return cacheable != null && cacheable.ttl() >= 0 ? cacheable.ttl() : defaultTtl;
+    }
+
+    private static Request conditional(Request request, CachedResponse cached) {
+        // 与RequestTemplate生成的请求头一致，不区分大小写
+        Map<String, Collection<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(request.headers());
+        if (cached.getEtag() != null) {
+            headers.put(IF_NONE_MATCH, Collections.singletonList(cached.getEtag()));
+        }
+        if (cached.getLastModified() != null) {
+            headers.put(IF_MODIFIED_SINCE, Collections.singletonList(cached.getLastModified()));
+        }
+        return Request.create(request.httpMethod(), request.url(), headers, request.requestBody());
+    }
+
+    private static CachedResponse read(Response response, String etag, String lastModified, long expiresAt) throws IOException {
+        try {
+            byte[] body = null;
+            if (response.body() != null) {
+                try (InputStream in = response.body().asInputStream()) {
+                    body = Util.toByteArray(in);
+                }
+            }
+            return new CachedResponse(response.status(), response.reason(), response.headers(), body, etag, lastModified, expiresAt);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String header(Response response, String name) {
+        Collection<String> values = response.headers().get(name);
+        return values != null && !values.isEmpty() ? values.iterator().next() : null;
+    }
+
+}
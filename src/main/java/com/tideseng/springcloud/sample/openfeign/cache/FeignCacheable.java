@@ -0,0 +1,23 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存FeignClient方法的响应，需配合{@link ResponseCachingFeignClientConfiguration}使用
+ * GET请求无需该注解也会按响应的Cache-Control/ETag缓存，该注解用于指定缓存时间，或标记可以缓存的幂等POST请求（如按条件查询列表）
+ * 可修饰FeignClient的方法或接口
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface FeignCacheable {
+
+    /**
+     * 缓存时间（毫秒），响应中有Cache-Control: max-age时以响应为准，小于0时使用application.feign.cache.default-ttl
+     * @return
+     */
+    long ttl() default -1;
+
+}
@@ -0,0 +1,54 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import com.tideseng.springcloud.sample.openfeign.decorator.DecoratedFeignClientConfiguration;
+import com.tideseng.springcloud.sample.openfeign.decorator.FeignClientDecorator;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodDispatchConfiguration;
+import feign.Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+
+/**
+ * 响应缓存的配置类，在@FeignClient的configuration中指定即可开启，每个FeignClient独立一个缓存
+ * <pre>
+ *     application.feign.cache.max-bytes=67108864          单个FeignClient缓存的最大字节数
+ *     application.feign.cache.segments=16                 分段数（分段加锁，单个响应超过max-bytes/segments时不缓存）
+ *     application.feign.cache.default-ttl=0               响应没有max-age、方法没有指定ttl时的缓存时间（毫秒）
+ *     application.feign.cache.vary-headers=Authorization,Cookie  参与缓存键计算的请求头，多个以逗号分隔
+ * </pre>
+ * 该配置类会导入{@link FeignMethodDispatchConfiguration}（用于获取方法上的{@link FeignCacheable}），
+ * 通过{@link DecoratedFeignClientConfiguration}包装主容器中的Client，与合并请求同时使用时缓存在外层
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+@Import({FeignMethodDispatchConfiguration.class, DecoratedFeignClientConfiguration.class})
+public class ResponseCachingFeignClientConfiguration {
+
+    private static final String PREFIX = "application.feign.cache.";
+
+    @Bean
+    public FeignClientDecorator responseCachingClientDecorator(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        // feign.client.name为OpenFeign为每个FeignClient子容器设置的名称
+        String name = environment.getProperty("feign.client.name", "default");
+        long maxBytes = environment.getProperty(PREFIX + "max-bytes", Long.class, 64L * 1024 * 1024);
+        int segments = environment.getProperty(PREFIX + "segments", Integer.class, 16);
+        long defaultTtl = environment.getProperty(PREFIX + "default-ttl", Long.class, 0L);
+        String[] varyHeaders = environment.getProperty(PREFIX + "vary-headers", String[].class, new String[]{"Authorization", "Cookie"});
+        return new FeignClientDecorator() {
+            @Override
+            public Client decorate(Client client) {
+                CachingClient cachingClient = new CachingClient(client, name, maxBytes, segments, defaultTtl, varyHeaders);
+                meterRegistry.ifAvailable(cachingClient::bindTo);
+                return cachingClient;
+            }
+
+            @Override
+            public int getOrder() {
+                return CACHE_ORDER;
+            }
+        };
+    }
+
+}
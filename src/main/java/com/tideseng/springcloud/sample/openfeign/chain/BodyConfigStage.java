@@ -0,0 +1,41 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.body.DefaultFeignClientInterceptorBodyConfig;
+
+/**
+ * 将已有的{@link DefaultFeignClientInterceptorBodyConfig}接入组合拦截器
+ *      执行前先将前面阶段对Body的修改写回RequestTemplate（doFilter直接读取RequestTemplate）
+ *      doFilter的返回值交给共享的上下文，在{@link FeignCallContext#commit()}时统一序列化；返回未修改（未调用markModified）的原对象时不替换Body
+ * 与单独注册该拦截器时一致，异步线程中调用{@link DefaultFeignClientInterceptorBodyConfig#doFilter(feign.RequestTemplate, FeignRequestContext)}，
+ * 既不在Request线程中、也没有传递快照时跳过
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class BodyConfigStage implements FeignInterceptorStage {
+
+    private final DefaultFeignClientInterceptorBodyConfig config;
+
+    public BodyConfigStage(DefaultFeignClientInterceptorBodyConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void apply(FeignCallContext context) {
+        FeignRequestContext propagated = context.propagatedContext();
+        if (context.request() == null && propagated == null) {
+            return;
+        }
+        try {
+            context.flushBody();
+            Object body = context.request() != null ? config.filterBody(context.template(), context.request())
+                    : config.filterBody(context.template(), propagated);
+            if (body != null) {
+                context.replaceBody(body);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.body.FeignClientBodyTransformer;
+import com.tideseng.springcloud.sample.openfeign.body.JsonBodyPatch;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按{@link FeignClientBodyTransformer}中声明的规则流式修改Body体，没有规则的请求路径不会执行该阶段
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class BodyTransformStage implements FeignInterceptorStage {
+
+    private final FeignClientBodyTransformer transformer;
+
+    public BodyTransformStage(FeignClientBodyTransformer transformer) {
+        this.transformer = transformer;
+    }
+
+    @Override
+    public boolean supports(String method, String path) {
+        JsonBodyPatch patch = transformer.getPatch(method, path);
+        return patch != null && !patch.isEmpty();
+    }
+
+    @Override
+    public void apply(FeignCallContext context) {
+        Charset charset = context.template().requestCharset();
+        if (!context.hasBody() || (charset != null && !StandardCharsets.UTF_8.equals(charset))) {
+            return;
+        }
+        JsonBodyPatch patch = transformer.getPatch(context.template().method(), context.path());
+        try {
+            byte[] patched = patch.apply(context.body(), context::header);
+            if (patched != null) {
+                context.body(patched);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
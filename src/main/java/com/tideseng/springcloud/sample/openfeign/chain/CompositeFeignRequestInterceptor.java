@@ -0,0 +1,93 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.request.FeignRequestPath;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 组合的Feign请求拦截器，将请求头、Body体、param参数等处理合并为一个拦截器
+ *      所有阶段共享同一个{@link FeignCallContext}：原Request只解析一次、Body体最多反序列化一次、param参数只重建一次
+ *      按"请求方式 请求路径"预先计算需要执行的阶段并缓存，没有需要执行的阶段时直接跳过
+ *      包含param参数改写阶段，需在超长param参数转移（{@link com.tideseng.springcloud.sample.openfeign.promote.OversizedQueryPromotionInterceptor}，最低优先级）之前执行
+ *      请求路径为方法上声明的路径（拦截器执行时还未拼接@FeignClient的path前缀），见{@link FeignRequestPath}
+ * 使用方式：
+ * <pre>
+ *     &#64;Bean
+ *     public RequestInterceptor compositeFeignRequestInterceptor() {
+ *         return new CompositeFeignRequestInterceptor(
+ *                 new StaticHeaderStage("Authorization", "Bearer xxx"),
+ *                 new HeaderPropagationStage(HeaderPropagationPolicy.DEFAULT),
+ *                 new BodyTransformStage(bodyTransformer),
+ *                 new BodyConfigStage(new InstanceFeignClientInterceptorBodyConfig()));
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class CompositeFeignRequestInterceptor implements RequestInterceptor {
+
+    /**
+     * 缓存的请求路径上限，路径中包含变量（如/users/1、/users/2）时避免缓存无限增长
+     */
+    private static final int MAX_INDEX_SIZE = 1024;
+
+    private static final FeignInterceptorStage[] NO_STAGES = new FeignInterceptorStage[0];
+
+    private final FeignInterceptorStage[] stages;
+
+    private final ConcurrentMap<String, FeignInterceptorStage[]> stageIndex = new ConcurrentHashMap<>();
+
+    public CompositeFeignRequestInterceptor(FeignInterceptorStage... stages) {
+        this(Arrays.asList(stages));
+    }
+
+    public CompositeFeignRequestInterceptor(List<? extends FeignInterceptorStage> stages) {
+        this.stages = stages.toArray(NO_STAGES);
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        String path = FeignRequestPath.of(template);
+        FeignInterceptorStage[] matched = getStages(template.method(), path);
+        if (matched.length == 0) {
+            return;
+        }
+        FeignCallContext context = new FeignCallContext(template, path);
+        for (FeignInterceptorStage stage : matched) {
+            stage.apply(context);
+        }
+        context.commit();
+    }
+
+    protected FeignInterceptorStage[] getStages(String method, String path) {
+        String key = method + " " + path;
+        FeignInterceptorStage[] matched = stageIndex.get(key);
+        if (matched == null) {
+            matched = match(method, path);
+            if (stageIndex.size() < MAX_INDEX_SIZE) {
+                stageIndex.putIfAbsent(key, matched);
+            }
+        }
+        return matched;
+    }
+
+    private FeignInterceptorStage[] match(String method, String path) {
+        List<FeignInterceptorStage> matched = new ArrayList<>(stages.length);
+        for (FeignInterceptorStage stage : stages) {
+            if (stage.supports(method, path)) {
+                matched.add(stage);
+            }
+        }
+        return matched.isEmpty() ? NO_STAGES : matched.toArray(NO_STAGES);
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
+import com.tideseng.springcloud.sample.openfeign.request.FeignRequestPath;
+import feign.Request;
+import feign.RequestTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 一次Feign调用在拦截器链中共享的上下文
+ *      原Request只从{@link RequestContextHolder}解析一次，异步线程中使用{@link FeignRequestContextHolder}传递过来的快照
+ *      Body体最多反序列化一次、最多序列化一次（在{@link #commit()}时统一写回），{@link #bodyAs(Class)}返回的对象被原地修改时同样会写回
+ *      param参数的修改先暂存，在{@link #commit()}时只重建被修改的参数
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class FeignCallContext {
+
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private final RequestTemplate template;
+
+    private final String path;
+
+    private boolean requestResolved;
+
+    private HttpServletRequest request;
+
+    private byte[] body;
+
+    private boolean bodyChanged;
+
+    private Object decodedBody;
+
+    /** decodedBody对应的Body字节，用于判断decodedBody是否被原地修改 */
+    private byte[] decodedBytes;
+
+    /** decodedBody是否已交给阶段（可能被原地修改），写回前需重新序列化比较 */
+    private boolean decodedTouched;
+
+    private Object replacedBody;
+
+    private Map<String, Collection<String>> queries;
+
+    private Map<String, Collection<String>> queryChanges;
+
+    public FeignCallContext(RequestTemplate template) {
+        this(template, FeignRequestPath.of(template));
+    }
+
+    FeignCallContext(RequestTemplate template, String path) {
+        this.template = template;
+        this.path = path;
+        this.body = template.requestBody().asBytes();
+    }
+
+    public RequestTemplate template() {
+        return template;
+    }
+
+    /**
+     * 规范化后的方法路径（不包含@FeignClient的path前缀），与阶段匹配时使用的路径一致
+     * @return
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * 原Request，不在Request线程中时返回null
+     * @return
+     */
+    public HttpServletRequest request() {
+        if (!requestResolved) {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            request = attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest() : null;
+            requestResolved = true;
+        }
+        return request;
+    }
+
+    /**
+     * 从Request线程传递过来的原请求信息快照，仅在异步线程中（原Request为空时）存在
+     * @return
+     */
+    public FeignRequestContext propagatedContext() {
+        return request() == null ? FeignRequestContextHolder.getPropagated() : null;
+    }
+
+    /**
+     * 获取原Request的请求头，异步线程中从本次调用的快照中获取（与传递策略无关的原请求头）
+     * @param name
+     * @return
+     */
+    public String header(String name) {
+        if (request() != null) {
+            return request.getHeader(name);
+        }
+        FeignRequestContext context = FeignRequestContextHolder.getPropagated();
+        return context != null ? context.getHeader(name) : null;
+    }
+
+    /**
+     * 当前的Body字节（可能已被前面的阶段修改）
+     * @return
+     */
+    public byte[] body() {
+        flushBodyObject();
+        return body;
+    }
+
+    public boolean hasBody() {
+        return replacedBody != null || (body != null && body.length > 0);
+    }
+
+    /**
+     * 直接替换Body字节，如流式修改后的结果
+     * @param body
+     */
+    public void body(byte[] body) {
+        this.body = body;
+        this.bodyChanged = true;
+        this.decodedBody = null;
+        this.decodedBytes = null;
+        this.decodedTouched = false;
+        this.replacedBody = null;
+    }
+
+    /**
+     * 将Body反序列化为指定类型，同一类型在一次调用中只反序列化一次
+     * @param type
+     * @param <T>
+     * @return Body为空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T bodyAs(Class<T> type) {
+        if (replacedBody != null && type.isInstance(replacedBody)) {
+            return (T) replacedBody;
+        }
+        if (decodedBody != null && type.isInstance(decodedBody)) {
+            decodedTouched = true;
+            return (T) decodedBody;
+        }
+        byte[] bytes = body();
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            T value = READERS.computeIfAbsent(type, OBJECT_MAPPER::readerFor).readValue(bytes);
+            decodedBody = value;
+            decodedBytes = bytes;
+            decodedTouched = true;
+            return value;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 替换Body对象，在{@link #commit()}时统一序列化一次；序列化结果与当前Body一致时不替换
+     * @param value
+     */
+    public void replaceBody(Object value) {
+        if (value != null && value == decodedBody && replacedBody == null) {
+            decodedTouched = true;
+            return;
+        }
+        this.replacedBody = value;
+    }
+
+    /**
+     * 当前的param参数值（包含暂存的修改）
+     * @param name
+     * @return
+     */
+    public Collection<String> query(String name) {
+        if (queryChanges != null && queryChanges.containsKey(name)) {
+            return queryChanges.get(name);
+        }
+        if (queries == null) {
+            // RequestTemplate#queries()每次调用都会重新构建Map，这里只获取一次
+            queries = template.queries();
+        }
+        Collection<String> values = queries.get(name);
+        return values != null ? values : Collections.emptyList();
+    }
+
+    /**
+     * 暂存param参数的修改，values为空时表示删除该参数
+     * @param name
+     * @param values
+     */
+    public void query(String name, Collection<String> values) {
+        if (queryChanges == null) {
+            queryChanges = new LinkedHashMap<>();
+        }
+        queryChanges.put(name, values != null ? values : Collections.emptyList());
+    }
+
+    /**
+     * 将Body、param参数的修改写回RequestTemplate
+     */
+    public void commit() {
+        flushBody();
+        if (queryChanges != null) {
+            for (Map.Entry<String, Collection<String>> entry : queryChanges.entrySet()) {
+                // 先删除再设置，否则会追加
+                template.query(entry.getKey(), Collections.emptyList());
+                if (!entry.getValue().isEmpty()) {
+                    template.query(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * 将Body的修改写回RequestTemplate，供直接读取RequestTemplate的阶段（如{@link BodyConfigStage}）在执行前调用
+     */
+    public void flushBody() {
+        flushBodyObject();
+        if (bodyChanged) {
+            template.body(Request.Body.encoded(body, template.requestCharset()));
+            bodyChanged = false;
+        }
+    }
+
+    /**
+     * 序列化替换的Body对象，或被原地修改过的反序列化对象，内容与当前Body一致时不替换
+     */
+    private void flushBodyObject() {
+        Object value = replacedBody != null ? replacedBody : decodedTouched ? decodedBody : null;
+        if (value == null) {
+            return;
+        }
+        try {
+            byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(value);
+            if (!Arrays.equals(bytes, replacedBody != null ? body : decodedBytes)) {
+                body(bytes);
+            }
+            replacedBody = null;
+            decodedBody = value;
+            decodedBytes = bytes;
+            decodedTouched = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
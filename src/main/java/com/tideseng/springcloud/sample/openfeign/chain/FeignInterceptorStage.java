@@ -0,0 +1,26 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+/**
+ * 组合拦截器{@link CompositeFeignRequestInterceptor}中的一个处理阶段（如：请求头、Body体、param参数的处理）
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public interface FeignInterceptorStage {
+
+    /**
+     * 判断该阶段是否需要处理指定的请求，同一个请求方式 + 请求路径只判断一次，结果会被缓存
+     * @param method 请求方式
+     * @param path 规范化后的方法路径（不包含@FeignClient的path前缀，见{@link com.tideseng.springcloud.sample.openfeign.request.FeignRequestPath}）
+     * @return
+     */
+    default boolean supports(String method, String path) {
+        return true;
+    }
+
+    /**
+     * 处理请求，所有修改通过共享的上下文完成
+     * @param context
+     */
+    void apply(FeignCallContext context);
+
+}
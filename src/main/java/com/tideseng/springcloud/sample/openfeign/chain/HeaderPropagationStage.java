@@ -0,0 +1,35 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.request.HeaderPropagationPolicy;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 按{@link HeaderPropagationPolicy}透传原Request的请求头
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class HeaderPropagationStage implements FeignInterceptorStage {
+
+    private final HeaderPropagationPolicy policy;
+
+    public HeaderPropagationStage(HeaderPropagationPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void apply(FeignCallContext context) {
+        HttpServletRequest request = context.request();
+        if (request != null) {
+            policy.capture(request).applyTo(context.template());
+            return;
+        }
+        // 异步线程中按该策略从Request线程捕获的快照中解析
+        FeignRequestContext propagated = context.propagatedContext();
+        if (propagated != null) {
+            propagated.getHeaders(policy).applyTo(context.template());
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.request.QueryRewriteRule;
+import com.tideseng.springcloud.sample.openfeign.request.QueryRewriter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按{@link QueryRewriter}改写param参数，修改暂存在上下文中，由上下文统一写回
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class QueryRewriteStage implements FeignInterceptorStage {
+
+    private final QueryRewriter rewriter;
+
+    public QueryRewriteStage(QueryRewriter rewriter) {
+        this.rewriter = rewriter;
+    }
+
+    @Override
+    public boolean supports(String method, String path) {
+        return rewriter.getRules(method, path).length > 0;
+    }
+
+    @Override
+    public void apply(FeignCallContext context) {
+        for (QueryRewriteRule rule : rewriter.getRules(context.template().method(), context.path())) {
+            Collection<String> values = context.query(rule.getSource());
+            if (values.isEmpty()) {
+                continue;
+            }
+            List<String> rewritten = rule.rewrite(values);
+            context.query(rule.getSource(), Collections.emptyList());
+            context.query(rule.getTarget(), rewritten);
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+/**
+ * 设置固定的请求头，如：添加令牌信息
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class StaticHeaderStage implements FeignInterceptorStage {
+
+    private final String name;
+
+    private final String value;
+
+    public StaticHeaderStage(String name, String value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    @Override
+    public void apply(FeignCallContext context) {
+        context.template().header(name, value);
+    }
+
+}
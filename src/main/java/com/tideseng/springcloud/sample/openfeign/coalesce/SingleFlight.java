@@ -0,0 +1,30 @@
+package com.tideseng.springcloud.sample.openfeign.coalesce;
+
+import java.lang.annotation.*;
+
+/**
+ * 合并相同的并发请求：请求方式、URL、Body体（及varyHeaders中的请求头）相同的并发请求只发起一次远程调用，共享同一个响应
+ * 可修饰FeignClient的方法或接口，需配合{@link SingleFlightFeignClientConfiguration}使用
+ * 注意：响应会被所有合并的请求共享，默认只合并Authorization、Cookie相同的请求（与响应缓存的缓存键一致）；
+ *      响应内容还与其它请求头相关（如租户标识）时，需将相关请求头一并声明在varyHeaders中
+ * @author jiahuan
+ * @create 2022/6/24
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SingleFlight {
+
+    /**
+     * 请求完成后继续共享响应的时间（毫秒），为0时只合并进行中的请求；只有2xx响应会在请求完成后继续共享
+     * @return
+     */
+    long ttl() default 0;
+
+    /**
+     * 参与合并判断的请求头，这些请求头的值不同的请求不会被合并；默认为调用者的身份凭证，不同调用者的请求不会共享响应
+     * @return
+     */
+    String[] varyHeaders() default {"Authorization", "Cookie"};
+
+}
@@ -0,0 +1,276 @@
+package com.tideseng.springcloud.sample.openfeign.coalesce;
+
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethod;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodContext;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 合并相同并发请求的Feign Client，只对{@link SingleFlight}修饰的方法生效，其它方法直接调用被包装的Client
+ *      请求方式、URL、Body体、varyHeaders中的请求头相同的请求视为同一个请求：第一个请求发起远程调用，其余请求等待并共享该响应
+ *      共享的是读取到内存中的原始响应（状态码、响应头、Body体），每个调用方基于该响应重新构建Response，由各自的Decoder解码，调用方之间不会共享可变的解码对象
+ *      Body体不做拷贝：先按流式计算的64位哈希比较，哈希相同时再与第一个请求的Body体逐字节比较
+ *      远程调用失败时，等待中的请求抛出同样的异常（不会各自再发起一次调用）
+ * 当前调用的方法由{@link FeignMethodContext}获取，FeignClient需同时配置{@link com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodDispatchConfiguration}
+ * @see SingleFlightFeignClientConfiguration
+ * @author jiahuan
+ * @create 2022/6/24
+ */
+public class SingleFlightClient implements Client {
+
+    /** 超过该数量时清理已过期的响应 */
+    private static final int SWEEP_THRESHOLD = 1024;
+
+    /** 跟随者在被包装Client的超时时间之外额外等待的时间（毫秒） */
+    private static final long WAIT_MARGIN = 1000;
+
+    private final Client delegate;
+
+    private final ConcurrentMap<FlightKey, Flight> flights = new ConcurrentHashMap<>();
+
+    public SingleFlightClient(Client delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        FeignMethod feignMethod = FeignMethodContext.current();
+        SingleFlight singleFlight = feignMethod != null ? feignMethod.getAnnotation(SingleFlight.class) : null;
+        if (singleFlight == null) {
+            return delegate.execute(request, options);
+        }
+        FlightKey key = new FlightKey(request, singleFlight.varyHeaders());
+        Flight flight = new Flight();
+        while (true) {
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(key, flight, request, options, singleFlight.ttl());
+            }
+            if (!existing.isExpired()) {
+                return follow(existing, request, options);
+            }
+            flights.remove(key, existing);
+        }
+    }
+
+    /**
+     * 当前进行中及在TTL内共享的请求数
+     * @return
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private Response lead(FlightKey key, Flight flight, Request request, Request.Options options, long ttl) throws IOException {
+        BufferedResponse buffered;
+        try {
+            buffered = BufferedResponse.read(delegate.execute(request, options));
+        } catch (IOException | RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+        if (ttl > 0 && buffered.status >= 200 && buffered.status < 300) {
+            flight.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+            flight.future.complete(buffered);
+            if (flights.size() > SWEEP_THRESHOLD) {
+                sweep();
+            }
+        } else {
+            // 先移除再通知等待的请求，之后到达的请求会重新发起调用
+            flights.remove(key, flight);
+            flight.future.complete(buffered);
+        }
+        return buffered.toResponse(request);
+    }
+
+    private static Response follow(Flight flight, Request request, Request.Options options) throws IOException {
+        long timeout = (long) options.connectTimeoutMillis() + options.readTimeoutMillis() + WAIT_MARGIN;
+        try {
+            return flight.future.get(timeout, TimeUnit.MILLISECONDS).toResponse(request);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("timed out waiting for in-flight request " + request.httpMethod() + " " + request.url());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for in-flight request " + request.httpMethod() + " " + request.url());
+        }
+    }
+
+    private void sweep() {
+        flights.entrySet().removeIf(entry -> entry.getValue().isExpired());
+    }
+
+    /**
+     * 一次远程调用，expiresAt在响应可以继续共享时设置
+     */
+    private static final class Flight {
+
+        private final CompletableFuture<BufferedResponse> future = new CompletableFuture<>();
+
+        private volatile long expiresAt;
+
+        boolean isExpired() {
+            return future.isDone() && expiresAt != 0 && System.nanoTime() - expiresAt > 0;
+        }
+
+    }
+
+    /**
+     * 读取到内存中的响应，只读共享
+     */
+    private static final class BufferedResponse {
+
+        private final int status;
+
+        private final String reason;
+
+        private final Map<String, Collection<String>> headers;
+
+        private final byte[] body;
+
+        private BufferedResponse(int status, String reason, Map<String, Collection<String>> headers, byte[] body) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static BufferedResponse read(Response response) throws IOException {
+            try {
+                byte[] body = null;
+                if (response.body() != null) {
+                    try (InputStream in = response.body().asInputStream()) {
+                        body = Util.toByteArray(in);
+                    }
+                }
+                return new BufferedResponse(response.status(), response.reason(), response.headers(), body);
+            } finally {
+                response.close();
+            }
+        }
+
+        Response toResponse(Request request) {
+            return Response.builder()
+                    .status(status)
+                    .reason(reason)
+                    .headers(headers)
+                    .request(request)
+                    .body(body)
+                    .build();
+        }
+
+    }
+
+    /**
+     * 请求的合并键，持有第一个请求Body体的引用而不是拷贝
+     */
+    private static final class FlightKey {
+
+        private final String method;
+
+        private final String url;
+
+        private final List<Collection<String>> varyValues;
+
+        private final byte[] body;
+
+        private final long bodyHash;
+
+        private final int hash;
+
+        FlightKey(Request request, String[] varyHeaders) {
+            this.method = request.httpMethod().name();
+            this.url = request.url();
+            if (varyHeaders.length == 0) {
+                this.varyValues = Collections.emptyList();
+            } else {
+                List<Collection<String>> values = new ArrayList<>(varyHeaders.length);
+                for (String name : varyHeaders) {
+                    // Request的请求头不区分大小写
+                    Collection<String> value = request.headers().get(name);
+                    values.add(value != null ? value : Collections.emptyList());
+                }
+                this.varyValues = values;
+            }
+            this.body = request.requestBody().asBytes();
+            this.bodyHash = hash(body);
+            this.hash = Objects.hash(method, url, varyValues, bodyHash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey other = (FlightKey) obj;
+            return bodyHash == other.bodyHash
+                    && method.equals(other.method)
+                    && url.equals(other.url)
+                    && varyValues.equals(other.varyValues)
+                    && Arrays.equals(body, other.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * 按8字节一组流式计算的64位哈希（FNV-1a的变种，最后做一次雪崩混合）
+         */
+        private static long hash(byte[] bytes) {
+            if (bytes == null) {
+                return 0;
+            }
+            long h = 0xcbf29ce484222325L ^ bytes.length;
+            int i = 0;
+            for (int limit = bytes.length - 7; i < limit; i += 8) {
+                long word = (bytes[i] & 0xffL)
+                        | (bytes[i + 1] & 0xffL) << 8
+                        | (bytes[i + 2] & 0xffL) << 16
+                        | (bytes[i + 3] & 0xffL) << 24
+                        | (bytes[i + 4] & 0xffL) << 32
+                        | (bytes[i + 5] & 0xffL) << 40
+                        | (bytes[i + 6] & 0xffL) << 48
+                        | (bytes[i + 7] & 0xffL) << 56;
+                h = (h ^ word) * 0x100000001b3L;
+                h ^= h >>> 29;
+            }
+            for (; i < bytes.length; i++) {
+                h = (h ^ (bytes[i] & 0xffL)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+    }
+
+}
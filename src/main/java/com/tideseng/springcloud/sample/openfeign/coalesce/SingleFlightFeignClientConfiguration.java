@@ -0,0 +1,43 @@
+package com.tideseng.springcloud.sample.openfeign.coalesce;
+
+import com.tideseng.springcloud.sample.openfeign.decorator.DecoratedFeignClientConfiguration;
+import com.tideseng.springcloud.sample.openfeign.decorator.FeignClientDecorator;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodDispatchConfiguration;
+import feign.Client;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 合并相同并发请求的配置类，在@FeignClient的configuration中指定即可开启，只对{@link SingleFlight}修饰的方法生效
+ * <pre>
+ *     &#64;FeignClient(name = "data-model", configuration = SingleFlightFeignClientConfiguration.class)
+ *     public interface DataModelClient {
+ *         &#64;SingleFlight(ttl = 200)
+ *         &#64;GetMapping("/models/{id}")
+ *         Model getModel(@PathVariable("id") Long id);
+ *     }
+ * </pre>
+ * 该配置类会导入{@link FeignMethodDispatchConfiguration}（用于获取当前调用的方法）
+ * 通过{@link DecoratedFeignClientConfiguration}包装主容器中的Client，只支持未指定url的FeignClient，且每个FeignClient的合并相互独立
+ * @author jiahuan
+ * @create 2022/6/24
+ */
+@Import({FeignMethodDispatchConfiguration.class, DecoratedFeignClientConfiguration.class})
+public class SingleFlightFeignClientConfiguration {
+
+    @Bean
+    public FeignClientDecorator singleFlightClientDecorator() {
+        return new FeignClientDecorator() {
+            @Override
+            public Client decorate(Client client) {
+                return new SingleFlightClient(client);
+            }
+
+            @Override
+            public int getOrder() {
+                return SINGLE_FLIGHT_ORDER;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+/**
+ * 请求时优先Accept Smile（同时接受JSON），接口已通过produces指定Accept时不做处理
+ * @see SmileNegotiation
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileAcceptInterceptor implements RequestInterceptor {
+
+    private static final String ACCEPT_HEADER = "Accept";
+
+    @Override
+    public void apply(RequestTemplate template) {
+        if (!template.headers().containsKey(ACCEPT_HEADER)) {
+            template.header(ACCEPT_HEADER, SmileNegotiation.ACCEPT);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Smile编解码：ObjectMapper及按类型缓存的ObjectReader/ObjectWriter在同一个FeignClient的所有请求间共享
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileCodec {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public SmileCodec() {
+        this(Jackson2ObjectMapperBuilder.smile().build());
+    }
+
+    /**
+     * 使用Spring Boot的Jackson2ObjectMapperBuilder创建时，与JSON的序列化配置（日期格式、未知字段处理等）保持一致
+     * @param builder
+     */
+    public SmileCodec(Jackson2ObjectMapperBuilder builder) {
+        this(builder.factory(new SmileFactory()).<ObjectMapper>build());
+    }
+
+    public SmileCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public byte[] write(Object value) throws IOException {
+        return writers.computeIfAbsent(value.getClass(), objectMapper::writerFor).writeValueAsBytes(value);
+    }
+
+    /**
+     * 将Smile编码的Body体流式转为JSON（不反序列化为对象）
+     * @param smile
+     * @return
+     * @throws IOException
+     */
+    public byte[] toJson(byte[] smile) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder(smile.length * 2);
+        try (JsonParser parser = objectMapper.getFactory().createParser(smile);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public Object read(InputStream in, Type type) throws IOException {
+        return readers.computeIfAbsent(type, t -> objectMapper.readerFor(objectMapper.constructType(t))).readValue(in);
+    }
+
+}
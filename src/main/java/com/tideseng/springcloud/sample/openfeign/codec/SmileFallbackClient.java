@@ -0,0 +1,81 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 按实例回退Smile请求Body体的Client，包装在LoadBalancerFeignClient内部（负载均衡后请求地址已是实例的ip:port）
+ *      发往已回退实例的Smile请求Body体直接转为JSON
+ *      Smile请求Body体被实例以415拒绝时，记录该实例并立即转为JSON重试一次（415表示请求未被处理，重试是安全的）
+ * @see SmileNegotiation
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileFallbackClient implements Client {
+
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
+    private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private final Client delegate;
+
+    private final SmileCodec codec;
+
+    private final SmileNegotiation negotiation;
+
+    public SmileFallbackClient(Client delegate, SmileCodec codec, SmileNegotiation negotiation) {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.negotiation = negotiation;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        if (request.requestBody().asBytes() == null || !SmileNegotiation.isSmile(request.headers())) {
+            return delegate.execute(request, options);
+        }
+        String instance = instance(request.url());
+        if (negotiation.isJsonOnly(instance)) {
+            return delegate.execute(toJson(request), options);
+        }
+        Response response = delegate.execute(request, options);
+        if (response.status() != UNSUPPORTED_MEDIA_TYPE) {
+            return response;
+        }
+        negotiation.markJsonOnly(instance);
+        response.close();
+        return delegate.execute(toJson(request), options);
+    }
+
+    public Client getDelegate() {
+        return delegate;
+    }
+
+    private Request toJson(Request request) throws IOException {
+        byte[] json = codec.toJson(request.requestBody().asBytes());
+        Map<String, Collection<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(request.headers());
+        headers.put(SmileNegotiation.CONTENT_TYPE_HEADER, Collections.singletonList(JSON_CONTENT_TYPE));
+        if (headers.containsKey(CONTENT_LENGTH_HEADER)) {
+            headers.put(CONTENT_LENGTH_HEADER, Collections.singletonList(String.valueOf(json.length)));
+        }
+        return Request.create(request.httpMethod(), request.url(), headers, Request.Body.encoded(json, StandardCharsets.UTF_8));
+    }
+
+    private static String instance(String url) {
+        URI uri = URI.create(url);
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+}
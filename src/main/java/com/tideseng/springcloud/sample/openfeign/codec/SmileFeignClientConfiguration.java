@@ -0,0 +1,96 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import com.tideseng.springcloud.sample.openfeign.decorator.DecoratedFeignClientConfiguration;
+import com.tideseng.springcloud.sample.openfeign.decorator.FeignClientDecorator;
+import com.tideseng.springcloud.sample.openfeign.pool.PooledLoadBalancerFeignClient;
+import feign.Client;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.optionals.OptionalDecoder;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringEncoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * FeignClient的Smile编解码配置类，在@FeignClient的configuration中指定即可开启（每个FeignClient拥有独立的协商状态）
+ * <pre>
+ *     &#64;FeignClient(value = "data-model", configuration = {SmileFeignClientConfiguration.class})
+ * </pre>
+ * 服务提供者需注册{@link SmileWebMvcConfigurer}，未注册的服务提供者仍使用JSON
+ * 通过{@link DecoratedFeignClientConfiguration}在负载均衡之内包装{@link SmileFallbackClient}，Smile请求Body体被实例以415拒绝时按JSON重试
+ * 注意：Smile请求Body体为二进制数据，不能再使用修改JSON Body体的拦截器（如{@link com.tideseng.springcloud.sample.openfeign.body.FeignClientBodyTransformer}）
+ * @see SmileNegotiation
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+@Import(DecoratedFeignClientConfiguration.class)
+public class SmileFeignClientConfiguration {
+
+    @Bean
+    public SmileNegotiation smileNegotiation() {
+        return new SmileNegotiation();
+    }
+
+    @Bean
+    public SmileCodec smileCodec(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+        Jackson2ObjectMapperBuilder builder = objectMapperBuilder.getIfAvailable();
+        return builder != null ? new SmileCodec(builder) : new SmileCodec();
+    }
+
+    @Bean
+    public Encoder feignEncoder(ObjectFactory<HttpMessageConverters> messageConverters, SmileCodec smileCodec, SmileNegotiation smileNegotiation) {
+        return new SmileNegotiatingEncoder(new SpringEncoder(messageConverters), smileCodec, smileNegotiation);
+    }
+
+    @Bean
+    public Decoder feignDecoder(ObjectFactory<HttpMessageConverters> messageConverters, SmileCodec smileCodec, SmileNegotiation smileNegotiation) {
+        // 与OpenFeign默认的Decoder结构一致：Optional -> ResponseEntity -> 实际解码
+        return new OptionalDecoder(new ResponseEntityDecoder(new SmileNegotiatingDecoder(new SpringDecoder(messageConverters), smileCodec, smileNegotiation)));
+    }
+
+    /**
+     * LoadBalancerFeignClient的delegate不可修改，因此重新创建一个同类型的LoadBalancerFeignClient；其它Client（如指定了url）直接包装
+     * @param smileCodec
+     * @param smileNegotiation
+     * @param lbClientFactory
+     * @param clientFactory
+     * @return
+     */
+    @Bean
+    public FeignClientDecorator smileFallbackClientDecorator(SmileCodec smileCodec, SmileNegotiation smileNegotiation,
+                                                             ObjectProvider<CachingSpringLoadBalancerFactory> lbClientFactory,
+                                                             ObjectProvider<SpringClientFactory> clientFactory) {
+        return new FeignClientDecorator() {
+            @Override
+            public Client decorate(Client client) {
+                if (client.getClass() == LoadBalancerFeignClient.class || client.getClass() == PooledLoadBalancerFeignClient.class) {
+                    Client delegate = new SmileFallbackClient(((LoadBalancerFeignClient) client).getDelegate(), smileCodec, smileNegotiation);
+                    return client.getClass() == PooledLoadBalancerFeignClient.class
+                            ? new PooledLoadBalancerFeignClient(delegate, lbClientFactory.getObject(), clientFactory.getObject())
+                            : new LoadBalancerFeignClient(delegate, lbClientFactory.getObject(), clientFactory.getObject());
+                }
+                return new SmileFallbackClient(client, smileCodec, smileNegotiation);
+            }
+
+            @Override
+            public int getOrder() {
+                return SMILE_FALLBACK_ORDER;
+            }
+        };
+    }
+
+    @Bean
+    public SmileAcceptInterceptor smileAcceptInterceptor() {
+        return new SmileAcceptInterceptor();
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import feign.FeignException;
+import feign.Response;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * 按响应的Content-Type解码：Smile响应直接由{@link SmileCodec}解码，并记录服务提供者支持Smile；其它响应交给原Decoder处理
+ * @see SmileNegotiation
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileNegotiatingDecoder implements Decoder {
+
+    private final Decoder delegate;
+
+    private final SmileCodec codec;
+
+    private final SmileNegotiation negotiation;
+
+    public SmileNegotiatingDecoder(Decoder delegate, SmileCodec codec, SmileNegotiation negotiation) {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.negotiation = negotiation;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException, FeignException {
+        if (!SmileNegotiation.isSmile(response.headers())) {
+            return delegate.decode(response, type);
+        }
+        negotiation.markSupported();
+        if (response.body() == null) {
+            return null;
+        }
+        try (InputStream in = response.body().asInputStream()) {
+            return codec.read(in, type);
+        } catch (IOException e) {
+            throw new DecodeException(response.status(), "Error reading smile response body: " + e.getMessage(), response.request(), e);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import feign.Request;
+import feign.RequestTemplate;
+import feign.codec.EncodeException;
+import feign.codec.Encoder;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 协商后使用Smile编码请求Body体，否则交给原Encoder（JSON、表单等）处理
+ * 只编码JSON类型（或未指定Content-Type）的对象Body体，String、byte[]等原样交给原Encoder
+ * @see SmileNegotiation
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileNegotiatingEncoder implements Encoder {
+
+    private final Encoder delegate;
+
+    private final SmileCodec codec;
+
+    private final SmileNegotiation negotiation;
+
+    public SmileNegotiatingEncoder(Encoder delegate, SmileCodec codec, SmileNegotiation negotiation) {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.negotiation = negotiation;
+    }
+
+    @Override
+    public void encode(Object object, Type bodyType, RequestTemplate template) throws EncodeException {
+        if (!negotiation.useSmile() || !isSmileCandidate(object, template)) {
+            delegate.encode(object, bodyType, template);
+            return;
+        }
+        byte[] body;
+        try {
+            body = codec.write(object);
+        } catch (Exception e) {
+            throw new EncodeException("Error converting request body to smile", e);
+        }
+        template.header(SmileNegotiation.CONTENT_TYPE_HEADER, Collections.emptyList());
+        template.header(SmileNegotiation.CONTENT_TYPE_HEADER, SmileNegotiation.SMILE_MEDIA_TYPE);
+        template.body(Request.Body.encoded(body, null));
+    }
+
+    private static boolean isSmileCandidate(Object object, RequestTemplate template) {
+        if (object == null || object instanceof CharSequence || object instanceof byte[]) {
+            return false;
+        }
+        Collection<String> contentType = template.headers().get(SmileNegotiation.CONTENT_TYPE_HEADER);
+        if (contentType == null || contentType.isEmpty()) {
+            return true;
+        }
+        String value = contentType.iterator().next();
+        return value.contains("json") || SmileNegotiation.isSmile(value);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 单个FeignClient的Smile协商状态，由同一个FeignClient的Encoder、Decoder、ErrorDecoder共享
+ *      响应：请求始终优先Accept Smile，服务提供者是否返回Smile由其自行决定（每个实例独立协商，不依赖该状态）
+ *      请求Body体：只有在收到过服务提供者返回的Smile响应后才使用Smile编码
+ *      按实例回退：Smile请求Body体被某个实例以415拒绝时，由{@link SmileFallbackClient}立即转为JSON重试一次，并记录该实例，一段时间内发往该实例的请求直接转为JSON
+ * 服务提供者滚动升级期间（部分实例支持Smile、部分不支持），旧实例只拒绝一次，调用方的请求不会失败，新实例仍使用Smile（协商状态不会来回切换）
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileNegotiation {
+
+    public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
+    public static final String ACCEPT = SMILE_MEDIA_TYPE + ", application/json;q=0.9, */*;q=0.8";
+
+    static final String CONTENT_TYPE_HEADER = "Content-Type";
+
+    private static final long DEFAULT_BACKOFF_MILLIS = 60 * 1000L;
+
+    private final long backoffMillis;
+
+    private volatile boolean supported;
+
+    /** 实例（host:port） -> 回退为JSON的截止时间 */
+    private final ConcurrentMap<String, Long> jsonInstances = new ConcurrentHashMap<>();
+
+    public SmileNegotiation() {
+        this(DEFAULT_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param backoffMillis 实例返回415后，发往该实例的请求Body体使用JSON的时长
+     */
+    public SmileNegotiation(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * 请求Body体是否使用Smile编码
+     * @return
+     */
+    public boolean useSmile() {
+        return supported;
+    }
+
+    /**
+     * 收到Smile响应，服务提供者支持Smile
+     */
+    public void markSupported() {
+        // 已经是true时不重复写volatile变量
+        if (!supported) {
+            supported = true;
+        }
+    }
+
+    /**
+     * 发往指定实例的请求Body体是否需要使用JSON
+     * @param instance host:port
+     * @return
+     */
+    public boolean isJsonOnly(String instance) {
+        if (jsonInstances.isEmpty()) {
+            return false;
+        }
+        Long until = jsonInstances.get(instance);
+        if (until == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < until) {
+            return true;
+        }
+        jsonInstances.remove(instance, until);
+        return false;
+    }
+
+    /**
+     * Smile请求Body体被实例拒绝（415），发往该实例的请求回退为JSON
+     * @param instance host:port
+     */
+    public void markJsonOnly(String instance) {
+        jsonInstances.put(instance, System.currentTimeMillis() + backoffMillis);
+    }
+
+    /**
+     * 判断Content-Type是否为Smile
+     * @param headers
+     * @return
+     */
+    public static boolean isSmile(Map<String, Collection<String>> headers) {
+        // Feign的Request、Response中的请求头均忽略大小写
+        Collection<String> contentType = headers.get(CONTENT_TYPE_HEADER);
+        return contentType != null && !contentType.isEmpty() && isSmile(contentType.iterator().next());
+    }
+
+    static boolean isSmile(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, SMILE_MEDIA_TYPE, 0, SMILE_MEDIA_TYPE.length());
+    }
+
+}
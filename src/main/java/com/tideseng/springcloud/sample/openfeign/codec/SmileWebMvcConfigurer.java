@@ -0,0 +1,44 @@
+package com.tideseng.springcloud.sample.openfeign.codec;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * 服务提供者的Smile消息转换器，与{@link SmileFeignClientConfiguration}配合使用
+ * 转换器添加在已有转换器之后：只有请求的Accept/Content-Type明确为Smile时才会使用，其它调用方仍使用JSON
+ * <pre>
+ *     &#64;Bean
+ *     public SmileWebMvcConfigurer smileWebMvcConfigurer(ObjectProvider&lt;Jackson2ObjectMapperBuilder&gt; objectMapperBuilder) {
+ *         return new SmileWebMvcConfigurer(objectMapperBuilder);
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class SmileWebMvcConfigurer implements WebMvcConfigurer {
+
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+    public SmileWebMvcConfigurer(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+        this.objectMapperBuilder = objectMapperBuilder;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2SmileHttpMessageConverter) {
+                return;
+            }
+        }
+        // 使用Spring Boot的Jackson2ObjectMapperBuilder（原型Bean，每次获取都是新的实例），与JSON的序列化配置保持一致
+        Jackson2ObjectMapperBuilder builder = objectMapperBuilder.getIfAvailable();
+        converters.add(new MappingJackson2SmileHttpMessageConverter(builder != null ? builder.factory(new SmileFactory()).build() : Jackson2ObjectMapperBuilder.smile().build()));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.tideseng.springcloud.sample.openfeign.compress;
+
+/**
+ * 支持的Body体压缩格式（Content-Encoding）
+ *      GZIP：gzip格式（RFC 1952），10字节头 + 原始deflate数据 + CRC32和原长度
+ *      DEFLATE：HTTP中的deflate实际为zlib格式（RFC 1950），2字节头 + 原始deflate数据 + Adler32
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    public static final String HEADER = "Content-Encoding";
+
+    /** 未压缩，与没有Content-Encoding请求头等价 */
+    public static final String IDENTITY = "identity";
+
+    private final String value;
+
+    ContentEncoding(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * 是否为未压缩的编码（identity或空值）
+     * @param value
+     * @return
+     */
+    public static boolean isIdentity(String value) {
+        String encoding = value.trim();
+        return encoding.isEmpty() || IDENTITY.equalsIgnoreCase(encoding);
+    }
+
+    /**
+     * 根据请求头的值解析压缩格式（兼容x-gzip）
+     * @param value
+     * @return 不支持的格式返回null
+     */
+    public static ContentEncoding fromHeader(String value) {
+        if (value == null) {
+            return null;
+        }
+        String encoding = value.trim();
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return GZIP;
+        }
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+}
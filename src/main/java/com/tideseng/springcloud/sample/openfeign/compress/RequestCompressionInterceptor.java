@@ -0,0 +1,225 @@
+package com.tideseng.springcloud.sample.openfeign.compress;
+
+import feign.Request;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Body体压缩拦截器：Body体超过阈值时按gzip/deflate压缩并设置Content-Encoding请求头，适用于Body体较大且重复度高的JSON请求（如{@link com.tideseng.springcloud.sample.openfeign.body.InstanceClient}）
+ *      Deflater、CRC32及输出缓冲区从对象池中获取，不在每次请求时创建
+ *      gzip的头和尾（CRC32、原长度）由拦截器直接写入，不经过GZIPOutputStream
+ *      压缩后没有变小时保持原Body体不变；已设置Content-Encoding或Body体已是gzip数据（以gzip魔数开头）时不再压缩
+ * 按FeignClient开启（在@FeignClient的configuration配置类中声明，并放在其它修改Body体的拦截器之后，OpenFeign不会对拦截器排序）：
+ * <pre>
+ *     &#64;Bean
+ *     public RequestCompressionInterceptor requestCompressionInterceptor() {
+ *         return new RequestCompressionInterceptor(2048, ContentEncoding.GZIP, Deflater.BEST_SPEED);
+ *     }
+ * </pre>
+ * 注意：
+ *      服务端需注册{@link RequestDecompressionFilter}
+ *      Feign默认的{@link feign.Client.Default}在请求头中存在Content-Encoding时会自行再压缩一次，需配合不做压缩的Client使用（如OkHttp、Apache HttpClient）
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+public class RequestCompressionInterceptor implements RequestInterceptor {
+
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    /** gzip头：魔数、压缩方法(deflate)、标志位、修改时间、额外标志、操作系统(unknown) */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    /** 归还到池中时保留的输出缓冲区上限，超过时丢弃，避免偶发的大Body体长期占用内存 */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final String[] DEFAULT_CONTENT_TYPES = {"application/json", "application/xml", "text/"};
+
+    private final int minSize;
+
+    private final ContentEncoding encoding;
+
+    private final String[] contentTypes;
+
+    private final ZipCodecPool<Compressor> pool;
+
+    /**
+     * 使用默认的压缩级别，压缩JSON、XML及文本类型的Body体
+     * @param minSize
+     * @param encoding
+     */
+    public RequestCompressionInterceptor(int minSize, ContentEncoding encoding) {
+        this(minSize, encoding, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public RequestCompressionInterceptor(int minSize, ContentEncoding encoding, int level) {
+        this(minSize, encoding, level, DEFAULT_CONTENT_TYPES);
+    }
+
+    /**
+     * @param minSize 需要压缩的Body体最小长度（字节）
+     * @param encoding 压缩格式
+     * @param level 压缩级别（{@link Deflater#BEST_SPEED} ~ {@link Deflater#BEST_COMPRESSION}）
+     * @param contentTypes 需要压缩的Content-Type前缀；请求没有Content-Type时也会压缩
+     */
+    public RequestCompressionInterceptor(int minSize, ContentEncoding encoding, int level, String... contentTypes) {
+        Assert.notNull(encoding, "encoding must not be null");
+        this.minSize = minSize;
+        this.encoding = encoding;
+        this.contentTypes = contentTypes;
+        // HTTP的gzip由拦截器自行写头尾，使用nowrap；deflate使用zlib格式
+        boolean nowrap = encoding == ContentEncoding.GZIP;
+        this.pool = new ZipCodecPool<>(POOL_SIZE, () -> new Compressor(new Deflater(level, nowrap)), Compressor::reset, Compressor::end);
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        byte[] body = template.requestBody().asBytes();
+        if (body == null || body.length < minSize || isGzip(body)) {
+            return;
+        }
+        Map<String, Collection<String>> headers = template.headers();
+        if (headers.containsKey(ContentEncoding.HEADER) || !isCompressible(headers.get(CONTENT_TYPE))) {
+            return;
+        }
+        byte[] compressed;
+        Compressor compressor = pool.acquire();
+        try {
+            compressed = encoding == ContentEncoding.GZIP ? compressor.gzip(body) : compressor.deflate(body);
+        } catch (Exception e) {
+            e.printStackTrace();
+            compressor.end();
+            return;
+        }
+        pool.release(compressor);
+        if (compressed == null) {
+            return;
+        }
+        template.header(ContentEncoding.HEADER, encoding.getValue());
+        // 压缩后为二进制数据，不再指定字符集；同时会重新设置Content-Length
+        template.body(Request.Body.encoded(compressed, null));
+    }
+
+    /**
+     * Body体已是gzip数据（如调用方自行压缩后传入），避免重复压缩
+     */
+    private static boolean isGzip(byte[] body) {
+        return body.length >= 2 && body[0] == GZIP_HEADER[0] && body[1] == GZIP_HEADER[1];
+    }
+
+    private boolean isCompressible(Collection<String> contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return true;
+        }
+        String value = contentType.iterator().next();
+        for (String prefix : contentTypes) {
+            if (value.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 池中的压缩器：Deflater + CRC32 + 可复用的输出缓冲区
+     */
+    private static final class Compressor {
+
+        private final Deflater deflater;
+
+        private final CRC32 crc = new CRC32();
+
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        private Compressor(Deflater deflater) {
+            this.deflater = deflater;
+        }
+
+        /**
+         * gzip压缩：头 + 原始deflate数据 + CRC32 + 原长度（均为小端序）
+         * @return 压缩后没有变小时返回null
+         */
+        byte[] gzip(byte[] body) {
+            System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+            int length = deflate(body, GZIP_HEADER.length, body.length - GZIP_TRAILER_LENGTH);
+            if (length < 0) {
+                return null;
+            }
+            crc.update(body, 0, body.length);
+            ensureCapacity(length + GZIP_TRAILER_LENGTH);
+            length = writeIntLE(buffer, length, (int) crc.getValue());
+            length = writeIntLE(buffer, length, body.length);
+            return Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * zlib格式压缩（Deflater非nowrap模式自带头和Adler32校验）
+         * @return 压缩后没有变小时返回null
+         */
+        byte[] deflate(byte[] body) {
+            int length = deflate(body, 0, body.length);
+            return length < 0 ? null : Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * 将body压缩到缓冲区offset位置之后
+         * @param limit 压缩结果的长度上限，超过时放弃压缩
+         * @return 缓冲区中的数据长度；超过上限时返回-1
+         */
+        private int deflate(byte[] body, int offset, int limit) {
+            deflater.setInput(body, 0, body.length);
+            deflater.finish();
+            int length = offset;
+            while (!deflater.finished()) {
+                if (length >= limit) {
+                    return -1;
+                }
+                if (length == buffer.length) {
+                    ensureCapacity(buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (buffer.length < capacity) {
+                buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+            }
+        }
+
+        void reset() {
+            deflater.reset();
+            crc.reset();
+            if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+    }
+
+    private static int writeIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+
+}
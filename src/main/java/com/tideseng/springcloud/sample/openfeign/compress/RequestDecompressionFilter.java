@@ -0,0 +1,524 @@
+package com.tideseng.springcloud.sample.openfeign.compress;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 服务端Body体解压过滤器，与{@link RequestCompressionInterceptor}配合使用
+ * 请求头中存在Content-Encoding（gzip/deflate）时，将请求包装为解压后的请求，Controller中的@RequestBody等无需任何修改
+ *      Content-Encoding为identity（或多个值中除identity外没有其它编码）时按未压缩的请求处理；同时使用多个压缩格式时返回415
+ *      Inflater及输入缓冲区从对象池中获取，在Body体读取结束、解压失败或请求结束（异步请求在AsyncContext完成）时归还
+ *      gzip的头和尾由过滤器直接解析，并校验CRC32和原长度；支持多个gzip成员拼接的Body体
+ *      解压后的长度超过上限时抛出异常，避免压缩炸弹
+ *      缓冲区为池化的堆内数组：Java 8的Inflater只接受byte[]，使用直接内存时每次解压都需要额外拷贝一次
+ * <pre>
+ *     &#64;Bean
+ *     public FilterRegistrationBean&lt;RequestDecompressionFilter&gt; requestDecompressionFilter() {
+ *         FilterRegistrationBean&lt;RequestDecompressionFilter&gt; registration = new FilterRegistrationBean&lt;&gt;(new RequestDecompressionFilter());
+ *         // FilterRegistrationBean不读取Filter类上的@Order
+ *         registration.setOrder(RequestDecompressionFilter.ORDER);
+ *         return registration;
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+@Order(RequestDecompressionFilter.ORDER)
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+    /**
+     * 在读取Body体的过滤器（如{@link com.tideseng.springcloud.sample.openfeign.promote.PromotedQueryFilter}）之前执行
+     */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
+    private static final long DEFAULT_MAX_INFLATED_SIZE = 64L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final int FHCRC = 2;
+
+    private static final int FEXTRA = 4;
+
+    private static final int FNAME = 8;
+
+    private static final int FCOMMENT = 16;
+
+    private final long maxInflatedSize;
+
+    private final ZipCodecPool<Decompressor> gzipPool = new ZipCodecPool<>(POOL_SIZE, () -> new Decompressor(new Inflater(true)), Decompressor::reset, Decompressor::end);
+
+    private final ZipCodecPool<Decompressor> deflatePool = new ZipCodecPool<>(POOL_SIZE, () -> new Decompressor(new Inflater(false)), Decompressor::reset, Decompressor::end);
+
+    public RequestDecompressionFilter() {
+        this(DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * @param maxInflatedSize 解压后的Body体长度上限（字节）
+     */
+    public RequestDecompressionFilter(long maxInflatedSize) {
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(ContentEncoding.HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        List<String> codings = codings(request);
+        if (codings.isEmpty()) {
+            // identity：未压缩，原样处理
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ContentEncoding encoding = codings.size() == 1 ? ContentEncoding.fromHeader(codings.get(0)) : null;
+        if (encoding == null) {
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "unsupported content encoding");
+            return;
+        }
+        ZipCodecPool<Decompressor> pool = encoding == ContentEncoding.GZIP ? gzipPool : deflatePool;
+        InflatingInputStream body = new InflatingInputStream(request, pool, encoding == ContentEncoding.GZIP, maxInflatedSize);
+        boolean async = false;
+        try {
+            filterChain.doFilter(new DecompressedRequest(request, body), response);
+            if (request.isAsyncStarted()) {
+                // 异步处理时Body体可能在过滤器返回后才被读取，在请求结束时再归还
+                request.getAsyncContext().addListener(new ReleasingAsyncListener(body));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Content-Encoding请求头中除identity外的编码（兼容多个请求头及逗号分隔的多个值）
+     */
+    private static List<String> codings(HttpServletRequest request) {
+        List<String> codings = new ArrayList<>(1);
+        Enumeration<String> values = request.getHeaders(ContentEncoding.HEADER);
+        while (values.hasMoreElements()) {
+            for (String value : values.nextElement().split(",")) {
+                if (!ContentEncoding.isIdentity(value)) {
+                    codings.add(value.trim());
+                }
+            }
+        }
+        return codings;
+    }
+
+    /**
+     * 异步请求结束时归还解压器
+     */
+    private static final class ReleasingAsyncListener implements AsyncListener {
+
+        private final InflatingInputStream body;
+
+        ReleasingAsyncListener(InflatingInputStream body) {
+            this.body = body;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            body.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 再次开启异步时需重新注册监听器
+            event.getAsyncContext().addListener(this);
+        }
+
+    }
+
+    /**
+     * 池中的解压器：Inflater + CRC32 + 可复用的输入缓冲区
+     */
+    private static final class Decompressor {
+
+        private final Inflater inflater;
+
+        private final CRC32 crc = new CRC32();
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Decompressor(Inflater inflater) {
+            this.inflater = inflater;
+        }
+
+        void reset() {
+            inflater.reset();
+            crc.reset();
+        }
+
+        void end() {
+            inflater.end();
+        }
+
+    }
+
+    /**
+     * 边读边解压的输入流，不会将整个Body体读入内存
+     * 从原请求读取的数据先放入缓冲区，[pendingOffset, pending)为尚未消费的部分：gzip头尾由过滤器直接从中解析，其余交给Inflater
+     */
+    private static final class InflatingInputStream extends ServletInputStream {
+
+        private final HttpServletRequest request;
+
+        private final ServletInputStream in;
+
+        private final ZipCodecPool<Decompressor> pool;
+
+        private final Decompressor decompressor;
+
+        /** 解压器是否已归还（归还后不能再读取） */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private final Inflater inflater;
+
+        private final byte[] buffer;
+
+        private final boolean gzip;
+
+        private final long maxInflatedSize;
+
+        private final byte[] single = new byte[1];
+
+        private int pending;
+
+        private int pendingOffset;
+
+        /** 最近一次交给Inflater的数据在缓冲区中的结束位置 */
+        private int inputEnd;
+
+        /** 当前gzip成员已解压的长度 */
+        private long memberSize;
+
+        private long inflatedSize;
+
+        private boolean headerRead;
+
+        private boolean finished;
+
+        private boolean failed;
+
+        InflatingInputStream(HttpServletRequest request, ZipCodecPool<Decompressor> pool, boolean gzip, long maxInflatedSize) throws IOException {
+            this.request = request;
+            this.in = request.getInputStream();
+            this.pool = pool;
+            this.decompressor = pool.acquire();
+            this.inflater = decompressor.inflater;
+            this.buffer = decompressor.buffer;
+            this.gzip = gzip;
+            this.maxInflatedSize = maxInflatedSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (released.get()) {
+                throw new IOException("request body is no longer readable after the request completed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                int n = inflate(b, off, len);
+                if (n == -1) {
+                    // 读取结束后即可归还，不必等到请求结束
+                    release();
+                }
+                return n;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                finished = true;
+                release();
+                throw e;
+            }
+        }
+
+        /**
+         * 归还解压器（只归还一次）；解压失败的Inflater可能已处于不可用状态，直接释放
+         */
+        void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (failed) {
+                decompressor.end();
+            } else {
+                pool.release(decompressor);
+            }
+        }
+
+        private int inflate(byte[] b, int off, int len) throws IOException {
+            if (gzip && !headerRead) {
+                readGzipHeader();
+                headerRead = true;
+            }
+            while (true) {
+                int n;
+                try {
+                    n = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (n > 0) {
+                    inflatedSize += n;
+                    if (inflatedSize > maxInflatedSize) {
+                        throw new IOException("inflated request body exceeds " + maxInflatedSize + " bytes");
+                    }
+                    if (gzip) {
+                        decompressor.crc.update(b, off, n);
+                        memberSize += n;
+                    }
+                    return n;
+                }
+                if (inflater.finished()) {
+                    if (!gzip || !nextGzipMember()) {
+                        finished = true;
+                        return -1;
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("preset dictionary is not supported");
+                } else if (inflater.needsInput()) {
+                    if (pendingOffset == pending && !refill()) {
+                        throw new ZipException("unexpected end of compressed request body");
+                    }
+                    inflater.setInput(buffer, pendingOffset, pending - pendingOffset);
+                    inputEnd = pending;
+                    pendingOffset = pending;
+                }
+            }
+        }
+
+        /**
+         * 校验当前gzip成员的尾部（CRC32、原长度），并判断之后是否还有下一个成员
+         * @return 存在下一个成员时返回true
+         */
+        private boolean nextGzipMember() throws IOException {
+            // Inflater中未使用的输入即为尾部及之后的数据
+            pendingOffset = inputEnd - inflater.getRemaining();
+            pending = inputEnd;
+            long crc = readIntLE();
+            long size = readIntLE();
+            if (crc != decompressor.crc.getValue() || size != (memberSize & 0xffffffffL)) {
+                throw new ZipException("corrupt gzip trailer");
+            }
+            if (pendingOffset == pending && !refill()) {
+                return false;
+            }
+            inflater.reset();
+            decompressor.crc.reset();
+            memberSize = 0;
+            readGzipHeader();
+            return true;
+        }
+
+        private void readGzipHeader() throws IOException {
+            if (readUnsignedByte() != 0x1f || readUnsignedByte() != 0x8b) {
+                throw new ZipException("not in gzip format");
+            }
+            if (readUnsignedByte() != Deflater.DEFLATED) {
+                throw new ZipException("unsupported compression method");
+            }
+            int flags = readUnsignedByte();
+            // 修改时间(4)、额外标志(1)、操作系统(1)
+            skip(6);
+            if ((flags & FEXTRA) != 0) {
+                skip(readUnsignedByte() | (readUnsignedByte() << 8));
+            }
+            if ((flags & FNAME) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FCOMMENT) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+
+        private long readIntLE() throws IOException {
+            return (readUnsignedByte() | (readUnsignedByte() << 8) | (readUnsignedByte() << 16) | ((long) readUnsignedByte() << 24)) & 0xffffffffL;
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                readUnsignedByte();
+            }
+        }
+
+        private void skipZeroTerminated() throws IOException {
+            while (readUnsignedByte() != 0) {
+                // 跳过以0结尾的文件名、注释
+            }
+        }
+
+        private int readUnsignedByte() throws IOException {
+            if (pendingOffset == pending && !refill()) {
+                throw new ZipException("unexpected end of gzip stream");
+            }
+            return buffer[pendingOffset++] & 0xff;
+        }
+
+        private boolean refill() throws IOException {
+            int n = in.read(buffer, 0, buffer.length);
+            while (n == 0) {
+                n = in.read(buffer, 0, buffer.length);
+            }
+            if (n == -1) {
+                return false;
+            }
+            pending = n;
+            pendingOffset = 0;
+            return true;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * 解压时按需阻塞读取原请求，因此始终可读
+         * @return
+         */
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        /**
+         * 非阻塞读取：解压过程为阻塞读取，在异步线程中通知一次可读（{@link #isReady()}始终为true，监听器会一直读到结束），读取结束后通知读取完成
+         * @param readListener
+         */
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            Assert.notNull(readListener, "readListener must not be null");
+            Assert.state(request.isAsyncStarted(), "read listener requires an async request");
+            request.getAsyncContext().start(() -> {
+                try {
+                    readListener.onDataAvailable();
+                    if (finished && !failed) {
+                        readListener.onAllDataRead();
+                    }
+                } catch (Throwable e) {
+                    readListener.onError(e);
+                }
+            });
+        }
+
+    }
+
+    /**
+     * 解压后的请求：Body体为解压后的数据，隐藏Content-Encoding和Content-Length请求头
+     */
+    private static class DecompressedRequest extends HttpServletRequestWrapper {
+
+        private final ServletInputStream body;
+
+        private BufferedReader reader;
+
+        DecompressedRequest(HttpServletRequest request, ServletInputStream body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+                reader = new BufferedReader(new InputStreamReader((InputStream) body, charset));
+            }
+            return reader;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (isHidden(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (isHidden(name)) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getHeaders(name);
+        }
+
+        private static boolean isHidden(String name) {
+            return ContentEncoding.HEADER.equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name);
+        }
+
+    }
+
+}
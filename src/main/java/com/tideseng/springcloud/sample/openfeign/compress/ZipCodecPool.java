@@ -0,0 +1,50 @@
+package com.tideseng.springcloud.sample.openfeign.compress;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Deflater/Inflater对象池，避免每次请求都创建（Deflater/Inflater内部持有native内存，创建和回收的成本较高）
+ *      池为空时直接创建新对象，池已满时归还的对象直接释放（end），因此不会阻塞调用线程
+ * @author jiahuan
+ * @create 2022/6/21
+ */
+final class ZipCodecPool<T> {
+
+    private final BlockingQueue<T> pool;
+
+    private final Supplier<T> factory;
+
+    /** 归还前重置对象状态 */
+    private final Consumer<T> reset;
+
+    /** 释放对象持有的native内存 */
+    private final Consumer<T> destroy;
+
+    ZipCodecPool(int capacity, Supplier<T> factory, Consumer<T> reset, Consumer<T> destroy) {
+        this.pool = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+        this.reset = reset;
+        this.destroy = destroy;
+    }
+
+    T acquire() {
+        T codec = pool.poll();
+        return codec != null ? codec : factory.get();
+    }
+
+    void release(T codec) {
+        try {
+            reset.accept(codec);
+        } catch (RuntimeException e) {
+            destroy.accept(codec);
+            return;
+        }
+        if (!pool.offer(codec)) {
+            destroy.accept(codec);
+        }
+    }
+
+}
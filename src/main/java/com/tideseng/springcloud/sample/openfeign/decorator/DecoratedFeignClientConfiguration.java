@@ -0,0 +1,37 @@
+package com.tideseng.springcloud.sample.openfeign.decorator;
+
+import feign.Client;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 使用{@link FeignClientDecorator}包装Client的配置类，由各个装饰功能的配置类导入，同一个FeignClient中只会注册一次
+ * 包装的是主容器中的Client（负载均衡的LoadBalancerFeignClient），只支持未指定url的FeignClient
+ * 注意：主容器中的FeignClientDecorator也会被获取到，对所有使用该配置类的FeignClient生效
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+public class DecoratedFeignClientConfiguration {
+
+    /**
+     * FeignClient子容器中的Client优先于主容器中的Client，因此从主容器获取被包装的Client
+     * @param context FeignClient子容器
+     * @param decorators
+     * @return
+     */
+    @Bean
+    public Client decoratedFeignClient(ApplicationContext context, ObjectProvider<FeignClientDecorator> decorators) {
+        Client client = context.getParent().getBean(Client.class);
+        List<FeignClientDecorator> ordered = decorators.orderedStream().collect(Collectors.toList());
+        // 从内层开始包装，order最小的在最外层
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            client = ordered.get(i).decorate(client);
+        }
+        return client;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.tideseng.springcloud.sample.openfeign.decorator;
+
+import feign.Client;
+import org.springframework.core.Ordered;
+
+/**
+ * Feign Client的装饰器，由{@link DecoratedFeignClientConfiguration}按顺序包装主容器中的Client
+ * getOrder()越小越靠外层（越先执行），如缓存在合并请求之外：缓存命中时不再进入合并
+ * @author jiahuan
+ * @create 2022/6/25
+ */
+public interface FeignClientDecorator extends Ordered {
+
+    /** 响应缓存 */
+    int CACHE_ORDER = 100;
+
+    /** 合并相同的并发请求 */
+    int SINGLE_FLIGHT_ORDER = 200;
+
+    /** 对冲请求（合并后的请求才发起对冲） */
+    int HEDGING_ORDER = 300;
+
+    /** 设置一致性哈希键（需在负载均衡所在的线程中设置） */
+    int HASH_KEY_ORDER = 400;
+
+    /** Smile请求Body体按实例回退为JSON（最内层，在负载均衡之内包装） */
+    int SMILE_FALLBACK_ORDER = 1000;
+
+    /**
+     * 包装Client
+     * @param client 内层的Client
+     * @return
+     */
+    Client decorate(Client client);
+
+}
@@ -0,0 +1,59 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import java.lang.annotation.*;
+
+/**
+ * 将单条查询方法的调用合并为批量查询方法的一次调用（解决循环中逐条调用的N+1问题）
+ * 单条查询方法只能有一个参数（查询的ID），返回值为T或CompletableFuture&lt;T&gt;；
+ * 批量查询方法与单条查询方法在同一个FeignClient中，只能有一个List/Set/Collection类型的参数，返回值为List&lt;T&gt;或Collection&lt;T&gt;
+ * <pre>
+ *     &#64;Batched(bulkMethod = "getByIds", key = "id")
+ *     &#64;GetMapping("/models/{id}")
+ *     Model getById(@PathVariable("id") Long id);
+ *
+ *     &#64;PostMapping("/models/list")
+ *     List&lt;Model&gt; getByIds(@RequestBody List&lt;Long&gt; ids);
+ * </pre>
+ * 需使用{@link PrecomputedInvocationHandlerFactory}（如{@link FeignMethodDispatchConfiguration}）
+ * @see MicroBatcher
+ * @author jiahuan
+ * @create 2022/6/24
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Batched {
+
+    /**
+     * 批量查询方法的方法名
+     * @return
+     */
+    String bulkMethod();
+
+    /**
+     * 批量查询结果中与单条查询参数对应的属性名（结果为Map时为key），为空时按参数顺序一一对应（批量查询结果的数量须与参数数量一致）
+     * 结果中不存在的ID，单条查询抛出IllegalStateException（不返回null，避免与查询结果本身为null混淆）
+     * @return
+     */
+    String key() default "";
+
+    /**
+     * 单次批量查询的最大ID数，达到后立即发起批量查询
+     * @return
+     */
+    int maxSize() default 100;
+
+    /**
+     * 第一个ID加入后最多等待的时间（毫秒），到达后发起批量查询
+     * @return
+     */
+    long maxDelay() default 5;
+
+    /**
+     * 按原Request的请求头分组，值不同的调用不会合并到同一次批量查询中；默认为调用者的身份凭证（与响应缓存的缓存键一致），不同调用者的ID不会以其中一个调用者的身份查询
+     * 批量查询使用组内第一个调用的原Request快照，其它影响查询结果的请求头（如租户标识）也需声明在这里；为空时所有调用合并到一起
+     * @return
+     */
+    String[] partitionHeaders() default {"Authorization", "Cookie"};
+
+}
@@ -0,0 +1,41 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import feign.FeignException;
+import feign.Response;
+import feign.codec.Decoder;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 返回值为CompletableFuture&lt;T&gt;的方法按T解码，由{@link PrecomputedInvocationHandlerFactory}包装为CompletableFuture返回
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public class CompletableFutureDecoder implements Decoder {
+
+    private final Decoder delegate;
+
+    public CompletableFutureDecoder(Decoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException, FeignException {
+        if (!isCompletableFuture(type)) {
+            return delegate.decode(response, type);
+        }
+        Type valueType = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if (valueType == Void.class) {
+            return null;
+        }
+        return delegate.decode(response, valueType);
+    }
+
+    static boolean isCompletableFuture(Type type) {
+        return type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == CompletableFuture.class;
+    }
+
+}
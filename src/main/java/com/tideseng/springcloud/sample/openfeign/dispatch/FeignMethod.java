@@ -0,0 +1,127 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import feign.InvocationHandlerFactory.MethodHandler;
+import feign.MethodMetadata;
+import feign.Target;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FeignClient方法的描述信息，在生成代理对象时预先创建，调用时不再解析
+ *      Feign 10.4的RequestTemplate中没有方法元信息，拦截器及Client可通过{@link FeignMethodContext#current()}获取当前调用的方法
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public final class FeignMethod {
+
+    private static final Object NONE = new Object();
+
+    private final Target<?> target;
+
+    private final Method method;
+
+    private final MethodHandler handler;
+
+    private final String configKey;
+
+    private final MethodMetadata metadata;
+
+    /** 返回值是否为CompletableFuture */
+    private final boolean async;
+
+    /** 方法注解（含接口上的注解）的缓存，未找到时缓存NONE */
+    private final Map<Class<?>, Object> annotations = new ConcurrentHashMap<>();
+
+    /** {@link Batched}修饰的方法的调用合并器，在生成代理对象前设置 */
+    private MicroBatcher batcher;
+
+    FeignMethod(Target<?> target, Method method, MethodHandler handler, String configKey, MethodMetadata metadata) {
+        this.target = target;
+        this.method = method;
+        this.handler = handler;
+        this.configKey = configKey;
+        this.metadata = metadata;
+        this.async = CompletableFutureDecoder.isCompletableFuture(method.getGenericReturnType());
+    }
+
+    public Target<?> getTarget() {
+        return target;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    MethodHandler getHandler() {
+        return handler;
+    }
+
+    MicroBatcher getBatcher() {
+        return batcher;
+    }
+
+    void setBatcher(MicroBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    /**
+     * Feign的方法标识，如InstanceClient#getList(Application)
+     * @return
+     */
+    public String getConfigKey() {
+        return configKey;
+    }
+
+    /**
+     * 由Contract解析出的方法元信息（请求方式、请求路径等），默认方法等非远程调用方法为null
+     * @return
+     */
+    public MethodMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * 返回值是否为CompletableFuture（在线程池中异步调用）
+     * @return
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * 请求方式，非远程调用方法返回null
+     * @return
+     */
+    public String getHttpMethod() {
+        return metadata != null ? metadata.template().method() : null;
+    }
+
+    /**
+     * 获取方法上的注解，方法上没有时获取接口上的注解，结果会被缓存
+     * @param annotationType
+     * @param <A>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <A extends Annotation> A getAnnotation(Class<A> annotationType) {
+        Object annotation = annotations.get(annotationType);
+        if (annotation == null) {
+            annotation = method.getAnnotation(annotationType);
+            if (annotation == null) {
+                annotation = target.type().getAnnotation(annotationType);
+            }
+            annotation = annotation != null ? annotation : NONE;
+            annotations.put(annotationType, annotation);
+        }
+        return annotation == NONE ? null : (A) annotation;
+    }
+
+    @Override
+    public String toString() {
+        return configKey;
+    }
+
+}
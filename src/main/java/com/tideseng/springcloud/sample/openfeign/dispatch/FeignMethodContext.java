@@ -0,0 +1,64 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 当前线程正在调用的FeignClient方法，由{@link PrecomputedInvocationHandlerFactory}在调用期间设置
+ * 拦截器、Encoder、Client等在调用线程中执行，均可获取；FeignClient未使用该工厂或不在Feign调用中时为null
+ * 开启Hystrix时Feign调用在Hystrix线程池中执行，由{@link com.tideseng.springcloud.sample.openfeign.async.ContextCapturingHystrixConcurrencyStrategy}通过{@link #wrap(Callable)}传递
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public abstract class FeignMethodContext {
+
+    private static final ThreadLocal<FeignMethod> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 获取当前线程正在调用的FeignClient方法
+     * @return
+     */
+    public static FeignMethod current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 进入方法调用（FeignClient方法中可能嵌套调用其它FeignClient，返回上一层的方法用于恢复）
+     * @param method
+     * @return
+     */
+    static FeignMethod enter(FeignMethod method) {
+        FeignMethod previous = CURRENT.get();
+        CURRENT.set(method);
+        return previous;
+    }
+
+    static void exit(FeignMethod previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * 包装任务：在当前线程获取正在调用的方法，在执行任务的线程中设置，执行完成后恢复
+     * @param callable
+     * @param <T>
+     * @return
+     */
+    public static <T> Callable<T> wrap(Callable<T> callable) {
+        FeignMethod method = CURRENT.get();
+        if (method == null) {
+            return callable;
+        }
+        return () -> {
+            FeignMethod previous = enter(method);
+            try {
+                return callable.call();
+            } finally {
+                exit(previous);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import feign.Contract;
+import feign.Feign;
+import feign.codec.Decoder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Scope;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ClassUtils;
+
+/**
+ * FeignClient的方法分发配置类，在@FeignClient的configuration中指定即可开启
+ * 通过{@link com.tideseng.springcloud.sample.openfeign.autoconfiguration.OperationLogConfiguration}注册的FeignClient，
+ * 配置application.log.feign-client.precomputed-dispatch=true后会自动添加该配置类
+ * 返回值为CompletableFuture的方法使用每个FeignClient独立的线程池（相互隔离，慢服务不会占满其它服务的线程）：
+ * <pre>
+ *     application.feign.async.pool-size=64
+ *     application.feign.async.queue-capacity=256
+ *     application.feign.async.keep-alive-seconds=60
+ * </pre>
+ * 注意：异步方法只是把阻塞的远程调用从调用线程（如Tomcat线程）转移到该线程池中，远程调用本身仍是阻塞的，每个进行中的调用占用一个线程，
+ *      因此同时进行中的异步调用数不超过pool-size（超过的调用在队列中等待，队列已满时返回以RejectedExecutionException结束的CompletableFuture）
+ * 开启feign.hystrix.enabled时使用{@link HystrixDispatchFeignBuilder}，fallback、熔断保持不变，
+ * Hystrix线程池中执行的调用需注册{@link com.tideseng.springcloud.sample.openfeign.async.ContextCapturingHystrixConcurrencyStrategy}才能获取当前方法
+ * @see PrecomputedInvocationHandlerFactory
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public class FeignMethodDispatchConfiguration {
+
+    private static final String PREFIX = "application.feign.async.";
+
+    @Bean
+    public ThreadPoolTaskExecutor feignAsyncExecutor(Environment environment) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // feign.client.name为OpenFeign为每个FeignClient子容器设置的名称
+        executor.setThreadNamePrefix("feign-async-" + environment.getProperty("feign.client.name", "default") + "-");
+        // 核心线程数与最大线程数相同：ThreadPoolExecutor只有在队列已满时才会创建超过核心线程数的线程，核心线程数较小时队列中的调用只能等待少数线程
+        int poolSize = environment.getProperty(PREFIX + "pool-size", Integer.class, 64);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(environment.getProperty(PREFIX + "queue-capacity", Integer.class, 256));
+        executor.setKeepAliveSeconds(environment.getProperty(PREFIX + "keep-alive-seconds", Integer.class, 60));
+        // 空闲时回收核心线程
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    /**
+     * 与OpenFeign默认的Feign.Builder一样为原型Bean，其余组件（Encoder、Decoder、Retryer等）仍由FeignClientFactoryBean设置
+     * FeignClientFactoryBean设置的Decoder会被包装为{@link CompletableFutureDecoder}（Hystrix的Contract已按CompletableFuture的泛型解码，无需包装）
+     * @param contract
+     * @param feignAsyncExecutor
+     * @param environment
+     * @param applicationContext FeignClient的子容器
+     * @return
+     */
+    @Bean
+    @Scope("prototype")
+    public Feign.Builder feignBuilder(Contract contract, ThreadPoolTaskExecutor feignAsyncExecutor, Environment environment, ApplicationContext applicationContext) {
+        // 与FeignClientsConfiguration中创建HystrixFeign.Builder的条件一致
+        if (environment.getProperty("feign.hystrix.enabled", Boolean.class, Boolean.FALSE)
+                && ClassUtils.isPresent("feign.hystrix.HystrixFeign", applicationContext.getClassLoader())) {
+            return new HystrixDispatchFeignBuilder(new PrecomputedInvocationHandlerFactory(contract, feignAsyncExecutor), applicationContext);
+        }
+        return new Feign.Builder() {
+            @Override
+            public Feign.Builder decoder(Decoder decoder) {
+                return super.decoder(new CompletableFutureDecoder(decoder));
+            }
+        }.invocationHandlerFactory(new PrecomputedInvocationHandlerFactory(contract, feignAsyncExecutor));
+    }
+
+}
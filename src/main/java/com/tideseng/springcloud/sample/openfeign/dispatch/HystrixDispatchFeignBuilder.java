@@ -0,0 +1,189 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import feign.*;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.codec.ErrorDecoder;
+import feign.hystrix.FallbackFactory;
+import feign.hystrix.HystrixFeign;
+import feign.hystrix.SetterFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * 开启feign.hystrix.enabled时使用的Feign.Builder，由{@link FeignMethodDispatchConfiguration}创建
+ *      HystrixFeign.Builder为final类且不允许设置InvocationHandlerFactory，因此将FeignClientFactoryBean设置的组件全部转交给内部的HystrixFeign.Builder，
+ *      由其生成带fallback、熔断的代理对象，再由{@link PrecomputedInvocationHandlerFactory#wrap(Target, Object)}包装
+ *      HystrixTargeter只对HystrixFeign.Builder设置fallback，该类按HystrixTargeter的方式从@FeignClient的fallback、fallbackFactory及FeignClient子容器中获取
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public class HystrixDispatchFeignBuilder extends Feign.Builder {
+
+    private final HystrixFeign.Builder delegate = HystrixFeign.builder();
+
+    private final PrecomputedInvocationHandlerFactory invocationHandlerFactory;
+
+    /** FeignClient的子容器，用于获取fallback、fallbackFactory及SetterFactory */
+    private final BeanFactory beanFactory;
+
+    public HystrixDispatchFeignBuilder(PrecomputedInvocationHandlerFactory invocationHandlerFactory, BeanFactory beanFactory) {
+        this.invocationHandlerFactory = invocationHandlerFactory;
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public <T> T target(Target<T> target) {
+        SetterFactory setterFactory = beanFactory.getBeanProvider(SetterFactory.class).getIfAvailable();
+        if (setterFactory != null) {
+            delegate.setterFactory(setterFactory);
+        }
+        FeignClient feignClient = AnnotatedElementUtils.findMergedAnnotation(target.type(), FeignClient.class);
+        T hystrixProxy;
+        if (feignClient != null && feignClient.fallback() != void.class) {
+            T fallback = getFallback("fallback", feignClient.fallback(), target.type());
+            hystrixProxy = delegate.target(target, fallback);
+        } else if (feignClient != null && feignClient.fallbackFactory() != void.class) {
+            FallbackFactory<? extends T> fallbackFactory = getFallback("fallbackFactory", feignClient.fallbackFactory(), FallbackFactory.class);
+            hystrixProxy = delegate.target(target, fallbackFactory);
+        } else {
+            hystrixProxy = delegate.target(target);
+        }
+        return invocationHandlerFactory.wrap(target, hystrixProxy);
+    }
+
+    /**
+     * 与HystrixTargeter一致：fallback需注册为FeignClient子容器（或主容器）中的Bean
+     */
+    @SuppressWarnings("unchecked")
+    private <F> F getFallback(String fallbackMechanism, Class<?> beanType, Class<?> targetType) {
+        Object instance = beanFactory.getBeanProvider(beanType).getIfAvailable();
+        if (instance == null) {
+            throw new IllegalStateException(String.format("No %s instance of type %s found for feign client %s", fallbackMechanism, beanType, targetType));
+        }
+        if (!targetType.isAssignableFrom(beanType)) {
+            throw new IllegalStateException(String.format("Incompatible %s instance. Fallback/fallbackFactory of type %s is not assignable to %s", fallbackMechanism, beanType, targetType));
+        }
+        return (F) instance;
+    }
+
+    /**
+     * 与Feign.Builder一致：{@link Feign#newInstance(Target)}等价于{@link #target(Target)}
+     */
+    @Override
+    public Feign build() {
+        return new Feign() {
+            @Override
+            public <T> T newInstance(Target<T> target) {
+                return HystrixDispatchFeignBuilder.this.target(target);
+            }
+        };
+    }
+
+    /**
+     * 与HystrixFeign.Builder一致：代理对象的InvocationHandler固定为HystrixInvocationHandler（再由{@link PrecomputedInvocationHandlerFactory}包装）
+     */
+    @Override
+    public Feign.Builder invocationHandlerFactory(InvocationHandlerFactory invocationHandlerFactory) {
+        delegate.invocationHandlerFactory(invocationHandlerFactory);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder logLevel(Logger.Level logLevel) {
+        delegate.logLevel(logLevel);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder contract(Contract contract) {
+        delegate.contract(contract);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder client(Client client) {
+        delegate.client(client);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder retryer(Retryer retryer) {
+        delegate.retryer(retryer);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder logger(Logger logger) {
+        delegate.logger(logger);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder encoder(Encoder encoder) {
+        delegate.encoder(encoder);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder decoder(Decoder decoder) {
+        delegate.decoder(decoder);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder queryMapEncoder(QueryMapEncoder queryMapEncoder) {
+        delegate.queryMapEncoder(queryMapEncoder);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder mapAndDecode(ResponseMapper mapper, Decoder decoder) {
+        delegate.mapAndDecode(mapper, decoder);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder decode404() {
+        delegate.decode404();
+        return this;
+    }
+
+    @Override
+    public Feign.Builder errorDecoder(ErrorDecoder errorDecoder) {
+        delegate.errorDecoder(errorDecoder);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder options(Request.Options options) {
+        delegate.options(options);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder requestInterceptor(RequestInterceptor requestInterceptor) {
+        delegate.requestInterceptor(requestInterceptor);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder requestInterceptors(Iterable<RequestInterceptor> requestInterceptors) {
+        delegate.requestInterceptors(requestInterceptors);
+        return this;
+    }
+
+    @Override
+    public Feign.Builder doNotCloseAfterDecode() {
+        delegate.doNotCloseAfterDecode();
+        return this;
+    }
+
+    @Override
+    public Feign.Builder exceptionPropagationPolicy(ExceptionPropagationPolicy propagationPolicy) {
+        delegate.exceptionPropagationPolicy(propagationPolicy);
+        return this;
+    }
+
+}
@@ -0,0 +1,312 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
+import org.springframework.beans.BeanUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link Batched}修饰方法的调用合并器，每个单条查询方法一个
+ *      调用时将参数加入当前分组的批次，返回该参数对应的CompletableFuture（同步方法在调用线程中等待）
+ *      批次达到maxSize或等待maxDelay后发起一次批量查询，按key将结果分发给各个调用方；同一批次中相同的ID只查询一次
+ *      按partitionHeaders（默认为Authorization、Cookie）分组，不同身份凭证的调用不会合并，批量查询使用组内第一个调用的原Request快照
+ *      批量查询在线程池中执行（定时线程只负责触发），仍经过同一套拦截器、Encoder/Decoder及Client，失败时该批次的所有调用都抛出同样的异常
+ *      同步的单条查询会阻塞调用线程直到批量查询完成，在执行批量查询的线程池中（如CompletableFuture方法的回调）同步调用时不合并，直接调用单条查询方法，
+ *      避免线程池被等待批量查询的线程占满而死锁（通过{@link #worker(Executor, Runnable)}标记线程池中执行的任务）
+ * @author jiahuan
+ * @create 2022/6/24
+ */
+final class MicroBatcher {
+
+    /** 所有合并器共用的定时线程，只负责触发批量查询 */
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    /** 当前线程正在执行的任务所属的线程池 */
+    private static final ThreadLocal<Executor> WORKER = new ThreadLocal<>();
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "feign-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final FeignMethod bulkMethod;
+
+    private final boolean setArgument;
+
+    private final String key;
+
+    private final int maxSize;
+
+    private final long maxDelay;
+
+    private final String[] partitionHeaders;
+
+    private final Executor executor;
+
+    /** 按分组（partitionHeaders的值）正在收集的批次 */
+    private final Map<List<String>, Batch> batches = new HashMap<>();
+
+    /** 结果元素类型 -> key属性的读方法 */
+    private final Map<Class<?>, Method> keyReaders = new ConcurrentHashMap<>();
+
+    private MicroBatcher(FeignMethod bulkMethod, Batched batched, Executor executor) {
+        this.bulkMethod = bulkMethod;
+        this.setArgument = Set.class.isAssignableFrom(bulkMethod.getMethod().getParameterTypes()[0]);
+        this.key = batched.key();
+        this.maxSize = Math.max(1, batched.maxSize());
+        this.maxDelay = Math.max(0, batched.maxDelay());
+        this.partitionHeaders = batched.partitionHeaders();
+        this.executor = executor;
+    }
+
+    /**
+     * 创建单条查询方法的合并器，方法签名不符合{@link Batched}的要求时抛出IllegalStateException
+     * @param method 单条查询方法
+     * @param batched
+     * @param methods FeignClient的所有方法
+     * @param executor 执行批量查询的线程池
+     * @return
+     */
+    static MicroBatcher create(FeignMethod method, Batched batched, Collection<FeignMethod> methods, Executor executor) {
+        if (executor == null) {
+            throw new IllegalStateException("@Batched method requires an executor for bulk calls: " + method.getConfigKey());
+        }
+        if (method.getMethod().getParameterCount() != 1) {
+            throw new IllegalStateException("@Batched method must have exactly one parameter: " + method.getConfigKey());
+        }
+        FeignMethod bulkMethod = null;
+        for (FeignMethod candidate : methods) {
+            if (candidate.getMethod().getName().equals(batched.bulkMethod()) && candidate.getMethod().getParameterCount() == 1) {
+                bulkMethod = candidate;
+                break;
+            }
+        }
+        if (bulkMethod == null || bulkMethod.getMetadata() == null) {
+            throw new IllegalStateException("bulk method " + batched.bulkMethod() + "(..) with one parameter not found for " + method.getConfigKey());
+        }
+        Class<?> parameterType = bulkMethod.getMethod().getParameterTypes()[0];
+        if (!parameterType.isAssignableFrom(ArrayList.class) && !parameterType.isAssignableFrom(LinkedHashSet.class)) {
+            throw new IllegalStateException("bulk method parameter must be a List, Set or Collection: " + bulkMethod.getConfigKey());
+        }
+        if (!Collection.class.isAssignableFrom(bulkMethod.getMethod().getReturnType())) {
+            throw new IllegalStateException("bulk method must return a Collection: " + bulkMethod.getConfigKey());
+        }
+        return new MicroBatcher(bulkMethod, batched, executor);
+    }
+
+    /**
+     * 标记任务在线程池中执行，任务中同步调用{@link Batched}方法时不合并
+     * @param executor
+     * @param task
+     * @return
+     */
+    static Runnable worker(Executor executor, Runnable task) {
+        return () -> {
+            Executor previous = WORKER.get();
+            WORKER.set(executor);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    WORKER.remove();
+                } else {
+                    WORKER.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * 当前线程是否在执行批量查询的线程池中（同步等待批量查询可能死锁）
+     * @return
+     */
+    boolean isWorkerThread() {
+        return WORKER.get() == executor;
+    }
+
+    /**
+     * 加入批次
+     * @param argument 单条查询的参数
+     * @return 该参数对应的查询结果
+     */
+    CompletableFuture<Object> submit(Object argument) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        List<String> partition = partition();
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = batches.get(partition);
+            if (batch == null) {
+                batch = new Batch(partition, FeignRequestContextHolder.current());
+                batches.put(partition, batch);
+                Batch scheduled = batch;
+                batch.timeout = TIMER.schedule(() -> flush(scheduled), maxDelay, TimeUnit.MILLISECONDS);
+            }
+            batch.add(argument, future);
+            if (batch.size() >= maxSize) {
+                batches.remove(partition);
+                batch.timeout.cancel(false);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private List<String> partition() {
+        if (partitionHeaders.length == 0) {
+            return Collections.emptyList();
+        }
+        FeignRequestContext context = FeignRequestContextHolder.current();
+        List<String> values = new ArrayList<>(partitionHeaders.length);
+        for (String name : partitionHeaders) {
+            values.add(context != null ? context.getHeader(name) : null);
+        }
+        return values;
+    }
+
+    /**
+     * 定时触发，批次已因达到maxSize被发起时忽略
+     */
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (batches.get(batch.partition) != batch) {
+                return;
+            }
+            batches.remove(batch.partition);
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        try {
+            executor.execute(worker(executor, () -> execute(batch)));
+        } catch (RejectedExecutionException e) {
+            batch.fail(e);
+        }
+    }
+
+    private void execute(Batch batch) {
+        FeignRequestContext previous = FeignRequestContextHolder.getPropagated();
+        FeignRequestContextHolder.set(batch.context);
+        try {
+            Collection<Object> arguments = setArgument ? new LinkedHashSet<>(batch.arguments) : batch.arguments;
+            Object result = PrecomputedInvocationHandlerFactory.PrecomputedInvocationHandler.invoke(bulkMethod, new Object[]{arguments});
+            batch.complete((Collection<?>) result);
+        } catch (Throwable e) {
+            batch.fail(e);
+        } finally {
+            FeignRequestContextHolder.set(previous);
+        }
+    }
+
+    private Object readKey(Object element) throws ReflectiveOperationException {
+        if (element instanceof Map) {
+            return ((Map<?, ?>) element).get(key);
+        }
+        Class<?> type = element.getClass();
+        Method reader = keyReaders.get(type);
+        if (reader == null) {
+            PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, key);
+            if (descriptor == null || descriptor.getReadMethod() == null) {
+                throw new IllegalStateException("no readable property '" + key + "' on " + type.getName());
+            }
+            reader = descriptor.getReadMethod();
+            keyReaders.put(type, reader);
+        }
+        return reader.invoke(element);
+    }
+
+    /**
+     * 整数类型的ID统一转换为Long比较（如参数为Long，JSON解码后的属性为Integer）
+     */
+    private static Object normalize(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    /**
+     * 一次批量查询的参数及等待结果的调用方
+     */
+    private final class Batch {
+
+        private final List<String> partition;
+
+        private final FeignRequestContext context;
+
+        /** 去重后的参数，顺序与加入顺序一致 */
+        private final List<Object> arguments = new ArrayList<>();
+
+        /** 参数（统一转换后） -> 等待该参数结果的调用方 */
+        private final Map<Object, List<CompletableFuture<Object>>> waiters = new LinkedHashMap<>();
+
+        private ScheduledFuture<?> timeout;
+
+        Batch(List<String> partition, FeignRequestContext context) {
+            this.partition = partition;
+            this.context = context;
+        }
+
+        void add(Object argument, CompletableFuture<Object> future) {
+            List<CompletableFuture<Object>> futures = waiters.get(normalize(argument));
+            if (futures == null) {
+                futures = new ArrayList<>(1);
+                waiters.put(normalize(argument), futures);
+                arguments.add(argument);
+            }
+            futures.add(future);
+        }
+
+        int size() {
+            return arguments.size();
+        }
+
+        void complete(Collection<?> results) throws ReflectiveOperationException {
+            if (results == null) {
+                results = Collections.emptyList();
+            }
+            if (key.isEmpty()) {
+                if (results.size() != waiters.size()) {
+                    throw new IllegalStateException("bulk method " + bulkMethod.getConfigKey() + " returned " + results.size() + " results for " + waiters.size() + " arguments");
+                }
+                Iterator<?> result = results.iterator();
+                for (List<CompletableFuture<Object>> futures : waiters.values()) {
+                    Object value = result.next();
+                    futures.forEach(future -> future.complete(value));
+                }
+                return;
+            }
+            for (Object element : results) {
+                if (element != null) {
+                    List<CompletableFuture<Object>> futures = waiters.remove(normalize(readKey(element)));
+                    if (futures != null) {
+                        futures.forEach(future -> future.complete(element));
+                    }
+                }
+            }
+            for (Map.Entry<Object, List<CompletableFuture<Object>>> entry : waiters.entrySet()) {
+                IllegalStateException e = new IllegalStateException("bulk method " + bulkMethod.getConfigKey() + " returned no result with " + key + "=" + entry.getKey());
+                entry.getValue().forEach(future -> future.completeExceptionally(e));
+            }
+        }
+
+        void fail(Throwable e) {
+            for (List<CompletableFuture<Object>> futures : waiters.values()) {
+                futures.forEach(future -> future.completeExceptionally(e));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
+import feign.Contract;
+import feign.Feign;
+import feign.InvocationHandlerFactory;
+import feign.MethodMetadata;
+import feign.Target;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 预先计算方法分发的InvocationHandler工厂，替换Feign默认的{@link feign.ReflectiveFeign.FeignInvocationHandler}
+ *      生成代理对象时为每个方法创建{@link FeignMethod}（方法元信息由Contract解析一次）
+ *      调用时按代理方法的Method实例（同一个代理类中固定不变）进行同一性查找，不再对方法名、参数类型进行equals比较
+ *      调用期间将当前方法设置到{@link FeignMethodContext}中
+ *      {@link Batched}修饰的方法由{@link MicroBatcher}合并为批量查询方法的调用，批量查询在线程池中执行（需指定线程池）
+ *      返回值为CompletableFuture&lt;T&gt;的方法在线程池中调用，调用线程（如Tomcat线程）不再阻塞等待远程响应；
+ *      线程池中执行的仍是同一套拦截器、Encoder/Decoder及LoadBalancerFeignClient，原Request的快照通过{@link FeignRequestContextHolder}传递，
+ *      Decoder需使用{@link CompletableFutureDecoder}包装（{@link FeignMethodDispatchConfiguration}中已处理）
+ * 开启feign.hystrix.enabled时由{@link HystrixDispatchFeignBuilder}通过{@link #wrap(Target, Object)}包装HystrixFeign生成的代理对象，fallback及熔断保持不变
+ * 注意：该工厂只预先计算方法分发，不再预先计算请求模板：Feign 10.4在生成代理对象时已为每个方法解析一次请求模板（URI、请求头模板解析为Template）
+ *      并实例化一次参数的Expander（ParseHandlersByName创建的BuildTemplateByResolvingArgs），每次调用只复制模板（拦截器会修改模板，不能共用）并展开参数；
+ *      SynchronousMethodHandler及BuildTemplateByResolvingArgs为包级私有，该工厂只能使用Feign创建好的MethodHandler。与Feign默认ReflectiveFeign的对比见测试目录下的PrecomputedDispatchBenchmark
+ * @see FeignMethodDispatchConfiguration
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+public class PrecomputedInvocationHandlerFactory implements InvocationHandlerFactory {
+
+    private final Contract contract;
+
+    private final Executor executor;
+
+    /**
+     * @param contract 用于解析方法元信息，为空时{@link FeignMethod#getMetadata()}为null
+     */
+    public PrecomputedInvocationHandlerFactory(Contract contract) {
+        this(contract, null);
+    }
+
+    /**
+     * @param contract 用于解析方法元信息，为空时{@link FeignMethod#getMetadata()}为null
+     * @param executor 返回值为CompletableFuture的方法使用的线程池，为空时在调用线程中同步执行；{@link Batched}方法的批量查询也在该线程池中执行，不能为空
+     */
+    public PrecomputedInvocationHandlerFactory(Contract contract, Executor executor) {
+        this.contract = contract;
+        this.executor = executor;
+    }
+
+    /**
+     * 参数类型由Feign的InvocationHandlerFactory接口声明为原始类型Target，无法改为Target&lt;?&gt;（擦除后相同但不构成重写）
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public InvocationHandler create(Target target, Map<Method, MethodHandler> dispatch) {
+        return create(target, dispatch, true);
+    }
+
+    /**
+     * 包装HystrixFeign生成的代理对象：方法分发及{@link Batched}合并由该工厂处理，每个方法仍调用HystrixInvocationHandler（fallback、熔断不变）
+     * 返回值为CompletableFuture的方法由Hystrix在其线程池中执行，不再提交到线程池
+     * @param target
+     * @param hystrixProxy HystrixFeign生成的代理对象
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    <T> T wrap(Target<T> target, T hystrixProxy) {
+        InvocationHandler hystrixHandler = Proxy.getInvocationHandler(hystrixProxy);
+        Map<Method, MethodHandler> dispatch = new LinkedHashMap<>();
+        for (Method method : target.type().getMethods()) {
+            if (method.getDeclaringClass() != Object.class && !Modifier.isStatic(method.getModifiers())) {
+                dispatch.put(method, args -> hystrixHandler.invoke(hystrixProxy, method, args));
+            }
+        }
+        InvocationHandler handler = create(target, dispatch, false);
+        return (T) Proxy.newProxyInstance(target.type().getClassLoader(), new Class<?>[]{target.type()}, handler);
+    }
+
+    /**
+     * @param asyncInPool 返回值为CompletableFuture的方法是否提交到线程池（MethodHandler同步返回结果时）
+     */
+    private InvocationHandler create(Target<?> target, Map<Method, MethodHandler> dispatch, boolean asyncInPool) {
+        Map<String, MethodMetadata> metadata = new HashMap<>();
+        if (contract != null) {
+            for (MethodMetadata md : contract.parseAndValidatateMetadata(target.type())) {
+                metadata.put(md.configKey(), md);
+            }
+        }
+        Map<Method, FeignMethod> methods = new HashMap<>(dispatch.size() * 2);
+        for (Map.Entry<Method, MethodHandler> entry : dispatch.entrySet()) {
+            String configKey = Feign.configKey(target.type(), entry.getKey());
+            methods.put(entry.getKey(), new FeignMethod(target, entry.getKey(), entry.getValue(), configKey, metadata.get(configKey)));
+        }
+        for (FeignMethod feignMethod : methods.values()) {
+            Batched batched = feignMethod.getAnnotation(Batched.class);
+            if (batched != null) {
+                feignMethod.setBatcher(MicroBatcher.create(feignMethod, batched, methods.values(), executor));
+            }
+        }
+        return new PrecomputedInvocationHandler(target, methods, executor, asyncInPool);
+    }
+
+    static final class PrecomputedInvocationHandler implements InvocationHandler {
+
+        private final Target<?> target;
+
+        private final Executor executor;
+
+        private final boolean asyncInPool;
+
+        /** 按Method.equals查找，只在代理方法第一次调用时使用 */
+        private final Map<Method, FeignMethod> methods;
+
+        /** 按代理方法的Method实例同一性查找，写时复制 */
+        private volatile Map<Method, FeignMethod> resolved = new IdentityHashMap<>();
+
+        PrecomputedInvocationHandler(Target<?> target, Map<Method, FeignMethod> methods, Executor executor, boolean asyncInPool) {
+            this.target = target;
+            this.methods = methods;
+            this.executor = executor;
+            this.asyncInPool = asyncInPool;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            FeignMethod feignMethod = resolve(method);
+            if (feignMethod == null) {
+                return invokeObjectMethod(method, args);
+            }
+            if (feignMethod.getBatcher() != null) {
+                return invokeBatched(feignMethod, args[0]);
+            }
+            if (feignMethod.isAsync() && asyncInPool) {
+                return invokeAsync(feignMethod, args);
+            }
+            return invoke(feignMethod, args);
+        }
+
+        static Object invoke(FeignMethod feignMethod, Object[] args) throws Throwable {
+            FeignMethod previous = FeignMethodContext.enter(feignMethod);
+            try {
+                return feignMethod.getHandler().invoke(args);
+            } finally {
+                FeignMethodContext.exit(previous);
+            }
+        }
+
+        /**
+         * 在线程池中调用，异常（包括线程池拒绝）均通过CompletableFuture返回
+         */
+        private CompletableFuture<Object> invokeAsync(FeignMethod feignMethod, Object[] args) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            Runnable task = FeignRequestContextHolder.wrap(() -> {
+                try {
+                    future.complete(invoke(feignMethod, args));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            if (executor == null) {
+                task.run();
+                return future;
+            }
+            try {
+                executor.execute(MicroBatcher.worker(executor, task));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        /**
+         * 加入批次，同步方法在调用线程中等待批量查询的结果；在执行批量查询的线程池中同步调用时不合并
+         */
+        private static Object invokeBatched(FeignMethod feignMethod, Object argument) throws Throwable {
+            MicroBatcher batcher = feignMethod.getBatcher();
+            if (!feignMethod.isAsync() && batcher.isWorkerThread()) {
+                return invoke(feignMethod, new Object[]{argument});
+            }
+            CompletableFuture<Object> future = batcher.submit(argument);
+            if (feignMethod.isAsync()) {
+                return future;
+            }
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() != null ? e.getCause() : e;
+            }
+        }
+
+        private FeignMethod resolve(Method method) {
+            FeignMethod feignMethod = resolved.get(method);
+            if (feignMethod != null) {
+                return feignMethod;
+            }
+            feignMethod = methods.get(method);
+            if (feignMethod != null) {
+                synchronized (this) {
+                    Map<Method, FeignMethod> copy = new IdentityHashMap<>(resolved);
+                    copy.put(method, feignMethod);
+                    resolved = copy;
+                }
+            }
+            return feignMethod;
+        }
+
+        /**
+         * 与Feign默认的InvocationHandler保持一致的equals、hashCode、toString
+         *      接口方法（包括default方法）均在methods中，代理类只会将Object的equals、hashCode、toString分发到这里
+         */
+        private Object invokeObjectMethod(Method method, Object[] args) {
+            if ("equals".equals(method.getName())) {
+                Object other = args != null && args.length > 0 ? args[0] : null;
+                if (other == null || !Proxy.isProxyClass(other.getClass())) {
+                    return false;
+                }
+                InvocationHandler handler = Proxy.getInvocationHandler(other);
+                return handler instanceof PrecomputedInvocationHandler && target.equals(((PrecomputedInvocationHandler) handler).target);
+            }
+            if ("hashCode".equals(method.getName())) {
+                return target.hashCode();
+            }
+            return target.toString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PrecomputedInvocationHandler && target.equals(((PrecomputedInvocationHandler) obj).target);
+        }
+
+        @Override
+        public int hashCode() {
+            return target.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return target.toString();
+        }
+
+    }
+
+}
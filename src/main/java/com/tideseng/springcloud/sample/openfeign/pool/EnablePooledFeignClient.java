@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.*;
+
+/**
+ * 开启基于连接池的Feign Client（Apache HttpClient），替换默认的HttpURLConnection
+ * 可通过application.feign.pool.enabled=false关闭，连接池配置见{@link PooledFeignClientProperties}
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@Import(EnablePooledFeignClientImportSelector.class)
+public @interface EnablePooledFeignClient {
+}
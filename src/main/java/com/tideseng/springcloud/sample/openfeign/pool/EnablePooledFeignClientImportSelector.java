@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import org.springframework.cloud.commons.util.SpringFactoryImportSelector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class EnablePooledFeignClientImportSelector extends SpringFactoryImportSelector<EnablePooledFeignClient> {
+
+    @Override
+    protected boolean isEnabled() {
+        return getEnvironment().getProperty("application.feign.pool.enabled", Boolean.class, Boolean.TRUE);
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import feign.Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 由{@link EnablePooledFeignClient}通过spring.factories导入，先于OpenFeign的自动装配注册Client，OpenFeign默认的Client（@ConditionalOnMissingBean）不再生效
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+@Configuration
+public class PooledFeignClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public PooledHttpClient pooledHttpClient(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new PooledHttpClient(new PooledFeignClientProperties(environment), meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    public Client pooledFeignClient(PooledHttpClient pooledHttpClient, CachingSpringLoadBalancerFactory cachingFactory, SpringClientFactory clientFactory) {
+        return new PooledLoadBalancerFeignClient(pooledHttpClient, cachingFactory, clientFactory);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * 连接池配置，支持按服务覆盖（服务级配置不存在时使用全局配置）
+ * <pre>
+ *     application.feign.pool.max-total=200                       单个服务的最大连接数
+ *     application.feign.pool.max-per-route=50                    单个服务实例（ip:port）的最大连接数
+ *     application.feign.pool.connect-timeout=-1                  建立连接超时时间（毫秒），小于0时使用Feign/Ribbon的配置
+ *     application.feign.pool.read-timeout=-1                     读取超时时间（毫秒），小于0时使用Feign/Ribbon的配置
+ *     application.feign.pool.connection-request-timeout=1000     从连接池获取连接的等待时间（毫秒）
+ *     application.feign.pool.idle-timeout=30000                  空闲连接的回收时间（毫秒）
+ *     application.feign.pool.time-to-live=-1                     连接的最大存活时间（毫秒），小于0时不限制
+ *     application.feign.pool.validate-after-inactivity=2000      连接空闲超过该时间后复用前先校验（毫秒）
+ *     application.feign.pool.eviction-interval=5000              空闲连接的检查间隔（毫秒），所有服务共用一个线程
+ *     application.feign.pool.services.data-model.max-per-route=100   按服务覆盖，除eviction-interval外均支持
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+public class PooledFeignClientProperties {
+
+    private static final String PREFIX = "application.feign.pool.";
+
+    private final int maxTotal;
+
+    private final int maxPerRoute;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final int connectionRequestTimeout;
+
+    private final long idleTimeout;
+
+    private final long timeToLive;
+
+    private final int validateAfterInactivity;
+
+    private final long evictionInterval;
+
+    private final Environment environment;
+
+    public PooledFeignClientProperties(Environment environment) {
+        this.environment = environment;
+        this.maxTotal = environment.getProperty(PREFIX + "max-total", Integer.class, 200);
+        this.maxPerRoute = environment.getProperty(PREFIX + "max-per-route", Integer.class, 50);
+        this.connectTimeout = environment.getProperty(PREFIX + "connect-timeout", Integer.class, -1);
+        this.readTimeout = environment.getProperty(PREFIX + "read-timeout", Integer.class, -1);
+        this.connectionRequestTimeout = environment.getProperty(PREFIX + "connection-request-timeout", Integer.class, 1000);
+        this.idleTimeout = environment.getProperty(PREFIX + "idle-timeout", Long.class, 30000L);
+        this.timeToLive = environment.getProperty(PREFIX + "time-to-live", Long.class, -1L);
+        this.validateAfterInactivity = environment.getProperty(PREFIX + "validate-after-inactivity", Integer.class, 2000);
+        this.evictionInterval = environment.getProperty(PREFIX + "eviction-interval", Long.class, 5000L);
+    }
+
+    private PooledFeignClientProperties(PooledFeignClientProperties defaults, String serviceId) {
+        String prefix = PREFIX + "services." + serviceId + ".";
+        Environment env = defaults.environment;
+        this.environment = env;
+        this.maxTotal = env.getProperty(prefix + "max-total", Integer.class, defaults.maxTotal);
+        this.maxPerRoute = env.getProperty(prefix + "max-per-route", Integer.class, defaults.maxPerRoute);
+        this.connectTimeout = env.getProperty(prefix + "connect-timeout", Integer.class, defaults.connectTimeout);
+        this.readTimeout = env.getProperty(prefix + "read-timeout", Integer.class, defaults.readTimeout);
+        this.connectionRequestTimeout = env.getProperty(prefix + "connection-request-timeout", Integer.class, defaults.connectionRequestTimeout);
+        this.idleTimeout = env.getProperty(prefix + "idle-timeout", Long.class, defaults.idleTimeout);
+        this.timeToLive = env.getProperty(prefix + "time-to-live", Long.class, defaults.timeToLive);
+        this.validateAfterInactivity = env.getProperty(prefix + "validate-after-inactivity", Integer.class, defaults.validateAfterInactivity);
+        this.evictionInterval = defaults.evictionInterval;
+    }
+
+    /**
+     * 获取指定服务的配置
+     * @param serviceId
+     * @return
+     */
+    public PooledFeignClientProperties forService(String serviceId) {
+        return new PooledFeignClientProperties(this, serviceId);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public long getEvictionInterval() {
+        return evictionInterval;
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * 基于Apache HttpClient连接池的Feign Client，每个服务独立一个连接池（连接数、超时时间可按服务配置）
+ *      服务ID由{@link PooledLoadBalancerFeignClient}在负载均衡前记录；直接指定url的FeignClient按url的host区分连接池
+ *      所有连接池共用一个后台线程回收空闲及过期的连接
+ *      存在MeterRegistry时按服务暴露连接池指标：feign.pool.leased、feign.pool.idle、feign.pool.pending、feign.pool.max、feign.pool.wait（获取连接的等待时间）
+ * 不会对请求Body体做压缩，可配合{@link com.tideseng.springcloud.sample.openfeign.compress.RequestCompressionInterceptor}使用
+ * @see EnablePooledFeignClient
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+public class PooledHttpClient implements Client, Closeable {
+
+    private static final String DEFAULT_SERVICE_ID = "default";
+
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final PooledFeignClientProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, ServicePool> pools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * @param properties 连接池配置
+     * @param meterRegistry 可为空，为空时不暴露指标
+     */
+    public PooledHttpClient(PooledFeignClientProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feign-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getEvictionInterval();
+        this.evictor.scheduleWithFixedDelay(this::evict, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        ServicePool pool = getPool(serviceId(request));
+        RequestBuilder builder = RequestBuilder.create(request.httpMethod().name())
+                .setUri(request.url())
+                .setConfig(pool.requestConfig(options));
+        for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+            // Content-Length由HttpClient根据Body体设置，重复设置会导致请求失败
+            if (!CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                for (String value : header.getValue()) {
+                    builder.addHeader(header.getKey(), value);
+                }
+            }
+        }
+        byte[] body = request.requestBody().asBytes();
+        if (body != null) {
+            builder.setEntity(new ByteArrayEntity(body));
+        }
+        CloseableHttpResponse httpResponse = pool.httpClient.execute(builder.build());
+        return toResponse(httpResponse, request);
+    }
+
+    /**
+     * 获取指定服务的连接池统计信息
+     * @param serviceId
+     * @return 连接池尚未创建时返回null
+     */
+    public PoolStats getStats(String serviceId) {
+        ServicePool pool = pools.get(serviceId);
+        return pool != null ? pool.connectionManager.getTotalStats() : null;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        for (ServicePool pool : pools.values()) {
+            try {
+                pool.httpClient.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        pools.clear();
+    }
+
+    private String serviceId(Request request) {
+        String serviceId = PooledLoadBalancerFeignClient.currentServiceId();
+        if (serviceId == null) {
+            serviceId = URI.create(request.url()).getHost();
+        }
+        return serviceId != null ? serviceId : DEFAULT_SERVICE_ID;
+    }
+
+    private ServicePool getPool(String serviceId) {
+        ServicePool pool = pools.get(serviceId);
+        return pool != null ? pool : pools.computeIfAbsent(serviceId, id -> new ServicePool(id, properties.forService(id), meterRegistry));
+    }
+
+    private void evict() {
+        for (ServicePool pool : pools.values()) {
+            try {
+                pool.connectionManager.closeExpiredConnections();
+                pool.connectionManager.closeIdleConnections(pool.properties.getIdleTimeout(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Response toResponse(CloseableHttpResponse httpResponse, Request request) throws IOException {
+        StatusLine statusLine = httpResponse.getStatusLine();
+        Map<String, Collection<String>> headers = new HashMap<>();
+        for (Header header : httpResponse.getAllHeaders()) {
+            headers.computeIfAbsent(header.getName(), name -> new ArrayList<>(1)).add(header.getValue());
+        }
+        Response.Builder builder = Response.builder()
+                .status(statusLine.getStatusCode())
+                .reason(statusLine.getReasonPhrase())
+                .headers(headers)
+                .request(request);
+        HttpEntity entity = httpResponse.getEntity();
+        if (entity == null) {
+            httpResponse.close();
+            return builder.build();
+        }
+        long length = entity.getContentLength();
+        // 关闭Body体的输入流时，HttpClient会读完剩余数据并将连接归还到连接池
+        return builder.body(entity.getContent(), length >= 0 && length <= Integer.MAX_VALUE ? (int) length : null).build();
+    }
+
+    /**
+     * 单个服务的连接池
+     */
+    private static final class ServicePool {
+
+        private final PooledFeignClientProperties properties;
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private final CloseableHttpClient httpClient;
+
+        private final RequestConfig defaultConfig;
+
+        ServicePool(String serviceId, PooledFeignClientProperties properties, MeterRegistry meterRegistry) {
+            this.properties = properties;
+            Timer waitTimer = meterRegistry != null ? Timer.builder("feign.pool.wait").tag("service", serviceId).register(meterRegistry) : null;
+            this.connectionManager = new MeteredConnectionManager(properties.getTimeToLive(), waitTimer);
+            this.connectionManager.setMaxTotal(properties.getMaxTotal());
+            this.connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+            this.connectionManager.setValidateAfterInactivity(properties.getValidateAfterInactivity());
+            this.defaultConfig = RequestConfig.custom()
+                    .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                    .build();
+            this.httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(defaultConfig)
+                    // 重试由Ribbon负责；连接不绑定用户状态，保证所有请求都可以复用连接
+                    .disableAutomaticRetries()
+                    .disableCookieManagement()
+                    .disableConnectionState()
+                    .build();
+            if (meterRegistry != null) {
+                bindGauge(meterRegistry, "feign.pool.leased", serviceId, PoolStats::getLeased);
+                bindGauge(meterRegistry, "feign.pool.idle", serviceId, PoolStats::getAvailable);
+                bindGauge(meterRegistry, "feign.pool.pending", serviceId, PoolStats::getPending);
+                bindGauge(meterRegistry, "feign.pool.max", serviceId, PoolStats::getMax);
+            }
+        }
+
+        private void bindGauge(MeterRegistry meterRegistry, String name, String serviceId, ToIntFunction<PoolStats> value) {
+            Gauge.builder(name, connectionManager, manager -> value.applyAsInt(manager.getTotalStats()))
+                    .tag("service", serviceId)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * 服务配置了超时时间时使用服务的配置，否则使用Feign/Ribbon传入的配置
+         */
+        RequestConfig requestConfig(Request.Options options) {
+            int connectTimeout = properties.getConnectTimeout() >= 0 ? properties.getConnectTimeout() : options.connectTimeoutMillis();
+            int readTimeout = properties.getReadTimeout() >= 0 ? properties.getReadTimeout() : options.readTimeoutMillis();
+            return RequestConfig.copy(defaultConfig)
+                    .setConnectTimeout(connectTimeout)
+                    .setSocketTimeout(readTimeout)
+                    .setRedirectsEnabled(options.isFollowRedirects())
+                    .build();
+        }
+
+    }
+
+    /**
+     * 记录获取连接等待时间的连接池
+     */
+    private static final class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final Timer waitTimer;
+
+        MeteredConnectionManager(long timeToLive, Timer waitTimer) {
+            super(timeToLive, TimeUnit.MILLISECONDS);
+            this.waitTimer = waitTimer;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            if (waitTimer == null) {
+                return request;
+            }
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, timeUnit);
+                    } finally {
+                        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.tideseng.springcloud.sample.openfeign.pool;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * 记录服务ID的负载均衡Client：负载均衡后请求地址中的服务ID已被替换为实例的ip:port，因此在负载均衡前记录，供{@link PooledHttpClient}选择服务的连接池
+ * Ribbon的负载均衡及重试在当前线程中同步执行，服务ID通过ThreadLocal传递
+ * @author jiahuan
+ * @create 2022/6/22
+ */
+public class PooledLoadBalancerFeignClient extends LoadBalancerFeignClient {
+
+    private static final ThreadLocal<String> SERVICE_ID = new ThreadLocal<>();
+
+    public PooledLoadBalancerFeignClient(Client delegate, CachingSpringLoadBalancerFactory lbClientFactory, SpringClientFactory clientFactory) {
+        super(delegate, lbClientFactory, clientFactory);
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        String previous = SERVICE_ID.get();
+        SERVICE_ID.set(URI.create(request.url()).getHost());
+        try {
+            return super.execute(request, options);
+        } finally {
+            if (previous == null) {
+                SERVICE_ID.remove();
+            } else {
+                SERVICE_ID.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 获取当前线程正在调用的服务ID
+     * @return 不在负载均衡调用中时返回null
+     */
+    static String currentServiceId() {
+        return SERVICE_ID.get();
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.tideseng.springcloud.sample.openfeign.promote;
+
+import feign.Request;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.util.Assert;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 超长param参数转移拦截器：GET请求的param参数编码后超过阈值时，将参数转移到Body体中并改为POST请求，避免URL超长被服务端拒绝
+ * 按FeignClient开启（在@FeignClient的configuration配置类中声明该拦截器），服务端需注册{@link PromotedQueryFilter}还原请求，两端使用相同的内部调用令牌
+ * <pre>
+ *     &#64;Bean
+ *     public OversizedQueryPromotionInterceptor oversizedQueryPromotionInterceptor(Environment environment) {
+ *         return new OversizedQueryPromotionInterceptor(4096, environment.getProperty("application.feign.promoted-query.token"), PromotedQueryCodec.Format.BINARY, "userIdList");
+ *     }
+ * </pre>
+ * 注意：
+ *      转移后的请求为POST请求，Ribbon默认不会对POST请求进行重试（OkToRetryOnAllOperations=false）
+ *      该拦截器需在改写param参数的拦截器（如{@link com.tideseng.springcloud.sample.openfeign.request.FeignClientRequestInterceptor}）之后执行，因此声明为最低优先级；
+ *      spring-cloud-openfeign 2.2.0按Bean的注册顺序添加拦截器（不按@Order排序），且@FeignClient的configuration配置类中的Bean先于全局配置注册，
+ *      同时存在改写param参数的拦截器时需将其声明在同一个配置类中该拦截器之前
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class OversizedQueryPromotionInterceptor implements RequestInterceptor {
+
+    private final int threshold;
+
+    private final String token;
+
+    private final PromotedQueryCodec.Format format;
+
+    /** 需要转移的参数，为空时转移所有参数 */
+    private final Set<String> parameterNames;
+
+    /**
+     * @param threshold 编码后的param参数长度阈值（字节）
+     * @param token 内部调用令牌，与服务端{@link PromotedQueryFilter}一致
+     * @param format Body体的编码格式
+     * @param parameterNames 需要转移的参数，为空时转移所有参数
+     */
+    public OversizedQueryPromotionInterceptor(int threshold, String token, PromotedQueryCodec.Format format, String... parameterNames) {
+        Assert.hasText(token, "promoted query token must not be empty");
+        this.threshold = threshold;
+        this.token = token;
+        this.format = format;
+        this.parameterNames = parameterNames.length == 0 ? Collections.emptySet() : new HashSet<>(Arrays.asList(parameterNames));
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        if (!Request.HttpMethod.GET.name().equals(template.method())) {
+            return;
+        }
+        byte[] body = template.requestBody().asBytes();
+        if (body != null && body.length > 0) {
+            return;
+        }
+        Map<String, Collection<String>> queries = template.queries();
+        if (queries.isEmpty() || encodedLength(queries) <= threshold) {
+            return;
+        }
+        Map<String, List<String>> promoted = new LinkedHashMap<>();
+        for (Map.Entry<String, Collection<String>> entry : queries.entrySet()) {
+            if (parameterNames.isEmpty() || parameterNames.contains(entry.getKey())) {
+                List<String> values = new ArrayList<>(entry.getValue().size());
+                for (String value : entry.getValue()) {
+                    // RequestTemplate中的值是编码后的，转移到Body体前先解码
+                    values.add(value.indexOf('%') < 0 ? value : UriUtils.decode(value, StandardCharsets.UTF_8));
+                }
+                promoted.put(entry.getKey(), values);
+            }
+        }
+        if (promoted.isEmpty()) {
+            return;
+        }
+        try {
+            byte[] encoded = PromotedQueryCodec.encode(promoted, format);
+            for (String name : promoted.keySet()) {
+                template.query(name, Collections.emptyList());
+            }
+            template.method(Request.HttpMethod.POST);
+            template.header(PromotedQueryCodec.ORIGINAL_METHOD_HEADER, Request.HttpMethod.GET.name());
+            template.header(PromotedQueryCodec.PROMOTED_HEADER, format.name());
+            template.header(PromotedQueryCodec.TOKEN_HEADER, token);
+            template.header("Content-Type", Collections.emptyList());
+            template.header("Content-Type", format.getContentType());
+            template.body(Request.Body.encoded(encoded, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 估算编码后的param参数长度（参数名 + 值 + 分隔符），不拼接字符串
+     */
+    private static int encodedLength(Map<String, Collection<String>> queries) {
+        int length = 0;
+        for (Map.Entry<String, Collection<String>> entry : queries.entrySet()) {
+            int nameLength = entry.getKey().length();
+            for (String value : entry.getValue()) {
+                length += nameLength + value.length() + 2;
+            }
+        }
+        return length;
+    }
+
+}
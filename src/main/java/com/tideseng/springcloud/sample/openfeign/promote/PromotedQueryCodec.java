@@ -0,0 +1,220 @@
+package com.tideseng.springcloud.sample.openfeign.promote;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * 被转移到Body体中的param参数的编解码，客户端{@link OversizedQueryPromotionInterceptor}与服务端{@link PromotedQueryFilter}共用
+ *      JSON格式：{"userIdList":["1","2","3"]}
+ *      二进制格式：参数个数(short)，每个参数依次为参数名(UTF)、值类型(byte，1为long数组、0为字符串数组)、值个数(int)、值（long为8字节，字符串为UTF）
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public final class PromotedQueryCodec {
+
+    /** 标识请求的param参数被转移到Body体中，值为编码格式 */
+    public static final String PROMOTED_HEADER = "X-Promoted-Query";
+
+    /** 转移前的请求方式 */
+    public static final String ORIGINAL_METHOD_HEADER = "X-Original-Method";
+
+    /** 内部调用标识，值为客户端与服务端约定的令牌，服务端只还原携带该令牌的请求 */
+    public static final String TOKEN_HEADER = "X-Promoted-Query-Token";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte STRING_VALUES = 0;
+
+    private static final byte LONG_VALUES = 1;
+
+    /** 单个参数的值个数上限，避免异常的Body体导致分配过大的数组 */
+    private static final int MAX_VALUES = 1 << 20;
+
+    public enum Format {
+        JSON("application/json"),
+        BINARY("application/octet-stream");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * 判断请求的Content-Type是否为该格式（忽略charset等参数）
+         * @param requestContentType
+         * @return
+         */
+        public boolean matches(String requestContentType) {
+            if (requestContentType == null) {
+                return false;
+            }
+            int end = requestContentType.indexOf(';');
+            String mediaType = (end < 0 ? requestContentType : requestContentType.substring(0, end)).trim();
+            return contentType.equalsIgnoreCase(mediaType);
+        }
+    }
+
+    private PromotedQueryCodec() {
+    }
+
+    public static byte[] encode(Map<String, ? extends Collection<String>> parameters, Format format) throws IOException {
+        return format == Format.JSON ? encodeJson(parameters) : encodeBinary(parameters);
+    }
+
+    /**
+     * 解码Body体中的参数，只接受编码时的格式：JSON为值是标量数组的对象，二进制格式需恰好读完，否则抛出IOException
+     * @param body
+     * @param format
+     * @return
+     * @throws IOException
+     */
+    public static Map<String, String[]> decode(InputStream body, Format format) throws IOException {
+        return format == Format.JSON ? decodeJson(body) : decodeBinary(body);
+    }
+
+    private static byte[] encodeJson(Map<String, ? extends Collection<String>> parameters) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, ? extends Collection<String>> entry : parameters.entrySet()) {
+                generator.writeArrayFieldStart(entry.getKey());
+                for (String value : entry.getValue()) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String[]> decodeJson(InputStream body) throws IOException {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("promoted query must be a json object");
+            }
+            List<String> values = new ArrayList<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("value of promoted parameter " + name + " must be an array");
+                }
+                values.clear();
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null || !token.isScalarValue() || token == JsonToken.VALUE_NULL) {
+                        throw new IOException("value of promoted parameter " + name + " must be an array of strings");
+                    }
+                    if (values.size() >= MAX_VALUES) {
+                        throw new IOException("too many values of promoted parameter " + name);
+                    }
+                    values.add(parser.getValueAsString());
+                }
+                parameters.put(name, values.toArray(new String[0]));
+            }
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new IOException("promoted query must be a single json object");
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] encodeBinary(Map<String, ? extends Collection<String>> parameters) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(parameters.size());
+        for (Map.Entry<String, ? extends Collection<String>> entry : parameters.entrySet()) {
+            Collection<String> values = entry.getValue();
+            out.writeUTF(entry.getKey());
+            long[] longs = toLongs(values);
+            if (longs != null) {
+                out.writeByte(LONG_VALUES);
+                out.writeInt(longs.length);
+                for (long value : longs) {
+                    out.writeLong(value);
+                }
+            } else {
+                out.writeByte(STRING_VALUES);
+                out.writeInt(values.size());
+                for (String value : values) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String[]> decodeBinary(InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(body));
+        int count = in.readUnsignedShort();
+        Map<String, String[]> parameters = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            byte type = in.readByte();
+            if (type != LONG_VALUES && type != STRING_VALUES) {
+                throw new IOException("illegal value type " + type + " of parameter " + name);
+            }
+            int size = in.readInt();
+            if (size < 0 || size > MAX_VALUES) {
+                throw new IOException("illegal value count " + size + " of parameter " + name);
+            }
+            String[] values = new String[size];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = type == LONG_VALUES ? Long.toString(in.readLong()) : in.readUTF();
+            }
+            parameters.put(name, values);
+        }
+        if (in.read() != -1) {
+            throw new IOException("unexpected trailing bytes after promoted query");
+        }
+        return parameters;
+    }
+
+    /**
+     * 所有值都是long时转为long数组，否则返回null
+     */
+    private static long[] toLongs(Collection<String> values) {
+        long[] longs = new long[values.size()];
+        int i = 0;
+        for (String value : values) {
+            if (!isLong(value)) {
+                return null;
+            }
+            longs[i++] = Long.parseLong(value);
+        }
+        return longs;
+    }
+
+    private static boolean isLong(String value) {
+        int length = value.length();
+        if (length == 0 || length > 19) {
+            return false;
+        }
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        // 前导0及"-0"在转换为long后无法还原为原字符串
+        if (start == length || (value.charAt(start) == '0' && (length > start + 1 || start == 1))) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return length < 19 || value.compareTo("9223372036854775807") <= 0;
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.tideseng.springcloud.sample.openfeign.promote;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 服务端还原被{@link OversizedQueryPromotionInterceptor}转移到Body体中的param参数
+ * 将请求包装为原请求方式（GET）并把Body体中的参数合并到请求参数中，使@GetMapping、@RequestParam等无需任何修改即可正常匹配和解析
+ *      只还原携带内部调用令牌（{@link PromotedQueryCodec#TOKEN_HEADER}）的POST请求，令牌不一致时按普通POST请求处理，避免外部请求通过请求头将POST请求伪装为GET请求
+ *      Body体必须是编码时的格式（Content-Type与格式一致、原请求方式为GET、内容可被完整解码），否则返回400
+ * <pre>
+ *     &#64;Bean
+ *     public FilterRegistrationBean&lt;PromotedQueryFilter&gt; promotedQueryFilter(Environment environment) {
+ *         FilterRegistrationBean&lt;PromotedQueryFilter&gt; registration = new FilterRegistrationBean&lt;&gt;(new PromotedQueryFilter(environment.getProperty("application.feign.promoted-query.token")));
+ *         // FilterRegistrationBean不读取Filter类上的@Order
+ *         registration.setOrder(PromotedQueryFilter.ORDER);
+ *         return registration;
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+@Order(PromotedQueryFilter.ORDER)
+public class PromotedQueryFilter extends OncePerRequestFilter {
+
+    /**
+     * 在Body体解压（{@link com.tideseng.springcloud.sample.openfeign.compress.RequestDecompressionFilter}）之后、
+     * Spring读取请求参数及请求方式的过滤器（如HiddenHttpMethodFilter、FormContentFilter）之前执行
+     */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 20;
+
+    private final byte[] token;
+
+    /**
+     * @param token 内部调用令牌，与客户端{@link OversizedQueryPromotionInterceptor}一致
+     */
+    public PromotedQueryFilter(String token) {
+        Assert.hasText(token, "promoted query token must not be empty");
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (request.getHeader(PromotedQueryCodec.PROMOTED_HEADER) == null || !"POST".equals(request.getMethod())) {
+            return true;
+        }
+        String requestToken = request.getHeader(PromotedQueryCodec.TOKEN_HEADER);
+        // 按固定时间比较，避免通过响应时间逐字节猜测令牌
+        return requestToken == null || !MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        PromotedQueryCodec.Format format;
+        try {
+            format = PromotedQueryCodec.Format.valueOf(request.getHeader(PromotedQueryCodec.PROMOTED_HEADER));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "unsupported promoted query format");
+            return;
+        }
+        if (!"GET".equals(request.getHeader(PromotedQueryCodec.ORIGINAL_METHOD_HEADER)) || !format.matches(request.getContentType())) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "malformed promoted query");
+            return;
+        }
+        Map<String, String[]> promoted;
+        try {
+            promoted = PromotedQueryCodec.decode(request.getInputStream(), format);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "malformed promoted query");
+            return;
+        }
+        filterChain.doFilter(new PromotedQueryRequest(request, promoted), response);
+    }
+
+    /**
+     * 还原后的请求：原请求方式、合并后的请求参数、空Body体
+     */
+    private static class PromotedQueryRequest extends HttpServletRequestWrapper {
+
+        private final String method;
+
+        private final Map<String, String[]> parameters;
+
+        PromotedQueryRequest(HttpServletRequest request, Map<String, String[]> promoted) {
+            super(request);
+            // 只有GET请求会被转移，不信任请求头中的其它请求方式，避免将POST请求伪装为DELETE等请求
+            this.method = "GET";
+            Map<String, String[]> merged = new LinkedHashMap<>(request.getParameterMap());
+            merged.putAll(promoted);
+            this.parameters = Collections.unmodifiableMap(merged);
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameters;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public int getContentLength() {
+            return 0;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return 0;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if ("Content-Type".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name) || PromotedQueryCodec.TOKEN_HEADER.equalsIgnoreCase(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return true;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                }
+
+                @Override
+                public int read() {
+                    return -1;
+                }
+            };
+        }
+
+    }
+
+}
@@ -1,44 +1,63 @@
 package com.tideseng.springcloud.sample.openfeign.request;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext;
+import com.tideseng.springcloud.sample.openfeign.async.FeignRequestContextHolder;
 import feign.Request;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import javax.servlet.http.HttpServletRequest;
-import java.util.*;
-
 /**
  * Feign的请求拦截器，拦截请求，处理Post请求的Body体、param参数、head头信息
+ * 改写param参数需在超长param参数转移（{@link com.tideseng.springcloud.sample.openfeign.promote.OversizedQueryPromotionInterceptor}，最低优先级）之前执行
  * @author jiahuan
  * @create 2022/6/20
  */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
 public class FeignClientRequestInterceptor implements RequestInterceptor {
 
+    /**
+     * 默认的param参数改写规则：userIds=1,2,3 改写为 userIdList=1&userIdList=2&userIdList=3
+     */
+    public static final QueryRewriter DEFAULT_QUERY_REWRITER = new QueryRewriter(QueryRewriteRule.split("userIds", "userIdList", ','));
+
+    private final HeaderPropagationPolicy headerPropagationPolicy;
+
+    private final QueryRewriter queryRewriter;
+
+    public FeignClientRequestInterceptor() {
+        this(HeaderPropagationPolicy.DEFAULT);
+    }
+
+    public FeignClientRequestInterceptor(HeaderPropagationPolicy headerPropagationPolicy) {
+        this(headerPropagationPolicy, DEFAULT_QUERY_REWRITER);
+    }
+
+    public FeignClientRequestInterceptor(HeaderPropagationPolicy headerPropagationPolicy, QueryRewriter queryRewriter) {
+        this.headerPropagationPolicy = headerPropagationPolicy;
+        this.queryRewriter = queryRewriter;
+    }
+
     @Override
     public void apply(RequestTemplate template) {
-        // 如果不是Request请求则不进行处理
+        // 如果不是Request请求、也没有从Request线程传递过来的快照（异步线程中调用）则不进行处理
         ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        if (attributes == null) {
+        FeignRequestContext context = attributes == null ? FeignRequestContextHolder.getPropagated() : null;
+        if (attributes == null && context == null) {
             return;
         }
 
         // 设置header头信息，如：添加令牌信息（令牌信息可直接从Request的请求头中获取，或从缓存中获取客户端令牌信息）
         template.header("Authorization", "Bearer xxx");
 
-        // 设置header头信息（拷贝原Request的请求头信息，如：令牌信息等）
-        HttpServletRequest request = attributes.getRequest();
-        Enumeration<String> headerNames = request.getHeaderNames();
-        if (headerNames != null) {
-            while (headerNames.hasMoreElements()) {
-                String name = headerNames.nextElement();
-                String values = request.getHeader(name);
-                template.header(name, values);
-            }
-        }
+        // 设置header头信息（按透传策略拷贝原Request的请求头信息，如：令牌信息等；同一原Request只解析一次，多次Feign调用共用；异步线程中使用Request线程捕获的快照）
+        PropagatedHeaders headers = attributes != null ? headerPropagationPolicy.capture(attributes.getRequest()) : context.getHeaders(headerPropagationPolicy);
+        headers.applyTo(template);
 
         // 设置Body体，用于统一扩展Body体（实现效果同InstanceFeignClientInterceptorBodyConfig）
         String method = template.method();
@@ -58,26 +77,8 @@ public class FeignClientRequestInterceptor implements RequestInterceptor {
             }
         }
 
-        // 设置param参数，用于扩展param请求参数
-        Map<String, Collection<String>> queries = template.queries();
-        if (queries != null) {
-            Map<String, Collection<String>> newQueries = new HashMap<>();
-            for (Map.Entry<String, Collection<String>> entry : queries.entrySet()) {
-                if("userIds".equals(entry.getKey())) {
-                    Collection<String> value = new ArrayList<>();
-                    Collection<String> originValue = entry.getValue();
-                    if(!StringUtils.isEmpty(originValue)) {
-                        List<String> list = (List) originValue;
-                        Arrays.asList(StringUtils.commaDelimitedListToStringArray(list.get(0)));
-                        newQueries.put("userIdList", Arrays.asList(StringUtils.commaDelimitedListToStringArray(list.get(0))));
-                    }
-                }
-            }
-            // 替换原有的param参数前，需要将原对象设为空，否则会追加
-            template.queries(null);
-            // 重新设置param请求参数
-            template.queries(newQueries);
-        }
+        // 设置param参数，用于扩展param请求参数（按规则改写，只修改规则涉及的参数，其它参数保持不变）
+        queryRewriter.rewrite(template);
     }
 
 }
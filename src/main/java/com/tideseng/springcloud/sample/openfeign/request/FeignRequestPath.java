@@ -0,0 +1,48 @@
+package com.tideseng.springcloud.sample.openfeign.request;
+
+import feign.RequestTemplate;
+
+/**
+ * 拦截器中按请求路径匹配规则时使用的路径
+ *      Feign 10.4的拦截器在目标地址拼接之前执行（HardCodedTarget#apply在所有拦截器之后），此时{@link RequestTemplate#path()}只有FeignClient方法上声明的路径，
+ *      不包含服务地址及@FeignClient的path前缀，因此规则按方法上声明的路径声明，如@FeignClient(path = "/api/data-model")中的@PostMapping("/instance/list")使用/instance/list
+ *      规则路径与请求路径统一补全开头的/、去掉结尾的/
+ * @author jiahuan
+ * @create 2022/6/14
+ */
+public final class FeignRequestPath {
+
+    private FeignRequestPath() {
+    }
+
+    /**
+     * 请求的方法路径（不包含@FeignClient的path前缀）
+     * @param template
+     * @return
+     */
+    public static String of(RequestTemplate template) {
+        return normalize(template.path());
+    }
+
+    /**
+     * 补全开头的/、去掉结尾的/，路径已规范时直接返回原字符串
+     * @param path
+     * @return
+     */
+    public static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        boolean leading = path.charAt(0) == '/';
+        if (leading && end == path.length()) {
+            return path;
+        }
+        String trimmed = path.substring(0, end);
+        return leading ? trimmed : "/" + trimmed;
+    }
+
+}
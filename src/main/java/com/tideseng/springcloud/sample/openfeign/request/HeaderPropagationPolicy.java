@@ -0,0 +1,189 @@
+package com.tideseng.springcloud.sample.openfeign.request;
+
+import org.springframework.core.env.Environment;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 请求头透传策略：白名单、黑名单、重命名
+ * 策略在启动时编译为固定的请求头数组；每个原Request只解析一次请求头（结果缓存在Request属性中），该请求内发起的所有Feign调用共用
+ * 未配置白名单时透传除黑名单外的所有请求头（需要遍历原Request的请求头，但同样每个原Request只遍历一次）
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class HeaderPropagationPolicy {
+
+    /**
+     * 逐跳请求头及不应透传的请求头，始终不透传
+     */
+    public static final Set<String> HOP_BY_HOP_HEADERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection", "te", "trailer",
+            "transfer-encoding", "upgrade", "host", "content-length", "expect")));
+
+    /**
+     * 默认策略：透传除逐跳请求头外的所有请求头
+     */
+    public static final HeaderPropagationPolicy DEFAULT = builder().build();
+
+    /** 白名单模式下，原Request中的请求头名称（小写） */
+    private final String[] sourceNames;
+
+    /** 与sourceNames一一对应的透传后的请求头名称 */
+    private final String[] targetNames;
+
+    /** 黑名单（小写，包含逐跳请求头） */
+    private final Set<String> denied;
+
+    /** 非白名单模式下的重命名规则（小写原名称 -> 新名称） */
+    private final Map<String, String> renames;
+
+    private final String attributeName;
+
+    private HeaderPropagationPolicy(Builder builder) {
+        this.denied = new HashSet<>(HOP_BY_HOP_HEADERS);
+        this.denied.addAll(builder.denied);
+        this.renames = new HashMap<>(builder.renames);
+        List<String> sources = new ArrayList<>();
+        for (String allowed : builder.allowed) {
+            if (!denied.contains(allowed)) {
+                sources.add(allowed);
+            }
+        }
+        this.sourceNames = sources.toArray(new String[0]);
+        this.targetNames = new String[sourceNames.length];
+        for (int i = 0; i < sourceNames.length; i++) {
+            targetNames[i] = renames.getOrDefault(sourceNames[i], sourceNames[i]);
+        }
+        this.attributeName = PropagatedHeaders.class.getName() + "@" + System.identityHashCode(this);
+    }
+
+    /**
+     * 解析原Request中需要透传的请求头，同一个原Request只解析一次
+     * @param request
+     * @return
+     */
+    public PropagatedHeaders capture(HttpServletRequest request) {
+        Object cached = request.getAttribute(attributeName);
+        if (cached instanceof PropagatedHeaders) {
+            return (PropagatedHeaders) cached;
+        }
+        PropagatedHeaders headers = isAllowListMode() ? captureAllowed(request) : captureAll(request);
+        request.setAttribute(attributeName, headers);
+        return headers;
+    }
+
+    /**
+     * 从原Request的请求头快照中解析需要透传的请求头（异步线程中使用，见{@link com.tideseng.springcloud.sample.openfeign.async.FeignRequestContext}）
+     * @param headers 请求头名称（忽略大小写）-> 第一个值
+     * @return
+     */
+    public PropagatedHeaders capture(Map<String, String> headers) {
+        return isAllowListMode() ? captureAllowed(headers::get) : captureAll(headers.keySet(), headers::get);
+    }
+
+    public boolean isAllowListMode() {
+        return sourceNames.length > 0;
+    }
+
+    private PropagatedHeaders captureAllowed(HttpServletRequest request) {
+        return captureAllowed(request::getHeader);
+    }
+
+    private PropagatedHeaders captureAllowed(Function<String, String> header) {
+        String[] values = new String[sourceNames.length];
+        for (int i = 0; i < sourceNames.length; i++) {
+            values[i] = header.apply(sourceNames[i]);
+        }
+        return new PropagatedHeaders(sourceNames, targetNames, values);
+    }
+
+    private PropagatedHeaders captureAll(HttpServletRequest request) {
+        Enumeration<String> headerNames = request.getHeaderNames();
+        if (headerNames == null) {
+            return PropagatedHeaders.EMPTY;
+        }
+        return captureAll(Collections.list(headerNames), request::getHeader);
+    }
+
+    private PropagatedHeaders captureAll(Collection<String> headerNames, Function<String, String> header) {
+        List<String> sources = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (String name : headerNames) {
+            String key = name.toLowerCase(Locale.ROOT);
+            if (!denied.contains(key)) {
+                sources.add(name);
+                names.add(renames.getOrDefault(key, name));
+                values.add(header.apply(name));
+            }
+        }
+        return new PropagatedHeaders(sources.toArray(new String[0]), names.toArray(new String[0]), values.toArray(new String[0]));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 从配置中读取策略，如：
+     *      application.feign.header-propagation.allow=Authorization,X-Trace-Id
+     *      application.feign.header-propagation.deny=Cookie
+     *      application.feign.header-propagation.rename=X-User-Id:X-Origin-User-Id
+     * @param environment
+     * @return
+     */
+    public static HeaderPropagationPolicy fromEnvironment(Environment environment) {
+        String prefix = "application.feign.header-propagation.";
+        Builder builder = builder()
+                .allow(StringUtils.commaDelimitedListToStringArray(environment.getProperty(prefix + "allow", "")))
+                .deny(StringUtils.commaDelimitedListToStringArray(environment.getProperty(prefix + "deny", "")));
+        for (String rename : StringUtils.commaDelimitedListToStringArray(environment.getProperty(prefix + "rename", ""))) {
+            String[] pair = StringUtils.split(rename, ":");
+            Assert.notNull(pair, "rename must be in the form of from:to, but was " + rename);
+            builder.rename(pair[0].trim(), pair[1].trim());
+        }
+        return builder.build();
+    }
+
+    public static class Builder {
+
+        private final Set<String> allowed = new LinkedHashSet<>();
+
+        private final Set<String> denied = new HashSet<>();
+
+        private final Map<String, String> renames = new HashMap<>();
+
+        public Builder allow(String... headerNames) {
+            for (String headerName : headerNames) {
+                if (StringUtils.hasText(headerName)) {
+                    allowed.add(headerName.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            return this;
+        }
+
+        public Builder deny(String... headerNames) {
+            for (String headerName : headerNames) {
+                if (StringUtils.hasText(headerName)) {
+                    denied.add(headerName.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            return this;
+        }
+
+        public Builder rename(String headerName, String newName) {
+            renames.put(headerName.toLowerCase(Locale.ROOT), newName);
+            return this;
+        }
+
+        public HeaderPropagationPolicy build() {
+            return new HeaderPropagationPolicy(this);
+        }
+
+    }
+
+}
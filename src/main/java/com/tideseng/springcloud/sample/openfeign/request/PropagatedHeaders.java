@@ -0,0 +1,66 @@
+package com.tideseng.springcloud.sample.openfeign.request;
+
+import feign.RequestTemplate;
+
+/**
+ * 按{@link HeaderPropagationPolicy}从原Request中解析出的需要透传的请求头（不可变），同一原Request内的多次Feign调用共用
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public final class PropagatedHeaders {
+
+    public static final PropagatedHeaders EMPTY = new PropagatedHeaders(new String[0], new String[0], new String[0]);
+
+    /** 原Request中的请求头名称 */
+    private final String[] sourceNames;
+
+    /** 透传后的请求头名称（重命名后） */
+    private final String[] names;
+
+    private final String[] values;
+
+    PropagatedHeaders(String[] sourceNames, String[] names, String[] values) {
+        this.sourceNames = sourceNames;
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * 将请求头设置到Feign的RequestTemplate中，值为空的请求头不设置
+     * @param template
+     */
+    public void applyTo(RequestTemplate template) {
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] != null) {
+                template.header(names[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * 按原Request中的请求头名称获取值（忽略大小写，与{@link javax.servlet.http.HttpServletRequest#getHeader(String)}一致，不受重命名影响）
+     * @param name
+     * @return
+     */
+    public String get(String name) {
+        for (int i = 0; i < sourceNames.length; i++) {
+            if (sourceNames[i].equalsIgnoreCase(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public String getValue(int index) {
+        return values[index];
+    }
+
+}
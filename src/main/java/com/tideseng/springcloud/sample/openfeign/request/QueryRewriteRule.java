@@ -0,0 +1,145 @@
+package com.tideseng.springcloud.sample.openfeign.request;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * param参数的改写规则：将源参数改名为目标参数，并可按分隔符将单个值拆分为多个值（如userIds=1,2,3 改写为 userIdList=1&userIdList=2&userIdList=3）
+ * 拆分时逐字符扫描，不使用正则；同时识别分隔符的百分号编码形式（如逗号的%2C）
+ * @see QueryRewriter
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public final class QueryRewriteRule {
+
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final String source;
+
+    private final String target;
+
+    /** 分隔符，为0时不拆分 */
+    private final char delimiter;
+
+    /** 分隔符的百分号编码形式（大写），如%2C */
+    private final String encodedDelimiter;
+
+    /** 生效的方法路径（Ant风格，已规范化），为空时对所有请求生效 */
+    private final String pathPattern;
+
+    private QueryRewriteRule(String source, String target, char delimiter, String pathPattern) {
+        Assert.hasText(source, "source must not be empty");
+        Assert.hasText(target, "target must not be empty");
+        this.source = source;
+        this.target = target;
+        this.delimiter = delimiter;
+        this.encodedDelimiter = delimiter == 0 ? null : String.format("%%%02X", (int) delimiter);
+        this.pathPattern = pathPattern;
+    }
+
+    /**
+     * 按分隔符拆分并改名，如split("userIds", "userIdList", ',')
+     * @param source
+     * @param target
+     * @param delimiter
+     * @return
+     */
+    public static QueryRewriteRule split(String source, String target, char delimiter) {
+        return new QueryRewriteRule(source, target, delimiter, null);
+    }
+
+    /**
+     * 仅改名
+     * @param source
+     * @param target
+     * @return
+     */
+    public static QueryRewriteRule rename(String source, String target) {
+        return new QueryRewriteRule(source, target, (char) 0, null);
+    }
+
+    /**
+     * 限定规则生效的请求路径
+     * @param pathPattern Ant风格的方法路径，不包含@FeignClient的path前缀（拦截器执行时还未拼接，见{@link FeignRequestPath}）
+     * @return
+     */
+    public QueryRewriteRule onPath(String pathPattern) {
+        return new QueryRewriteRule(source, target, delimiter, FeignRequestPath.normalize(pathPattern));
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @param path 规范化后的方法路径
+     * @return
+     */
+    boolean matches(String path) {
+        return pathPattern == null || PATH_MATCHER.match(pathPattern, path);
+    }
+
+    /**
+     * 改写参数值
+     * @param values 源参数的值
+     * @return 目标参数的值
+     */
+    public List<String> rewrite(Collection<String> values) {
+        List<String> result = new ArrayList<>(values.size() * 4);
+        for (String value : values) {
+            if (delimiter == 0) {
+                result.add(value);
+            } else {
+                split(value, result);
+            }
+        }
+        return result;
+    }
+
+    private void split(String value, List<String> result) {
+        int length = value.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == delimiter) {
+                addToken(value, start, i, result);
+                start = ++i;
+            } else if (c == '%' && i + 2 < length && value.regionMatches(true, i, encodedDelimiter, 0, 3)) {
+                addToken(value, start, i, result);
+                i += 3;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        addToken(value, start, length, result);
+    }
+
+    private static void addToken(String value, int start, int end, List<String> result) {
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start < end) {
+            result.add(value.substring(start, end));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source + " -> " + target + (delimiter == 0 ? "" : " split by '" + delimiter + "'") + (pathPattern == null ? "" : " on " + pathPattern);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.tideseng.springcloud.sample.openfeign.request;
+
+import feign.RequestTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * param参数的改写器，按{@link QueryRewriteRule}改写指定参数，其它参数保持不变
+ * 每个请求方式 + 请求路径对应的生效规则只计算一次并缓存（Feign 10.4的拦截器中无法获取MethodMetadata，以请求方式 + 请求路径代替）
+ *      请求路径为规范化后的方法路径，不包含@FeignClient的path前缀，见{@link FeignRequestPath}
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+public class QueryRewriter {
+
+    /**
+     * 缓存的请求路径上限，路径中包含变量时避免缓存无限增长
+     */
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private static final QueryRewriteRule[] NO_RULES = new QueryRewriteRule[0];
+
+    private final QueryRewriteRule[] rules;
+
+    private final ConcurrentMap<String, QueryRewriteRule[]> compiledRules = new ConcurrentHashMap<>();
+
+    public QueryRewriter(QueryRewriteRule... rules) {
+        this.rules = rules.clone();
+    }
+
+    /**
+     * 获取指定请求生效的规则
+     * @param method
+     * @param path 方法路径，即{@link RequestTemplate#path()}
+     * @return
+     */
+    public QueryRewriteRule[] getRules(String method, String path) {
+        if (rules.length == 0) {
+            return NO_RULES;
+        }
+        path = FeignRequestPath.normalize(path);
+        String key = method + " " + path;
+        QueryRewriteRule[] matched = compiledRules.get(key);
+        if (matched == null) {
+            List<QueryRewriteRule> list = new ArrayList<>(rules.length);
+            for (QueryRewriteRule rule : rules) {
+                if (rule.matches(path)) {
+                    list.add(rule);
+                }
+            }
+            matched = list.isEmpty() ? NO_RULES : list.toArray(NO_RULES);
+            if (compiledRules.size() < MAX_CACHE_SIZE) {
+                compiledRules.putIfAbsent(key, matched);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 改写RequestTemplate中的param参数，只修改规则涉及的参数
+     * @param template
+     */
+    public void rewrite(RequestTemplate template) {
+        QueryRewriteRule[] matched = getRules(template.method(), FeignRequestPath.of(template));
+        if (matched.length == 0) {
+            return;
+        }
+        Map<String, Collection<String>> queries = template.queries();
+        for (QueryRewriteRule rule : matched) {
+            Collection<String> values = queries.get(rule.getSource());
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+            List<String> rewritten = rule.rewrite(values);
+            // 先删除源参数和目标参数，否则会追加
+            template.query(rule.getSource(), Collections.emptyList());
+            template.query(rule.getTarget(), Collections.emptyList());
+            if (!rewritten.isEmpty()) {
+                template.query(rule.getTarget(), rewritten);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+/**
+ * 当前线程中一次请求尝试的上下文，用于对冲请求（hedged request）选择与之前尝试不同的实例
+ *      {@link LatencyRecordingClient}记录本次尝试实际请求的实例
+ *      {@link PeakEwmaRule}选择实例时跳过需要排除的实例
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+public final class AttemptContext {
+
+    private static final ThreadLocal<AttemptContext> CURRENT = new ThreadLocal<>();
+
+    private final String excludedServer;
+
+    private volatile String server;
+
+    /**
+     * @param excludedServer 需要排除的实例（ip:port），可为空
+     */
+    public AttemptContext(String excludedServer) {
+        this.excludedServer = excludedServer;
+    }
+
+    /**
+     * 在当前线程中开始一次尝试（可在发起尝试的线程中创建，在执行尝试的线程中绑定）
+     * @param context
+     */
+    public static void begin(AttemptContext context) {
+        CURRENT.set(context);
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return 不在尝试中时返回null
+     */
+    public static AttemptContext current() {
+        return CURRENT.get();
+    }
+
+    public String getExcludedServer() {
+        return excludedServer;
+    }
+
+    /**
+     * 本次尝试实际请求的实例（ip:port），负载均衡完成前为null
+     * @return
+     */
+    public String getServer() {
+        return server;
+    }
+
+    void setServer(String server) {
+        this.server = server;
+    }
+
+}
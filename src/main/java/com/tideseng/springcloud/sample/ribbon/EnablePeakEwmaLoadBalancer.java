@@ -0,0 +1,24 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.*;
+
+/**
+ * 开启基于Peak-EWMA负载的二选一负载均衡（{@link PeakEwmaRule}），替换默认的区域感知轮询
+ * 可通过application.ribbon.peak-ewma.enabled=false关闭
+ * <pre>
+ *     application.ribbon.peak-ewma.decay-time=10000     响应时间的衰减时间（毫秒）
+ * </pre>
+ * 同时开启基于请求结果的异常实例摘除及慢启动，配置见{@link OutlierDetectionProperties}
+ * 负载由Feign调用记录（{@link LatencyRecordingClient}），RestTemplate的调用不会被记录
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@Import(EnablePeakEwmaLoadBalancerImportSelector.class)
+public @interface EnablePeakEwmaLoadBalancer {
+}
@@ -0,0 +1,19 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import org.springframework.cloud.commons.util.SpringFactoryImportSelector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class EnablePeakEwmaLoadBalancerImportSelector extends SpringFactoryImportSelector<EnablePeakEwmaLoadBalancer> {
+
+    @Override
+    protected boolean isEnabled() {
+        return getEnvironment().getProperty("application.ribbon.peak-ewma.enabled", Boolean.class, Boolean.TRUE);
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录实例负载的Feign Client，包装在LoadBalancerFeignClient内部（负载均衡后请求地址已是实例的ip:port）
+ * 响应时间为收到响应头的时间；请求失败时按读取超时时间记录，但不超过当前响应时间的数倍（见{@link PeakEwmaStats#fail(long, long)}）
+ * 同时记录实例的健康状态：IO异常及5xx响应为失败，连续失败的实例会被摘除（见{@link ServerHealth}）
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public class LatencyRecordingClient implements Client {
+
+    private final Client delegate;
+
+    private final ServerStatsRegistry registry;
+
+    public LatencyRecordingClient(Client delegate, ServerStatsRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        String hostPort = hostPort(URI.create(request.url()));
+        AttemptContext attempt = AttemptContext.current();
+        if (attempt != null) {
+            attempt.setServer(hostPort);
+        }
+        PeakEwmaStats stats = registry.get(hostPort);
+        stats.start();
+        long start = System.nanoTime();
+        Response response = null;
+        try {
+            response = delegate.execute(request, options);
+            return response;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (response == null) {
+                stats.fail(elapsed, TimeUnit.MILLISECONDS.toNanos(options.readTimeoutMillis()));
+                stats.getHealth().onFailure();
+            } else {
+                stats.complete(elapsed);
+                if (response.status() >= 500) {
+                    stats.getHealth().onFailure();
+                } else {
+                    stats.getHealth().onSuccess(elapsed);
+                }
+            }
+        }
+    }
+
+    public Client getDelegate() {
+        return delegate;
+    }
+
+    private static String hostPort(URI uri) {
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.tideseng.springcloud.sample.openfeign.pool.PooledLoadBalancerFeignClient;
+import feign.Client;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+
+/**
+ * 将LoadBalancerFeignClient内部的Client（Client.Default、PooledHttpClient等）包装为{@link LatencyRecordingClient}
+ * LoadBalancerFeignClient的delegate不可修改，因此重新创建一个同类型的LoadBalancerFeignClient；其它LoadBalancerFeignClient的子类不做处理
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public class LatencyRecordingFeignClientPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof LoadBalancerFeignClient)) {
+            return bean;
+        }
+        LoadBalancerFeignClient client = (LoadBalancerFeignClient) bean;
+        if (client.getDelegate() instanceof LatencyRecordingClient) {
+            return bean;
+        }
+        Client delegate = new LatencyRecordingClient(client.getDelegate(), beanFactory.getBean(ServerStatsRegistry.class));
+        if (bean.getClass() == PooledLoadBalancerFeignClient.class) {
+            return new PooledLoadBalancerFeignClient(delegate, beanFactory.getBean(CachingSpringLoadBalancerFactory.class), beanFactory.getBean(SpringClientFactory.class));
+        }
+        if (bean.getClass() == LoadBalancerFeignClient.class) {
+            return new LoadBalancerFeignClient(delegate, beanFactory.getBean(CachingSpringLoadBalancerFactory.class), beanFactory.getBean(SpringClientFactory.class));
+        }
+        return bean;
+    }
+
+}
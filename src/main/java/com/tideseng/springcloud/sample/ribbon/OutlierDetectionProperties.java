@@ -0,0 +1,91 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * 异常实例摘除及慢启动配置
+ * <pre>
+ *     application.ribbon.outlier.consecutive-errors=5           连续失败（IO异常或5xx响应）达到该次数时摘除，小于等于0时不按失败摘除
+ *     application.ribbon.outlier.latency-threshold=0            统计周期内响应时间百分位超过该值（毫秒）时摘除，小于等于0时不按响应时间摘除
+ *     application.ribbon.outlier.latency-percentile=0.99        响应时间百分位
+ *     application.ribbon.outlier.min-requests=20                统计周期内请求数不少于该值时才按响应时间判断
+ *     application.ribbon.outlier.interval=10000                 响应时间的统计周期（毫秒）
+ *     application.ribbon.outlier.base-ejection-time=30000       摘除时间（毫秒），按连续被摘除的次数递增
+ *     application.ribbon.outlier.max-ejection-multiplier=10     摘除时间的最大倍数
+ *     application.ribbon.outlier.max-ejection-percent=50        服务中被摘除的实例超过该比例（百分比）时不再跳过被摘除的实例，避免流量全部压到少数实例上
+ *     application.ribbon.slow-start.window=30000                新加入服务列表或恢复的实例权重从0线性增长到1的时间（毫秒），小于等于0时不慢启动
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/28
+ */
+public class OutlierDetectionProperties {
+
+    private static final String PREFIX = "application.ribbon.";
+
+    private final int consecutiveErrors;
+
+    private final long latencyThreshold;
+
+    private final double latencyPercentile;
+
+    private final int minRequests;
+
+    private final long interval;
+
+    private final long baseEjectionTime;
+
+    private final int maxEjectionMultiplier;
+
+    private final int maxEjectionPercent;
+
+    private final long slowStartWindow;
+
+    public OutlierDetectionProperties(Environment environment) {
+        this.consecutiveErrors = environment.getProperty(PREFIX + "outlier.consecutive-errors", Integer.class, 5);
+        this.latencyThreshold = environment.getProperty(PREFIX + "outlier.latency-threshold", Long.class, 0L);
+        this.latencyPercentile = environment.getProperty(PREFIX + "outlier.latency-percentile", Double.class, 0.99);
+        this.minRequests = environment.getProperty(PREFIX + "outlier.min-requests", Integer.class, 20);
+        this.interval = environment.getProperty(PREFIX + "outlier.interval", Long.class, 10000L);
+        this.baseEjectionTime = environment.getProperty(PREFIX + "outlier.base-ejection-time", Long.class, 30000L);
+        this.maxEjectionMultiplier = environment.getProperty(PREFIX + "outlier.max-ejection-multiplier", Integer.class, 10);
+        this.maxEjectionPercent = environment.getProperty(PREFIX + "outlier.max-ejection-percent", Integer.class, 50);
+        this.slowStartWindow = environment.getProperty(PREFIX + "slow-start.window", Long.class, 30000L);
+    }
+
+    public int getConsecutiveErrors() {
+        return consecutiveErrors;
+    }
+
+    public long getLatencyThreshold() {
+        return latencyThreshold;
+    }
+
+    public double getLatencyPercentile() {
+        return latencyPercentile;
+    }
+
+    public int getMinRequests() {
+        return minRequests;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    public int getMaxEjectionMultiplier() {
+        return maxEjectionMultiplier;
+    }
+
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public long getSlowStartWindow() {
+        return slowStartWindow;
+    }
+
+}
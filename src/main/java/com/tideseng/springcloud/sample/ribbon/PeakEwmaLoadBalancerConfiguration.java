@@ -0,0 +1,35 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import org.springframework.cloud.netflix.ribbon.RibbonClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 由{@link EnablePeakEwmaLoadBalancer}通过spring.factories导入
+ *      注册所有服务共用的{@link ServerStatsRegistry}
+ *      将{@link PeakEwmaRibbonConfiguration}设置为所有Ribbon客户端的默认配置
+ *      包装Feign的负载均衡Client，记录每个实例的负载及健康状态（异常摘除、慢启动配置见{@link OutlierDetectionProperties}）
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+@Configuration
+@RibbonClients(defaultConfiguration = PeakEwmaRibbonConfiguration.class)
+public class PeakEwmaLoadBalancerConfiguration {
+
+    @Bean
+    public ServerStatsRegistry serverStatsRegistry(Environment environment) {
+        return new ServerStatsRegistry(environment.getProperty("application.ribbon.peak-ewma.decay-time", Long.class, 10000L),
+                new OutlierDetectionProperties(environment));
+    }
+
+    /**
+     * BeanPostProcessor需尽早注册，使用静态方法避免提前初始化配置类
+     * @return
+     */
+    @Bean
+    public static LatencyRecordingFeignClientPostProcessor latencyRecordingFeignClientPostProcessor() {
+        return new LatencyRecordingFeignClientPostProcessor();
+    }
+
+}
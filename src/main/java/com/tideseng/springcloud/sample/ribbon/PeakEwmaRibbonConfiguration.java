@@ -0,0 +1,32 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.IRule;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Ribbon客户端配置类，覆盖{@link org.springframework.cloud.netflix.ribbon.RibbonClientConfiguration#ribbonRule}（@ConditionalOnMissingBean）
+ * 由{@link EnablePeakEwmaLoadBalancer}设置为所有Ribbon客户端的默认配置，也可单独指定：
+ * <pre>
+ *     &#64;RibbonClient(name = "data-model", configuration = PeakEwmaRibbonConfiguration.class)
+ * </pre>
+ * 注意：该类不能被主容器扫描到，否则会对所有Ribbon客户端生效
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public class PeakEwmaRibbonConfiguration {
+
+    /**
+     * ServerStatsRegistry在主容器中（Ribbon客户端子容器可以获取主容器的Bean）
+     * 同时放入客户端配置，ZoneAwareLoadBalancer通过无参构造函数复制的规则从中获取
+     * @param clientConfig
+     * @param registry
+     * @return
+     */
+    @Bean
+    public IRule ribbonRule(IClientConfig clientConfig, ServerStatsRegistry registry) {
+        clientConfig.set(PeakEwmaRule.STATS_REGISTRY, registry);
+        return new PeakEwmaRule(registry);
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.config.IClientConfigKey;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于Peak-EWMA负载的二选一（power of two choices）负载均衡规则
+ *      从可用实例中随机选两个，选择负载（衰减后的响应时间 * (进行中的请求数 + 1)）较小的一个
+ *      负载由{@link LatencyRecordingClient}无锁记录，选择时只读取，不需要像{@link com.netflix.loadbalancer.WeightedResponseTimeRule}一样定时加锁重算权重
+ *      随机二选一避免了所有调用方同时涌向同一个"最快"实例，慢实例（如GC停顿）的响应时间会立即升高，流量随之转移
+ *      随机选取时跳过被摘除的实例（最多重选{@link #MAX_ATTEMPTS}次）；被摘除的实例超过max-ejection-percent时不再跳过，避免流量全部压到少数实例上
+ *      慢启动中的实例按权重概率参与比较，未被接受时选择另一个实例
+ *      对冲请求（{@link AttemptContext}）按同样的方式跳过之前尝试过的实例
+ *      服务列表变化时通知{@link ServerStatsRegistry}（新实例慢启动、下线实例移除统计）
+ * 与{@link com.netflix.loadbalancer.ZoneAvoidanceRule}不同，不做区域过滤
+ * ZoneAwareLoadBalancer为每个区域通过无参构造函数复制规则，复制的规则在{@link #initWithNiwsConfig(IClientConfig)}中从客户端配置的{@link #STATS_REGISTRY}获取注册表
+ * @see PeakEwmaRibbonConfiguration
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public class PeakEwmaRule extends AbstractLoadBalancerRule {
+
+    /** 随机选取时遇到被摘除实例的最大重选次数 */
+    protected static final int MAX_ATTEMPTS = 3;
+
+    /** 客户端配置中的负载统计注册表，由{@link PeakEwmaRibbonConfiguration}设置 */
+    public static final IClientConfigKey<ServerStatsRegistry> STATS_REGISTRY = new CommonClientConfigKey<ServerStatsRegistry>("PeakEwmaStatsRegistry") {
+    };
+
+    private ServerStatsRegistry registry;
+
+    /** 已注册ServerListChangeListener的负载均衡器 */
+    private ILoadBalancer listening;
+
+    /**
+     * 供Ribbon通过反射创建（如ZoneAwareLoadBalancer为每个区域复制规则），注册表在{@link #initWithNiwsConfig(IClientConfig)}中获取
+     */
+    public PeakEwmaRule() {
+    }
+
+    public PeakEwmaRule(ServerStatsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        if (registry == null) {
+            registry = clientConfig.get(STATS_REGISTRY);
+            if (registry == null) {
+                throw new IllegalStateException("no ServerStatsRegistry in client config of " + clientConfig.getClientName());
+            }
+        }
+    }
+
+    /**
+     * BaseLoadBalancer设置规则时调用（早于第一次获取服务列表），注册服务列表变化的监听
+     * @param loadBalancer
+     */
+    @Override
+    public void setLoadBalancer(ILoadBalancer loadBalancer) {
+        super.setLoadBalancer(loadBalancer);
+        if (loadBalancer instanceof BaseLoadBalancer && loadBalancer != listening) {
+            listening = loadBalancer;
+            BaseLoadBalancer baseLoadBalancer = (BaseLoadBalancer) loadBalancer;
+            baseLoadBalancer.addServerListChangeListener((oldList, newList) -> registry.update(baseLoadBalancer.getName(), newList));
+        }
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer loadBalancer = getLoadBalancer();
+        if (loadBalancer == null) {
+            return null;
+        }
+        return choose(loadBalancer.getReachableServers());
+    }
+
+    /**
+     * 从候选实例中二选一
+     * @param servers
+     * @return 候选实例为空时返回null
+     */
+    protected Server choose(List<Server> servers) {
+        int size = servers.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return servers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+        AttemptContext attempt = AttemptContext.current();
+        String excluded = attempt != null ? attempt.getExcludedServer() : null;
+        int first = pick(servers, random, -1, excluded, now);
+        int second = pick(servers, random, first, excluded, now);
+        Server a = servers.get(first);
+        Server b = servers.get(second);
+        PeakEwmaStats statsA = registry.get(a);
+        PeakEwmaStats statsB = registry.get(b);
+        boolean ejectedA = statsA.getHealth().isEjected(now);
+        if (ejectedA != statsB.getHealth().isEjected(now)) {
+            return ejectedA ? b : a;
+        }
+        boolean admitA = admit(statsA.getHealth().weight(now), random);
+        boolean admitB = admit(statsB.getHealth().weight(now), random);
+        if (admitA != admitB) {
+            return admitA ? a : b;
+        }
+        return PeakEwmaStats.compare(statsA, statsB, now) <= 0 ? a : b;
+    }
+
+    /**
+     * 随机选取一个实例的下标，跳过被摘除的实例及需要排除的实例
+     * @param exclude 需要排除的下标，小于0时不排除
+     * @param excludedServer 需要排除的实例（ip:port），可为空
+     */
+    private int pick(List<Server> servers, ThreadLocalRandom random, int exclude, String excludedServer, long now) {
+        int bound = exclude >= 0 ? servers.size() - 1 : servers.size();
+        int index = 0;
+        // 只在遇到被摘除的实例时统计一次
+        Boolean skipEjected = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            index = random.nextInt(bound);
+            if (exclude >= 0 && index >= exclude) {
+                index++;
+            }
+            Server server = servers.get(index);
+            if (server.getHostPort().equals(excludedServer)) {
+                continue;
+            }
+            if (!registry.get(server).getHealth().isEjected(now)) {
+                return index;
+            }
+            if (skipEjected == null) {
+                skipEjected = !isEjectionLimitExceeded(servers, now);
+            }
+            if (!skipEjected) {
+                return index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 被摘除的实例是否超过max-ejection-percent
+     */
+    private boolean isEjectionLimitExceeded(List<Server> servers, long now) {
+        int maxPercent = registry.getProperties().getMaxEjectionPercent();
+        if (maxPercent >= 100) {
+            return false;
+        }
+        int ejected = 0;
+        for (Server server : servers) {
+            if (registry.get(server).getHealth().isEjected(now)) {
+                ejected++;
+            }
+        }
+        return ejected * 100L > (long) servers.size() * maxPercent;
+    }
+
+    /**
+     * 慢启动中的实例按权重概率接受
+     */
+    private static boolean admit(double weight, ThreadLocalRandom random) {
+        return weight >= 1 || random.nextDouble() < weight;
+    }
+
+    protected ServerStatsRegistry getRegistry() {
+        return registry;
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个服务实例的负载统计（无锁）：进行中的请求数及Peak-EWMA响应时间
+ * Peak-EWMA：响应时间超过当前值时直接取该响应时间（对变慢立即敏感），否则按距离上次更新的时间指数衰减后加权平均（变快时逐渐恢复）
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public final class PeakEwmaStats {
+
+    /** 请求失败时记录的响应时间最多为当前响应时间的倍数 */
+    private static final int FAILURE_PENALTY_MULTIPLIER = 4;
+
+    private final double decayNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicReference<Ewma> ewma;
+
+    private final ServerHealth health;
+
+    PeakEwmaStats(long decayNanos, OutlierDetectionProperties properties) {
+        this.decayNanos = decayNanos;
+        this.ewma = new AtomicReference<>(new Ewma(0, System.nanoTime()));
+        this.health = new ServerHealth(properties);
+    }
+
+    /**
+     * 请求开始
+     */
+    public void start() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 请求结束
+     * @param rttNanos 响应时间（纳秒）
+     */
+    public void complete(long rttNanos) {
+        inFlight.decrementAndGet();
+        observe(rttNanos);
+    }
+
+    /**
+     * 请求失败（IO异常）
+     *      记录的响应时间为读取超时时间与实际耗时的较大值，但不超过当前响应时间的{@link #FAILURE_PENALTY_MULTIPLIER}倍：
+     *      失败的实例负载升高、流量转移，又不会因为读取超时时间远大于正常响应时间而在很长的衰减时间内都不被选中（连续失败由{@link ServerHealth}摘除）
+     *      还没有响应时间时按实际耗时记录
+     * @param elapsedNanos 实际耗时（纳秒）
+     * @param timeoutNanos 读取超时时间（纳秒）
+     */
+    public void fail(long elapsedNanos, long timeoutNanos) {
+        inFlight.decrementAndGet();
+        double cost = cost(System.nanoTime());
+        observe(cost > 0 ? (long) Math.min(Math.max(elapsedNanos, timeoutNanos), cost * FAILURE_PENALTY_MULTIPLIER) : elapsedNanos);
+    }
+
+    /**
+     * 负载：衰减后的响应时间 * (进行中的请求数 + 1)，越小越优先
+     * 还没有响应时间的实例为0，与其它实例的比较见{@link #compare(PeakEwmaStats, PeakEwmaStats, long)}
+     * @param now System.nanoTime()
+     * @return
+     */
+    public double score(long now) {
+        return cost(now) * (inFlight.get() + 1);
+    }
+
+    /**
+     * 是否正在探测：还没有响应时间（或已衰减为0），但已有进行中的请求
+     * @param now System.nanoTime()
+     * @return
+     */
+    public boolean isProbing(long now) {
+        return inFlight.get() > 0 && cost(now) == 0;
+    }
+
+    /**
+     * 比较两个实例的负载，小于等于0时a优先
+     *      正在探测的实例排在其它实例之后（新实例在第一个请求返回前不会被继续选中），都在探测时进行中的请求数少的优先
+     *      其余按{@link #score(long)}比较（没有请求的新实例为0，优先被探测）
+     * @param a
+     * @param b
+     * @param now System.nanoTime()
+     * @return
+     */
+    public static int compare(PeakEwmaStats a, PeakEwmaStats b, long now) {
+        boolean probingA = a.isProbing(now);
+        boolean probingB = b.isProbing(now);
+        if (probingA != probingB) {
+            return probingA ? 1 : -1;
+        }
+        if (probingA) {
+            return Integer.compare(a.getInFlight(), b.getInFlight());
+        }
+        return Double.compare(a.score(now), b.score(now));
+    }
+
+    /**
+     * 衰减到当前时间的响应时间（纳秒）
+     * @param now System.nanoTime()
+     * @return
+     */
+    public double cost(long now) {
+        Ewma current = ewma.get();
+        return current.cost * weight(current, now);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 实例的健康状态（异常摘除、慢启动）
+     * @return
+     */
+    public ServerHealth getHealth() {
+        return health;
+    }
+
+    private void observe(long rttNanos) {
+        while (true) {
+            Ewma current = ewma.get();
+            long now = System.nanoTime();
+            double cost = rttNanos > current.cost ? rttNanos : current.cost * weight(current, now) + rttNanos * (1 - weight(current, now));
+            if (ewma.compareAndSet(current, new Ewma(cost, now))) {
+                return;
+            }
+        }
+    }
+
+    private double weight(Ewma current, long now) {
+        return Math.exp(-Math.max(0, now - current.stamp) / decayNanos);
+    }
+
+    private static final class Ewma {
+
+        private final double cost;
+
+        private final long stamp;
+
+        Ewma(double cost, long stamp) {
+            this.cost = cost;
+            this.stamp = stamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个服务实例的健康状态（无锁）：连续失败次数、摘除截止时间、统计周期内的响应时间分布
+ *      连续失败达到阈值时立即摘除；响应时间百分位由{@link ServerStatsRegistry}按统计周期检查
+ *      摘除时间按连续被摘除的次数递增，每个未被摘除的统计周期递减一次
+ *      摘除结束（或实例新加入服务列表，见{@link ServerStatsRegistry#update(String, java.util.List)}）后进入慢启动，权重在慢启动时间内从0线性增长到1
+ * @author jiahuan
+ * @create 2022/6/28
+ */
+public final class ServerHealth {
+
+    /** 响应时间按微秒的2的幂分桶，百分位为所在桶的上限（误差在2倍以内） */
+    private static final int BUCKETS = 40;
+
+    private final OutlierDetectionProperties properties;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /** 摘除截止时间（System.nanoTime），也是慢启动的开始时间，初始时不在慢启动中 */
+    private final AtomicLong ejectedUntil;
+
+    /** 连续被摘除的次数，决定摘除时间的倍数 */
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+    ServerHealth(OutlierDetectionProperties properties) {
+        this.properties = properties;
+        this.ejectedUntil = new AtomicLong(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Math.max(0, properties.getSlowStartWindow())));
+    }
+
+    /**
+     * 实例新加入服务列表，开始慢启动（被摘除时不变，摘除结束后会进入慢启动）
+     * @param now System.nanoTime()
+     */
+    void slowStart(long now) {
+        long current = ejectedUntil.get();
+        if (now - current >= 0) {
+            ejectedUntil.compareAndSet(current, now);
+        }
+    }
+
+    /**
+     * 请求成功
+     * @param rttNanos 响应时间（纳秒）
+     */
+    public void onSuccess(long rttNanos) {
+        // 大部分请求都成功，避免无意义的写
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (properties.getLatencyThreshold() > 0) {
+            latencies.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(rttNanos)));
+        }
+    }
+
+    /**
+     * 请求失败（IO异常或5xx响应）
+     */
+    public void onFailure() {
+        int threshold = properties.getConsecutiveErrors();
+        if (threshold > 0 && consecutiveFailures.incrementAndGet() >= threshold) {
+            consecutiveFailures.set(0);
+            eject(System.nanoTime());
+        }
+    }
+
+    public boolean isEjected(long now) {
+        return now - ejectedUntil.get() < 0;
+    }
+
+    /**
+     * 慢启动权重
+     * @param now System.nanoTime()
+     * @return 0~1，被摘除时为0
+     */
+    public double weight(long now) {
+        long window = TimeUnit.MILLISECONDS.toNanos(properties.getSlowStartWindow());
+        long elapsed = now - ejectedUntil.get();
+        if (window <= 0 || elapsed >= window) {
+            return 1;
+        }
+        return elapsed <= 0 ? 0 : (double) elapsed / window;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * 统计周期结束时检查响应时间百分位，并清空本周期的统计
+     * @param now System.nanoTime()
+     */
+    void evaluate(long now) {
+        long count = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = latencies.getAndSet(i, 0);
+            count += snapshot[i];
+        }
+        if (isEjected(now)) {
+            return;
+        }
+        if (properties.getLatencyThreshold() > 0 && count > 0 && count >= properties.getMinRequests()
+                && percentile(snapshot, count, properties.getLatencyPercentile()) > TimeUnit.MILLISECONDS.toMicros(properties.getLatencyThreshold())) {
+            eject(now);
+            return;
+        }
+        int current = ejections.get();
+        if (current > 0) {
+            ejections.compareAndSet(current, current - 1);
+        }
+    }
+
+    private void eject(long now) {
+        long current = ejectedUntil.get();
+        if (now - current < 0) {
+            return;
+        }
+        int multiplier = Math.min(ejections.incrementAndGet(), Math.max(1, properties.getMaxEjectionMultiplier()));
+        // 并发摘除时只有一个生效
+        ejectedUntil.compareAndSet(current, now + TimeUnit.MILLISECONDS.toNanos(properties.getBaseEjectionTime()) * multiplier);
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return 百分位所在桶的上限（微秒）
+     */
+    private static long percentile(long[] buckets, long count, double percentile) {
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (buckets.length - 1);
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.loadbalancer.Server;
+
+import java.util.*;
+
+/**
+ * 服务列表的不可变快照，在服务列表或实例状态变化时由{@link SnapshotLoadBalancer}预先按区域、状态分好组
+ * 所有列表都是基于数组的只读视图，获取时不再过滤、不再分配内存
+ * @author jiahuan
+ * @create 2022/6/27
+ */
+public final class ServerSnapshot {
+
+    static final ServerSnapshot EMPTY = new ServerSnapshot(Collections.emptyList());
+
+    private static final List<Server> NONE = Collections.emptyList();
+
+    private final List<Server> allServers;
+
+    private final List<Server> reachableServers;
+
+    private final Map<String, List<Server>> allServersByZone;
+
+    private final Map<String, List<Server>> reachableServersByZone;
+
+    ServerSnapshot(List<Server> servers) {
+        Server[] all = servers.toArray(new Server[0]);
+        List<Server> reachable = new ArrayList<>(all.length);
+        Map<String, List<Server>> allByZone = new HashMap<>();
+        Map<String, List<Server>> reachableByZone = new HashMap<>();
+        for (Server server : all) {
+            String zone = zone(server);
+            allByZone.computeIfAbsent(zone, key -> new ArrayList<>()).add(server);
+            if (server.isAlive()) {
+                reachable.add(server);
+                reachableByZone.computeIfAbsent(zone, key -> new ArrayList<>()).add(server);
+            }
+        }
+        this.allServers = view(all);
+        this.reachableServers = view(reachable.toArray(new Server[0]));
+        this.allServersByZone = views(allByZone);
+        this.reachableServersByZone = views(reachableByZone);
+    }
+
+    public List<Server> getAllServers() {
+        return allServers;
+    }
+
+    /**
+     * 可用（isAlive）的实例
+     * @return
+     */
+    public List<Server> getReachableServers() {
+        return reachableServers;
+    }
+
+    public List<Server> getAllServers(String zone) {
+        return allServersByZone.getOrDefault(zone(zone), NONE);
+    }
+
+    public List<Server> getReachableServers(String zone) {
+        return reachableServersByZone.getOrDefault(zone(zone), NONE);
+    }
+
+    public Set<String> getZones() {
+        return allServersByZone.keySet();
+    }
+
+    private static String zone(Server server) {
+        return zone(server.getZone());
+    }
+
+    /**
+     * 区域统一转换为小写（与Ribbon的ZoneAwareLoadBalancer一致），没有区域时为Server.UNKNOWN_ZONE
+     */
+    private static String zone(String zone) {
+        return zone != null ? zone.toLowerCase() : Server.UNKNOWN_ZONE;
+    }
+
+    private static List<Server> view(Server[] servers) {
+        return servers.length == 0 ? NONE : Collections.unmodifiableList(Arrays.asList(servers));
+    }
+
+    private static Map<String, List<Server>> views(Map<String, List<Server>> servers) {
+        Map<String, List<Server>> views = new HashMap<>(servers.size() * 2);
+        for (Map.Entry<String, List<Server>> entry : servers.entrySet()) {
+            views.put(entry.getKey(), view(entry.getValue().toArray(new Server[0])));
+        }
+        return Collections.unmodifiableMap(views);
+    }
+
+}
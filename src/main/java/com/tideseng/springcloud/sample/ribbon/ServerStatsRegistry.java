@@ -0,0 +1,139 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.loadbalancer.Server;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * 服务实例负载统计的注册表，按实例的ip:port区分，由{@link LatencyRecordingClient}记录、{@link PeakEwmaRule}读取
+ * 所有服务共用一个注册表（同一个实例被多个服务ID引用时共享统计）
+ * 服务列表变化时（{@link PeakEwmaRule}注册的ServerListChangeListener）更新各服务的实例：新加入的实例进入慢启动，不再被任何服务引用的实例移除统计
+ * 开启异常摘除时，由一个后台线程按统计周期检查所有实例的响应时间百分位（见{@link ServerHealth}）
+ * @author jiahuan
+ * @create 2022/6/26
+ */
+public class ServerStatsRegistry implements Closeable {
+
+    private final long decayNanos;
+
+    private final OutlierDetectionProperties properties;
+
+    private final ConcurrentMap<String, PeakEwmaStats> stats = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService detector;
+
+    /** 服务（负载均衡器名称） -> 服务列表中的实例（ip:port），只在服务列表变化时访问 */
+    private final Map<String, Set<String>> members = new HashMap<>();
+
+    /**
+     * @param decayTime 响应时间的衰减时间（毫秒），越小对变快越敏感
+     * @param properties 异常摘除及慢启动配置
+     */
+    public ServerStatsRegistry(long decayTime, OutlierDetectionProperties properties) {
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, decayTime));
+        this.properties = properties;
+        if (properties.getConsecutiveErrors() > 0 || properties.getLatencyThreshold() > 0) {
+            this.detector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ribbon-outlier-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, properties.getInterval());
+            this.detector.scheduleWithFixedDelay(this::detect, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.detector = null;
+        }
+    }
+
+    public PeakEwmaStats get(Server server) {
+        return get(server.getHostPort());
+    }
+
+    /**
+     * 获取实例的统计，不存在时创建
+     * @param hostPort ip:port
+     * @return
+     */
+    public PeakEwmaStats get(String hostPort) {
+        PeakEwmaStats serverStats = stats.get(hostPort);
+        return serverStats != null ? serverStats : stats.computeIfAbsent(hostPort, key -> new PeakEwmaStats(decayNanos, properties));
+    }
+
+    /**
+     * 实例下线后移除统计
+     * @param hostPort
+     */
+    public void remove(String hostPort) {
+        stats.remove(hostPort);
+    }
+
+    /**
+     * 服务列表变化
+     *      新加入的实例（其它服务中没有）进入慢启动；服务的第一个非空服务列表（启动时）不慢启动
+     *      从服务列表中移除且不再被其它服务引用的实例移除统计
+     * @param name 负载均衡器名称（服务ID）
+     * @param servers 变化后的服务列表
+     */
+    public synchronized void update(String name, List<? extends Server> servers) {
+        Set<String> current = new HashSet<>();
+        for (Server server : servers) {
+            current.add(server.getHostPort());
+        }
+        Set<String> previous = members.put(name, current);
+        if (previous == null || previous.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (String hostPort : current) {
+            if (!previous.contains(hostPort) && !isReferenced(hostPort, name)) {
+                get(hostPort).getHealth().slowStart(now);
+            }
+        }
+        for (String hostPort : previous) {
+            if (!current.contains(hostPort) && !isReferenced(hostPort, name)) {
+                remove(hostPort);
+            }
+        }
+    }
+
+    public OutlierDetectionProperties getProperties() {
+        return properties;
+    }
+
+    @Override
+    public void close() {
+        if (detector != null) {
+            detector.shutdownNow();
+        }
+    }
+
+    /**
+     * 实例是否在其它服务的服务列表中
+     */
+    private boolean isReferenced(String hostPort, String excludedName) {
+        for (Map.Entry<String, Set<String>> entry : members.entrySet()) {
+            if (!entry.getKey().equals(excludedName) && entry.getValue().contains(hostPort)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void detect() {
+        long now = System.nanoTime();
+        for (PeakEwmaStats serverStats : stats.values()) {
+            try {
+                serverStats.getHealth().evaluate(now);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
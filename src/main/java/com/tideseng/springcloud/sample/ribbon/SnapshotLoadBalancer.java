@@ -0,0 +1,79 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.*;
+
+import java.util.List;
+
+/**
+ * 基于服务列表快照的负载均衡器
+ *      服务列表更新（setServersList）、探活状态变化、markServerDown时重新生成{@link ServerSnapshot}，通过一次volatile写发布
+ *      getAllServers()/getReachableServers()直接返回快照中的只读列表，不再像BaseLoadBalancer一样每次包装，IRule选择时不需要过滤、不分配内存
+ *      与ZoneAwareLoadBalancer不同，不为每个区域创建子负载均衡器，区域的划分见{@link ServerSnapshot#getReachableServers(String)}
+ * 配合不做过滤的IRule使用（如{@link PeakEwmaRule}、{@link SnapshotRoundRobinRule}），ZoneAvoidanceRule等基于断言的规则仍会在每次选择时过滤
+ * @see SnapshotLoadBalancerRibbonConfiguration
+ * @author jiahuan
+ * @create 2022/6/27
+ */
+public class SnapshotLoadBalancer<T extends Server> extends DynamicServerListLoadBalancer<T> {
+
+    /** 父类构造函数中会首次更新服务列表，此时子类的字段还未初始化，因此不设置初始值，由refresh()设置 */
+    private volatile ServerSnapshot snapshot;
+
+    public SnapshotLoadBalancer(IClientConfig clientConfig, IRule rule, IPing ping, ServerList<T> serverList, ServerListFilter<T> filter, ServerListUpdater serverListUpdater) {
+        super(clientConfig, rule, ping, serverList, filter, serverListUpdater);
+        addServerStatusChangeListener(servers -> refresh());
+        refresh();
+    }
+
+    /**
+     * 参数类型由BaseLoadBalancer声明为原始类型List，改为List&lt;T&gt;后擦除相同但不构成重写
+     * @param lsrv
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void setServersList(List lsrv) {
+        super.setServersList(lsrv);
+        refresh();
+    }
+
+    @Override
+    public void markServerDown(Server server) {
+        super.markServerDown(server);
+        refresh();
+    }
+
+    @Override
+    public void markServerDown(String id) {
+        super.markServerDown(id);
+        refresh();
+    }
+
+    @Override
+    public List<Server> getAllServers() {
+        return getSnapshot().getAllServers();
+    }
+
+    @Override
+    public List<Server> getReachableServers() {
+        return getSnapshot().getReachableServers();
+    }
+
+    /**
+     * 当前的服务列表快照
+     * @return
+     */
+    public ServerSnapshot getSnapshot() {
+        ServerSnapshot current = snapshot;
+        return current != null ? current : ServerSnapshot.EMPTY;
+    }
+
+    /**
+     * 基于父类的allServerList重新生成快照
+     * 加锁保证并发刷新（服务列表更新与探活同时发生）时，最后发布的快照基于最新的allServerList；选择实例时不加锁
+     */
+    protected synchronized void refresh() {
+        snapshot = new ServerSnapshot(allServerList);
+    }
+
+}
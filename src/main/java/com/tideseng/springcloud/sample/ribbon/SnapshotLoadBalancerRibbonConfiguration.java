@@ -0,0 +1,28 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.*;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Ribbon客户端配置类，覆盖{@link org.springframework.cloud.netflix.ribbon.RibbonClientConfiguration#ribbonLoadBalancer}（@ConditionalOnMissingBean）
+ * IRule仍使用其它配置类或RibbonClientConfiguration中的配置，建议同时使用不做过滤的规则：
+ * <pre>
+ *     &#64;RibbonClients(defaultConfiguration = {SnapshotLoadBalancerRibbonConfiguration.class, PeakEwmaRibbonConfiguration.class})
+ * </pre>
+ * 注意：该类不能被主容器扫描到，否则会对所有Ribbon客户端生效
+ * @author jiahuan
+ * @create 2022/6/27
+ */
+public class SnapshotLoadBalancerRibbonConfiguration {
+
+    /**
+     * 与RibbonClientConfiguration中的ZoneAwareLoadBalancer使用相同的组件
+     */
+    @Bean
+    public ILoadBalancer ribbonLoadBalancer(IClientConfig config, ServerList<Server> serverList, ServerListFilter<Server> serverListFilter,
+                                            IRule rule, IPing ping, ServerListUpdater serverListUpdater) {
+        return new SnapshotLoadBalancer<>(config, rule, ping, serverList, serverListFilter, serverListUpdater);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.tideseng.springcloud.sample.ribbon;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在可用实例中轮询的负载均衡规则，不做过滤，配合{@link SnapshotLoadBalancer}使用时选择过程不分配内存
+ * @author jiahuan
+ * @create 2022/6/27
+ */
+public class SnapshotRoundRobinRule extends AbstractLoadBalancerRule {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer loadBalancer = getLoadBalancer();
+        if (loadBalancer == null) {
+            return null;
+        }
+        List<Server> servers = loadBalancer.getReachableServers();
+        int size = servers.size();
+        if (size == 0) {
+            return null;
+        }
+        return servers.get(Math.floorMod(next.getAndIncrement(), size));
+    }
+
+}
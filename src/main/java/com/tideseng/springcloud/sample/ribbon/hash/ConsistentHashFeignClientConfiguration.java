@@ -0,0 +1,39 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import com.tideseng.springcloud.sample.openfeign.decorator.DecoratedFeignClientConfiguration;
+import com.tideseng.springcloud.sample.openfeign.decorator.FeignClientDecorator;
+import feign.Client;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+
+/**
+ * 从请求头获取一致性哈希键的配置类，在@FeignClient的configuration中指定，同时为该服务指定{@link ConsistentHashRibbonConfiguration}：
+ * <pre>
+ *     &#64;FeignClient(name = "data-model", configuration = ConsistentHashFeignClientConfiguration.class)
+ * </pre>
+ * 请求头名称：application.ribbon.consistent-hash.header=X-Hash-Key
+ * 通过{@link DecoratedFeignClientConfiguration}包装主容器中的Client，在最内层执行（对冲请求在各自的线程中设置键）
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+@Import(DecoratedFeignClientConfiguration.class)
+public class ConsistentHashFeignClientConfiguration {
+
+    @Bean
+    public FeignClientDecorator hashKeyClientDecorator(Environment environment) {
+        String header = environment.getProperty("application.ribbon.consistent-hash.header", "X-Hash-Key");
+        return new FeignClientDecorator() {
+            @Override
+            public Client decorate(Client client) {
+                return new HashKeyClient(client, header);
+            }
+
+            @Override
+            public int getOrder() {
+                return HASH_KEY_ORDER;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.IRule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Ribbon客户端配置类，覆盖{@link org.springframework.cloud.netflix.ribbon.RibbonClientConfiguration#ribbonRule}（@ConditionalOnMissingBean）
+ * 用于缓存较多的下游服务，单独指定：
+ * <pre>
+ *     &#64;RibbonClient(name = "data-model", configuration = ConsistentHashRibbonConfiguration.class)
+ * </pre>
+ * 查找表的槽位数（必须为质数，应远大于实例数，否则启动失败）：application.ribbon.consistent-hash.table-size=65537
+ * 注意：该类不能被主容器扫描到，否则会对所有Ribbon客户端生效
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+public class ConsistentHashRibbonConfiguration {
+
+    /**
+     * 槽位数同时放入客户端配置，ZoneAwareLoadBalancer通过无参构造函数复制的规则从中获取
+     * @param clientConfig
+     * @param environment
+     * @return
+     */
+    @Bean
+    public IRule ribbonRule(IClientConfig clientConfig, Environment environment) {
+        int tableSize = environment.getProperty("application.ribbon.consistent-hash.table-size", Integer.class, ConsistentHashRule.DEFAULT_TABLE_SIZE);
+        // 先校验槽位数，不合法时不写入客户端配置
+        ConsistentHashRule rule = new ConsistentHashRule(tableSize);
+        clientConfig.set(ConsistentHashRule.TABLE_SIZE, tableSize);
+        return rule;
+    }
+
+}
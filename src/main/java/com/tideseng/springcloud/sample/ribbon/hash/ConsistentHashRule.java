@@ -0,0 +1,123 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.config.IClientConfigKey;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.tideseng.springcloud.sample.ribbon.AttemptContext;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于Maglev一致性哈希的负载均衡规则，相同键的请求总是路由到同一个实例，保持下游服务本地缓存的命中率
+ *      键：chooseServer传入的hint（不为null且不为"default"时），否则为{@link HashKeyContext}中的键，都没有时随机选择可用实例
+ *      查找表基于所有实例（getAllServers）生成，只在实例列表变化时重建；实例不可用时使用后续槽位的实例，恢复后仍回到原来的实例
+ *      BaseLoadBalancer（及其子类）通过服务列表变化的监听重建查找表，选择时直接使用，不再获取、比较实例列表；其它负载均衡器在选择时比较实例列表
+ *      对冲请求（{@link AttemptContext}）跳过之前尝试过的实例
+ * ZoneAwareLoadBalancer为每个区域通过无参构造函数复制规则，复制的规则在{@link #initWithNiwsConfig(IClientConfig)}中从客户端配置的{@link #TABLE_SIZE}获取槽位数
+ * 槽位数不是质数时创建规则即失败；实例数不小于槽位数时不重建查找表（服务列表监听中抛出的异常由BaseLoadBalancer记录日志，其它负载均衡器在选择时抛出）
+ * @see MaglevTable
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+public class ConsistentHashRule extends AbstractLoadBalancerRule {
+
+    /** RibbonLoadBalancerClient、BaseLoadBalancer在未传入hint时使用的键 */
+    private static final String DEFAULT_KEY = "default";
+
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+
+    /** 客户端配置中的槽位数（也可通过&lt;client&gt;.ribbon.ConsistentHashTableSize配置），由{@link ConsistentHashRibbonConfiguration}设置 */
+    public static final IClientConfigKey<Integer> TABLE_SIZE = new CommonClientConfigKey<Integer>("ConsistentHashTableSize") {
+    };
+
+    private int tableSize;
+
+    private final Map<String, long[]> permutations = new ConcurrentHashMap<>();
+
+    private volatile MaglevTable table = MaglevTable.EMPTY;
+
+    /** 生成查找表时的实例列表，列表实例不变时不再逐个比较 */
+    private volatile List<Server> tableServers;
+
+    /** 已注册服务列表变化监听的负载均衡器 */
+    private volatile ILoadBalancer listening;
+
+    /**
+     * 供Ribbon通过反射创建（如ZoneAwareLoadBalancer为每个区域复制规则），槽位数在{@link #initWithNiwsConfig(IClientConfig)}中获取
+     */
+    public ConsistentHashRule() {
+    }
+
+    /**
+     * @param tableSize 槽位数，必须为质数，应远大于实例数（如65537）
+     * @throws IllegalArgumentException 槽位数不是质数
+     */
+    public ConsistentHashRule(int tableSize) {
+        this.tableSize = MaglevTable.checkSize(tableSize);
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        if (tableSize == 0) {
+            Integer configured = clientConfig.get(TABLE_SIZE);
+            tableSize = MaglevTable.checkSize(configured != null ? configured : DEFAULT_TABLE_SIZE);
+        }
+    }
+
+    /**
+     * BaseLoadBalancer在设置规则时调用（此时尚未获取服务列表），注册服务列表变化的监听，变化时重建查找表
+     * @param loadBalancer
+     */
+    @Override
+    public void setLoadBalancer(ILoadBalancer loadBalancer) {
+        super.setLoadBalancer(loadBalancer);
+        if (loadBalancer instanceof BaseLoadBalancer && loadBalancer != listening) {
+            ((BaseLoadBalancer) loadBalancer).addServerListChangeListener((oldList, newList) -> table(newList));
+            table(loadBalancer.getAllServers());
+            listening = loadBalancer;
+        }
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer loadBalancer = getLoadBalancer();
+        if (loadBalancer == null) {
+            return null;
+        }
+        String hashKey = key != null && !DEFAULT_KEY.equals(key) ? key.toString() : HashKeyContext.get();
+        if (hashKey == null) {
+            List<Server> servers = loadBalancer.getReachableServers();
+            return servers.isEmpty() ? null : servers.get(ThreadLocalRandom.current().nextInt(servers.size()));
+        }
+        AttemptContext attempt = AttemptContext.current();
+        MaglevTable current = loadBalancer == listening ? table : table(loadBalancer.getAllServers());
+        return current.lookup(Hashing.hash(hashKey, Hashing.SEED_1),
+                attempt != null ? attempt.getExcludedServer() : null);
+    }
+
+    private MaglevTable table(List<Server> servers) {
+        MaglevTable current = table;
+        if (servers == tableServers || current.matches(servers)) {
+            return current;
+        }
+        synchronized (this) {
+            current = table;
+            if (!current.matches(servers)) {
+                current = MaglevTable.build(servers, tableSize, permutations);
+                permutations.keySet().retainAll(new HashSet<>(current.names()));
+                table = current;
+            }
+            tableServers = servers;
+            return current;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 从请求头中获取一致性哈希键并设置到{@link HashKeyContext}，在负载均衡（LoadBalancerFeignClient）之前执行
+ * 方法参数作为键时通过@RequestHeader传入该请求头即可：
+ * <pre>
+ *     &#64;GetMapping("/models/{id}")
+ *     Model getModel(@PathVariable("id") Long id, @RequestHeader("X-Hash-Key") Long hashKey);
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+public class HashKeyClient implements Client {
+
+    private final Client delegate;
+
+    private final String header;
+
+    public HashKeyClient(Client delegate, String header) {
+        this.delegate = delegate;
+        this.header = header;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        Collection<String> values = request.headers().get(header);
+        if (values == null || values.isEmpty()) {
+            return delegate.execute(request, options);
+        }
+        String previous = HashKeyContext.get();
+        HashKeyContext.set(values.iterator().next());
+        try {
+            return delegate.execute(request, options);
+        } finally {
+            if (previous != null) {
+                HashKeyContext.set(previous);
+            } else {
+                HashKeyContext.clear();
+            }
+        }
+    }
+
+}
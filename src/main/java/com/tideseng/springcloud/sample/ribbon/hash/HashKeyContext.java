@@ -0,0 +1,33 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+/**
+ * 当前线程中请求的一致性哈希键，供{@link ConsistentHashRule}在未传入hint时使用
+ * Feign调用由{@link HashKeyClient}从请求头中获取并设置，也可在调用前手动设置：
+ * <pre>
+ *     HashKeyContext.set(userId);
+ *     try {
+ *         dataModelClient.getModel(id);
+ *     } finally {
+ *         HashKeyContext.clear();
+ *     }
+ * </pre>
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+public abstract class HashKeyContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    public static String get() {
+        return CURRENT.get();
+    }
+
+    public static void set(String key) {
+        CURRENT.set(key);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+/**
+ * 字符串的64位哈希（FNV-1a后再做一次混合），与String.hashCode不同，结果在不同JVM间稳定且分布均匀
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+final class Hashing {
+
+    static final long SEED_1 = 0xcbf29ce484222325L;
+
+    static final long SEED_2 = 0x84222325cbf29ce4L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    static long hash(String value, long seed) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h = (h ^ (c & 0xff)) * PRIME;
+            h = (h ^ (c >>> 8)) * PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
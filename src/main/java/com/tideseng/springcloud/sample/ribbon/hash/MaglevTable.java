@@ -0,0 +1,156 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import com.netflix.loadbalancer.Server;
+
+import java.util.*;
+
+/**
+ * Maglev一致性哈希查找表（不可变）
+ *      每个实例按ip:port的两个哈希值生成槽位的排列（offset + j * skip），各实例轮流占用自己排列中下一个空闲槽位直到填满
+ *      实例按ip:port排序，不同调用方生成的查找表相同，同一个键在所有调用方中都路由到同一个实例
+ *      实例上下线时只有少量槽位改变归属，各实例占用的槽位数基本相同
+ * @author jiahuan
+ * @create 2022/6/30
+ */
+final class MaglevTable {
+
+    static final MaglevTable EMPTY = new MaglevTable(new String[0], new Server[0], new int[0]);
+
+    /** 参与计算的实例（按ip:port排序） */
+    private final String[] names;
+
+    private final Server[] servers;
+
+    /** 槽位到实例下标 */
+    private final int[] entries;
+
+    private MaglevTable(String[] names, Server[] servers, int[] entries) {
+        this.names = names;
+        this.servers = servers;
+        this.entries = entries;
+    }
+
+    /**
+     * @param servers 实例列表
+     * @param size 槽位数，必须为大于实例数的质数（应远大于实例数），否则排列不能覆盖所有槽位，填充无法结束
+     * @param permutations 实例排列参数的缓存（offset、skip），重建时只计算新增实例
+     * @return
+     * @throws IllegalArgumentException 槽位数不是质数或不大于实例数
+     */
+    static MaglevTable build(List<Server> servers, int size, Map<String, long[]> permutations) {
+        checkSize(size);
+        if (servers.isEmpty()) {
+            return EMPTY;
+        }
+        Server[] sorted = servers.toArray(new Server[0]);
+        Arrays.sort(sorted, Comparator.comparing(Server::getHostPort));
+        int count = sorted.length;
+        if (count >= size) {
+            throw new IllegalArgumentException("consistent hash table size " + size + " must be larger than the server count " + count);
+        }
+        String[] names = new String[count];
+        long[] offsets = new long[count];
+        long[] skips = new long[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = sorted[i].getHostPort();
+            long[] permutation = permutations.computeIfAbsent(names[i], name -> new long[]{
+                    Long.remainderUnsigned(Hashing.hash(name, Hashing.SEED_1), size),
+                    Long.remainderUnsigned(Hashing.hash(name, Hashing.SEED_2), size - 1) + 1});
+            offsets[i] = permutation[0];
+            skips[i] = permutation[1];
+        }
+        int[] entries = new int[size];
+        Arrays.fill(entries, -1);
+        long[] next = new long[count];
+        int filled = 0;
+        while (true) {
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((offsets[i] + next[i] * skips[i]) % size);
+                while (entries[slot] >= 0) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + next[i] * skips[i]) % size);
+                }
+                entries[slot] = i;
+                next[i]++;
+                if (++filled == size) {
+                    return new MaglevTable(names, sorted, entries);
+                }
+            }
+        }
+    }
+
+    /**
+     * 校验槽位数：skip取值为1~size-1，只有size为质数时每个实例的排列才能遍历所有槽位
+     * @param size
+     * @return 校验通过的槽位数
+     * @throws IllegalArgumentException 槽位数不是质数
+     */
+    static int checkSize(int size) {
+        if (!isPrime(size)) {
+            throw new IllegalArgumentException("consistent hash table size must be a prime number: " + size);
+        }
+        return size;
+    }
+
+    private static boolean isPrime(int value) {
+        if (value < 2) {
+            return false;
+        }
+        if (value % 2 == 0) {
+            return value == 2;
+        }
+        for (int divisor = 3; (long) divisor * divisor <= value; divisor += 2) {
+            if (value % divisor == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 实例列表是否与生成查找表时相同（不区分顺序）
+     */
+    boolean matches(List<Server> servers) {
+        if (servers.size() != names.length) {
+            return false;
+        }
+        for (Server server : servers) {
+            if (Arrays.binarySearch(names, server.getHostPort()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 根据键的哈希值查找实例，槽位对应的实例不可用或被排除时依次查找后续槽位
+     * @param hash 键的哈希值
+     * @param excludedServer 需要排除的实例（ip:port），可为空
+     * @return 没有可用实例时返回null
+     */
+    Server lookup(long hash, String excludedServer) {
+        int size = entries.length;
+        if (size == 0) {
+            return null;
+        }
+        int slot = (int) Long.remainderUnsigned(hash, size);
+        int last = -1;
+        for (int i = 0; i < size; i++) {
+            int index = entries[(slot + i) % size];
+            if (index == last) {
+                continue;
+            }
+            last = index;
+            Server server = servers[index];
+            if (server.isAlive() && !names[index].equals(excludedServer)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    List<String> names() {
+        return Arrays.asList(names);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethod;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodContext;
+import feign.Request;
+import feign.RetryableException;
+import feign.Retryer;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 受重试预算限制的Retryer，退避方式与{@link Retryer.Default}一致（按1.5倍递增，服务端返回Retry-After时按其等待）
+ * FeignClientFactoryBean只创建一个Retryer，每次调用方法时通过clone()获取新的实例，因此在clone()时向预算存入令牌
+ * 每次重试前从预算中取出令牌，预算不足时不再重试，直接抛出异常
+ * 只重试不会重复执行的请求：幂等的请求方法（GET、HEAD、OPTIONS、PUT、DELETE、TRACE）、{@link Hedged}修饰的方法、
+ *      未建立连接的失败（连接被拒绝、无法路由、域名解析失败）及服务端返回Retry-After的响应；POST等请求读超时时服务端可能已经执行，不重试
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+public class BudgetedRetryer implements Retryer {
+
+    private static final Set<Request.HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(Request.HttpMethod.GET, Request.HttpMethod.HEAD,
+            Request.HttpMethod.OPTIONS, Request.HttpMethod.PUT, Request.HttpMethod.DELETE, Request.HttpMethod.TRACE);
+
+    private final RetryBudget budget;
+
+    private final long period;
+
+    private final long maxPeriod;
+
+    private final int maxAttempts;
+
+    private int attempt = 1;
+
+    private long sleptForMillis;
+
+    /**
+     * @param budget 重试预算
+     * @param period 首次重试的等待时间（毫秒）
+     * @param maxPeriod 最大等待时间（毫秒）
+     * @param maxAttempts 最多尝试次数（含首次请求）
+     */
+    public BudgetedRetryer(RetryBudget budget, long period, long maxPeriod, int maxAttempts) {
+        this.budget = budget;
+        this.period = period;
+        this.maxPeriod = maxPeriod;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    public void continueOrPropagate(RetryableException e) {
+        if (!isSafeToRetry(e) || attempt++ >= maxAttempts || !budget.tryWithdraw()) {
+            throw e;
+        }
+        long interval;
+        if (e.retryAfter() != null) {
+            interval = e.retryAfter().getTime() - System.currentTimeMillis();
+            if (interval > maxPeriod) {
+                interval = maxPeriod;
+            }
+            if (interval < 0) {
+                return;
+            }
+        } else {
+            interval = nextMaxInterval();
+        }
+        try {
+            Thread.sleep(interval);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        sleptForMillis += interval;
+    }
+
+    private static boolean isSafeToRetry(RetryableException e) {
+        if (e.retryAfter() != null) {
+            return true;
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+            return true;
+        }
+        if (e.method() != null && IDEMPOTENT_METHODS.contains(e.method())) {
+            return true;
+        }
+        FeignMethod feignMethod = FeignMethodContext.current();
+        return feignMethod != null && feignMethod.getAnnotation(Hedged.class) != null;
+    }
+
+    private long nextMaxInterval() {
+        long interval = (long) (period * Math.pow(1.5, attempt - 1));
+        return interval > maxPeriod ? maxPeriod : interval;
+    }
+
+    public long getSleptForMillis() {
+        return sleptForMillis;
+    }
+
+    @Override
+    public Retryer clone() {
+        budget.deposit();
+        return new BudgetedRetryer(budget, period, maxPeriod, maxAttempts);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import java.lang.annotation.*;
+
+/**
+ * 对冲请求：请求超过历史响应时间的指定分位数仍未返回时，向另一个实例再发一次请求，使用先返回的响应
+ * 只能用于幂等方法（同一请求可能被多个实例处理），对冲请求同样消耗{@link RetryBudget}
+ * @see HedgingClient
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Hedged {
+
+    /**
+     * 触发对冲的响应时间分位数
+     */
+    double percentile() default 0.95;
+
+    /**
+     * 最小的对冲等待时间（毫秒），避免响应很快时对冲过于频繁
+     */
+    long minDelay() default 5;
+
+    /**
+     * 最多尝试次数（含首次请求）
+     */
+    int maxAttempts() default 2;
+
+}
@@ -0,0 +1,214 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethod;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodContext;
+import com.tideseng.springcloud.sample.ribbon.AttemptContext;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 发起对冲请求的Feign Client，只对{@link Hedged}修饰的方法生效
+ *      每个方法记录最近的响应时间，样本足够后，请求超过指定分位数仍未返回时再发起一次请求（消耗{@link RetryBudget}，预算不足时不发起）
+ *      先返回的响应被使用，之后返回的响应直接关闭；所有已发起的请求都失败时抛出最后一个异常
+ *      每次尝试都在FeignClient的异步线程池中执行，调用线程等待第一个完成的尝试；对冲请求由共用的定时线程在等待分位数时间后提交到线程池（不额外占用等待的线程），
+ *      并通过{@link AttemptContext}排除之前尝试的实例（需使用{@link com.tideseng.springcloud.sample.ribbon.PeakEwmaRule}）
+ *      线程池已满时首次请求直接在调用线程中执行，不发起对冲
+ * @see HedgingFeignClientConfiguration
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+public class HedgingClient implements Client {
+
+    /** 等待所有尝试的时间在连接超时+读取超时之外额外增加的时间（毫秒） */
+    private static final long WAIT_MARGIN = 1000;
+
+    private final Client delegate;
+
+    private final Executor executor;
+
+    private final RetryBudget budget;
+
+    private final ConcurrentMap<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+
+    /** 所有HedgingClient共用的定时线程，只负责将对冲请求提交到线程池 */
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "feign-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    public HedgingClient(Client delegate, Executor executor, RetryBudget budget) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.budget = budget;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        FeignMethod feignMethod = FeignMethodContext.current();
+        Hedged hedged = feignMethod != null ? feignMethod.getAnnotation(Hedged.class) : null;
+        if (hedged == null) {
+            return delegate.execute(request, options);
+        }
+        LatencyTracker tracker = trackers.computeIfAbsent(feignMethod.getConfigKey(), key -> new LatencyTracker(hedged.percentile()));
+        long quantile = tracker.quantile();
+        if (quantile < 0 || hedged.maxAttempts() <= 1) {
+            long start = System.nanoTime();
+            Response response = delegate.execute(request, options);
+            tracker.record(System.nanoTime() - start);
+            return response;
+        }
+        long delay = Math.max(quantile, TimeUnit.MILLISECONDS.toNanos(hedged.minDelay()));
+        Hedge hedge = new Hedge(request, options, tracker, hedged.maxAttempts(), delay);
+        AttemptContext context = new AttemptContext(null);
+        hedge.pending.incrementAndGet();
+        try {
+            executor.execute(() -> hedge.attempt(context));
+        } catch (RejectedExecutionException e) {
+            return delegate.execute(request, options);
+        }
+        hedge.schedule(context);
+        try {
+            return await(hedge, request, options);
+        } finally {
+            hedge.cancel();
+        }
+    }
+
+    private static Response await(Hedge hedge, Request request, Request.Options options) throws IOException {
+        long timeout = (long) options.connectTimeoutMillis() + options.readTimeoutMillis() + WAIT_MARGIN;
+        try {
+            return hedge.result.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (TimeoutException e) {
+            // 之后返回的响应直接关闭
+            hedge.result.completeExceptionally(e);
+            throw new SocketTimeoutException("timed out waiting for hedged request " + request.httpMethod() + " " + request.url());
+        } catch (InterruptedException e) {
+            hedge.result.completeExceptionally(e);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for hedged request " + request.httpMethod() + " " + request.url());
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * 同一请求的多次尝试，result由第一个返回的响应完成
+     *      对冲请求由定时线程在等待delay后提交到线程池，每次对冲排除上一次尝试的实例
+     */
+    private final class Hedge {
+
+        private final Request request;
+
+        private final Request.Options options;
+
+        private final LatencyTracker tracker;
+
+        private final int maxAttempts;
+
+        private final long delay;
+
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+
+        /** 进行中的尝试数，全部失败时以最后一个异常完成result */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /** 已发起的尝试数（含首次请求），只由定时线程修改 */
+        private int attempts = 1;
+
+        private volatile ScheduledFuture<?> timer;
+
+        Hedge(Request request, Request.Options options, LatencyTracker tracker, int maxAttempts, long delay) {
+            this.request = request;
+            this.options = options;
+            this.tracker = tracker;
+            this.maxAttempts = maxAttempts;
+            this.delay = delay;
+        }
+
+        /**
+         * 等待delay后发起下一次对冲请求
+         * @param previous 上一次尝试的上下文，对冲请求排除其实例（负载均衡尚未完成时不排除）
+         */
+        void schedule(AttemptContext previous) {
+            try {
+                timer = TIMER.schedule(() -> launch(previous), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // 定时线程已关闭，不发起对冲
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> current = timer;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        /**
+         * 在定时线程中执行：预算充足时将对冲请求提交到线程池
+         */
+        private void launch(AttemptContext previous) {
+            if (result.isDone() || attempts >= maxAttempts || !budget.tryWithdraw()) {
+                return;
+            }
+            AttemptContext context = new AttemptContext(previous.getServer());
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> attempt(context));
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                return;
+            }
+            if (++attempts < maxAttempts) {
+                schedule(context);
+            }
+        }
+
+        void attempt(AttemptContext context) {
+            AttemptContext.begin(context);
+            long start = System.nanoTime();
+            try {
+                Response response = delegate.execute(request, options);
+                tracker.record(System.nanoTime() - start);
+                if (!result.complete(response)) {
+                    response.close();
+                }
+            } catch (Throwable e) {
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            } finally {
+                AttemptContext.end();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import com.tideseng.springcloud.sample.openfeign.decorator.DecoratedFeignClientConfiguration;
+import com.tideseng.springcloud.sample.openfeign.decorator.FeignClientDecorator;
+import com.tideseng.springcloud.sample.openfeign.dispatch.FeignMethodDispatchConfiguration;
+import feign.Client;
+import feign.Retryer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 重试及对冲请求的配置类，在@FeignClient的configuration中指定即可开启，每个FeignClient（即每个服务）独立一个重试预算
+ * <pre>
+ *     application.feign.retry.budget-ratio=0.1              每个请求存入的令牌数（重试+对冲最多占请求量的比例）
+ *     application.feign.retry.min-retries-per-second=10     每秒保底的重试次数
+ *     application.feign.retry.max-balance=100               令牌数上限
+ *     application.feign.retry.max-attempts=3                Retryer最多尝试次数（含首次请求）
+ *     application.feign.retry.period=100                    首次重试的等待时间（毫秒）
+ *     application.feign.retry.max-period=1000               最大等待时间（毫秒）
+ * </pre>
+ * 重试由Feign的Retryer完成（只重试RetryableException，即连接失败、读超时等IO异常及Retry-After响应；
+ * 非幂等且未标注{@link Hedged}的请求只在未建立连接或Retry-After时重试，见{@link BudgetedRetryer}），
+ * Ribbon自身的重试（MaxAutoRetries、MaxAutoRetriesNextServer）不受预算限制，开启后建议设置为0：
+ * <pre>
+ *     data-model.ribbon.MaxAutoRetries=0
+ *     data-model.ribbon.MaxAutoRetriesNextServer=0
+ * </pre>
+ * 该配置类会导入{@link FeignMethodDispatchConfiguration}（用于获取方法上的{@link Hedged}，对冲请求使用其异步线程池），
+ * 通过{@link DecoratedFeignClientConfiguration}包装主容器中的Client，对冲在响应缓存及合并请求的内层
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+@Import({FeignMethodDispatchConfiguration.class, DecoratedFeignClientConfiguration.class})
+public class HedgingFeignClientConfiguration {
+
+    private static final String PREFIX = "application.feign.retry.";
+
+    @Bean
+    public RetryBudget retryBudget(Environment environment) {
+        return new RetryBudget(environment.getProperty(PREFIX + "budget-ratio", Double.class, 0.1),
+                environment.getProperty(PREFIX + "min-retries-per-second", Integer.class, 10),
+                environment.getProperty(PREFIX + "max-balance", Integer.class, 100));
+    }
+
+    /**
+     * 覆盖FeignClientsConfiguration中默认不重试的Retryer
+     * @param environment
+     * @param retryBudget
+     * @return
+     */
+    @Bean
+    public Retryer budgetedRetryer(Environment environment, RetryBudget retryBudget) {
+        return new BudgetedRetryer(retryBudget,
+                environment.getProperty(PREFIX + "period", Long.class, 100L),
+                environment.getProperty(PREFIX + "max-period", Long.class, 1000L),
+                environment.getProperty(PREFIX + "max-attempts", Integer.class, 3));
+    }
+
+    @Bean
+    public FeignClientDecorator hedgingClientDecorator(ThreadPoolTaskExecutor feignAsyncExecutor, RetryBudget retryBudget) {
+        return new FeignClientDecorator() {
+            @Override
+            public Client decorate(Client client) {
+                return new HedgingClient(client, feignAsyncExecutor, retryBudget);
+            }
+
+            @Override
+            public int getOrder() {
+                return HEDGING_ORDER;
+            }
+        };
+    }
+
+}
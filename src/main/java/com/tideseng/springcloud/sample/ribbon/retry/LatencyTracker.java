@@ -0,0 +1,58 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近若干次响应时间的分位数，样本写入环形数组（无锁），每写入一批样本后重新计算一次
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+final class LatencyTracker {
+
+    private static final int SIZE = 256;
+
+    private static final int MIN_SAMPLES = 32;
+
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private final double percentile;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** 分位数（纳秒），样本不足时为-1 */
+    private volatile long quantile = -1;
+
+    LatencyTracker(double percentile) {
+        this.percentile = Math.min(1, Math.max(0, percentile));
+    }
+
+    void record(long nanos) {
+        int index = count.getAndIncrement() & Integer.MAX_VALUE;
+        samples.set(index & (SIZE - 1), nanos);
+        if (index >= MIN_SAMPLES - 1 && (index + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute(Math.min(index + 1, SIZE));
+        }
+    }
+
+    /**
+     * @return 分位数（纳秒），样本不足时为-1
+     */
+    long quantile() {
+        return quantile;
+    }
+
+    private void recompute(int size) {
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = samples.get(i);
+        }
+        Arrays.sort(values);
+        int rank = (int) Math.ceil(percentile * size) - 1;
+        quantile = values[Math.max(0, Math.min(size - 1, rank))];
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算（令牌桶），限制重试及对冲请求占正常请求的比例，避免服务异常时重试放大流量造成雪崩
+ *      每个请求存入ratio个令牌（以千分之一令牌计，无锁），每次重试/对冲取出1个令牌，令牌数有上限
+ *      另外每秒允许minRetriesPerSecond次重试，保证请求量很小时也能重试
+ * @author jiahuan
+ * @create 2022/6/29
+ */
+public class RetryBudget {
+
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final int minRetriesPerSecond;
+
+    private final AtomicLong balance = new AtomicLong();
+
+    /** 当前秒（System.nanoTime的秒数）及该秒内已使用的保底重试次数 */
+    private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+
+    private final AtomicInteger used = new AtomicInteger();
+
+    /**
+     * @param ratio 每个请求存入的令牌数，如0.1表示重试最多占请求量的10%
+     * @param minRetriesPerSecond 每秒保底的重试次数
+     * @param maxBalance 令牌数上限（突发时最多可连续重试的次数）
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond, int maxBalance) {
+        if (ratio < 0 || ratio > 1000) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1000: " + ratio);
+        }
+        this.deposit = Math.round(ratio * TOKEN);
+        this.capacity = Math.max(1, maxBalance) * TOKEN;
+        this.minRetriesPerSecond = Math.max(0, minRetriesPerSecond);
+    }
+
+    /**
+     * 每个请求（不含重试）调用一次
+     */
+    public void deposit() {
+        if (deposit == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    /**
+     * 取出一个令牌
+     * @return 是否允许重试
+     */
+    public boolean tryWithdraw() {
+        if (minRetriesPerSecond > 0) {
+            long now = System.nanoTime() / 1_000_000_000L;
+            long current = second.get();
+            if (current != now && second.compareAndSet(current, now)) {
+                used.set(0);
+            }
+            if (used.get() < minRetriesPerSecond && used.incrementAndGet() <= minRetriesPerSecond) {
+                return true;
+            }
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * @return 当前可用的令牌数（不含保底重试次数）
+     */
+    public double getBalance() {
+        return (double) balance.get() / TOKEN;
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link LeaseSlotTable}的续约、释放后句柄失效、槽位复用及分页扩容
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class LeaseSlotTableTest {
+
+    @Test
+    public void renewUpdatesTimestamp() {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        long handle = table.allocate(now);
+        assertEquals(now, table.get(handle));
+        assertTrue(table.renew(handle, now + 30_000));
+        assertEquals(now + 30_000, table.get(handle));
+    }
+
+    @Test
+    public void releasedHandleIsInvalid() {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        long handle = table.allocate(now);
+        assertEquals(now, table.release(handle));
+        assertEquals(-1, table.get(handle));
+        assertFalse(table.renew(handle, now + 1));
+        assertEquals(-1, table.release(handle));
+    }
+
+    @Test
+    public void reusedSlotDoesNotAcceptStaleHandle() {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        long stale = table.allocate(now);
+        table.release(stale);
+        long reused = table.allocate(now + 1);
+        // 同一槽位，代数不同
+        assertEquals((int) stale, (int) reused);
+        assertNotEquals(stale, reused);
+        assertFalse(table.renew(stale, now + 2));
+        assertEquals(-1, table.release(stale));
+        assertEquals(now + 1, table.get(reused));
+    }
+
+    @Test
+    public void slotsSurvivePageGrowth() {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        long[] handles = new long[5000];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = table.allocate(now + i);
+        }
+        for (int i = 0; i < handles.length; i++) {
+            assertEquals(now + i, table.get(handles[i]));
+        }
+        for (int i = 0; i < handles.length; i += 2) {
+            table.release(handles[i]);
+        }
+        // 释放的槽位先被复用，不再扩容
+        for (int i = 0; i < handles.length; i += 2) {
+            handles[i] = table.allocate(now);
+            assertTrue((int) handles[i] < handles.length);
+        }
+        for (int i = 1; i < handles.length; i += 2) {
+            assertEquals(now + i, table.get(handles[i]));
+        }
+    }
+
+    @Test
+    public void clearInvalidatesAllHandles() {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        long first = table.allocate(now);
+        long second = table.allocate(now);
+        table.clear();
+        assertEquals(-1, table.get(first));
+        assertEquals(-1, table.get(second));
+        assertFalse(table.renew(second, now));
+        long handle = table.allocate(now);
+        assertEquals(now, table.get(handle));
+    }
+
+    @Test
+    public void renewRacingReleaseNeverSucceedsAfterRelease() throws InterruptedException {
+        LeaseSlotTable table = new LeaseSlotTable();
+        long now = System.currentTimeMillis();
+        for (int round = 0; round < 200; round++) {
+            long handle = table.allocate(now);
+            AtomicBoolean released = new AtomicBoolean();
+            AtomicBoolean renewedAfterRelease = new AtomicBoolean();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread renewer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    boolean wasReleased = released.get();
+                    if (table.renew(handle, now + i) && wasReleased) {
+                        renewedAfterRelease.set(true);
+                    }
+                }
+            });
+            renewer.start();
+            start.countDown();
+            table.release(handle);
+            released.set(true);
+            renewer.join();
+            assertFalse(renewedAfterRelease.get());
+            assertEquals(-1, table.get(handle));
+        }
+    }
+
+}
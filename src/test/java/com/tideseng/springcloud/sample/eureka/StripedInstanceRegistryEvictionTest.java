@@ -0,0 +1,98 @@
+package com.tideseng.springcloud.sample.eureka;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.DataCenterInfo;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.appinfo.MyDataCenterInfo;
+import com.netflix.eureka.resources.DefaultServerCodecs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+import org.springframework.cloud.netflix.eureka.server.EurekaServerConfigBean;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link StripedInstanceRegistry}的时间轮剔除：openForTraffic后开启时间轮，过期的租约在一个刻度内被剔除
+ *      原实现的剔除周期（evictionIntervalTimerInMs）保持默认的60秒，测试时间内只有时间轮会剔除
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class StripedInstanceRegistryEvictionTest {
+
+    private static final long TICK_MS = 100;
+
+    private StripedInstanceRegistry registry;
+
+    @Before
+    public void setUp() {
+        EurekaServerConfigBean serverConfig = new EurekaServerConfigBean();
+        serverConfig.setEnableSelfPreservation(false);
+        EurekaClientConfigBean clientConfig = new EurekaClientConfigBean();
+        clientConfig.setRegisterWithEureka(false);
+        clientConfig.setFetchRegistry(false);
+        registry = new StripedInstanceRegistry(serverConfig, clientConfig, new DefaultServerCodecs(serverConfig), null, 1, 1);
+        registry.setPublishRenewEvents(false);
+        registry.setEvictionTickMs(TICK_MS);
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void expiredLeaseIsEvictedByWheel() throws InterruptedException {
+        EurekaInstanceConfigBean instanceConfig = new EurekaInstanceConfigBean(new InetUtils(new InetUtilsProperties()));
+        instanceConfig.setAppname("eureka-server");
+        registry.openForTraffic(new ApplicationInfoManager(instanceConfig, instance("eureka-server", "self", 90)), 1);
+
+        registry.register(instance("data-model", "data-model-1", 1), 1, false);
+        registry.register(instance("data-model", "data-model-2", 60), 60, false);
+        assertEquals(2, registry.getLocalRegistrySize());
+
+        // 租约1秒后过期（过期的租约查询时已不返回，因此按注册表中的租约数判断是否已剔除），等待过期后的若干刻度
+        long deadline = System.currentTimeMillis() + 1000 + 20 * TICK_MS;
+        while (registry.getLocalRegistrySize() > 1 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(TICK_MS);
+        }
+        assertEquals(1, registry.getLocalRegistrySize());
+        assertNull(registry.getInstanceByAppAndId("DATA-MODEL", "data-model-1"));
+        assertNotNull(registry.getInstanceByAppAndId("DATA-MODEL", "data-model-2"));
+    }
+
+    @Test
+    public void inheritedFullScanIsIgnoredWhenWheelRuns() throws InterruptedException {
+        EurekaInstanceConfigBean instanceConfig = new EurekaInstanceConfigBean(new InetUtils(new InetUtilsProperties()));
+        registry.setEvictionTickMs(60_000);
+        registry.openForTraffic(new ApplicationInfoManager(instanceConfig, instance("eureka-server", "self", 90)), 1);
+
+        registry.register(instance("data-model", "data-model-1", 1), 1, false);
+        TimeUnit.MILLISECONDS.sleep(1100);
+        // 父类剔除任务调用的全量扫描不再剔除，由时间轮（此处刻度60秒）负责
+        registry.evict(0);
+        assertEquals(1, registry.getLocalRegistrySize());
+    }
+
+    private static InstanceInfo instance(String appName, String id, int leaseDurationSecs) {
+        return InstanceInfo.Builder.newBuilder()
+                .setAppName(appName)
+                .setInstanceId(id)
+                .setHostName(id)
+                .setIPAddr("127.0.0.1")
+                .setPort(8080)
+                .setVIPAddress(appName)
+                .setStatus(InstanceInfo.InstanceStatus.UP)
+                .setDataCenterInfo(new MyDataCenterInfo(DataCenterInfo.Name.MyOwn))
+                .setLeaseInfo(LeaseInfo.Builder.newBuilder().setDurationInSecs(leaseDurationSecs).build())
+                .build();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.tideseng.springcloud.sample.openfeign.body;
+
+import feign.Request;
+import feign.RequestTemplate;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link JsonBodyPatch}的流式修改及{@link FeignClientBodyTransformer}按方法路径匹配规则
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class JsonBodyPatchTest {
+
+    private static final Function<String, String> TENANT = Collections.singletonMap("X-Tenant-Id", "t1")::get;
+
+    @Test
+    public void removeRenameAndAdd() throws IOException {
+        JsonBodyPatch patch = new JsonBodyPatch().remove("password").rename("ids", "idList").add("source", "feign");
+        assertEquals("{\"name\":\"a\",\"idList\":[1,2],\"source\":\"feign\"}",
+                apply(patch, "{\"name\":\"a\",\"password\":\"p\",\"ids\":[1,2]}", TENANT));
+    }
+
+    @Test
+    public void addOverwritesExistingFieldInPlace() throws IOException {
+        JsonBodyPatch patch = new JsonBodyPatch().add("source", "feign");
+        assertEquals("{\"source\":\"feign\",\"name\":\"a\"}", apply(patch, "{\"source\":{\"x\":1},\"name\":\"a\"}", TENANT));
+    }
+
+    @Test
+    public void renameOverwritesShadowedField() throws IOException {
+        JsonBodyPatch patch = new JsonBodyPatch().rename("ids", "idList");
+        // 目标字段在重命名字段之前、之后出现时都由重命名的字段覆盖
+        assertEquals("{\"idList\":[1]}", apply(patch, "{\"idList\":[9],\"ids\":[1]}", TENANT));
+        assertEquals("{\"idList\":[1]}", apply(patch, "{\"ids\":[1],\"idList\":[9]}", TENANT));
+        // 重命名的字段不存在时保留原字段
+        assertEquals("{\"idList\":[9]}", apply(patch, "{\"idList\":[9]}", TENANT));
+    }
+
+    @Test
+    public void headerInjectedOnlyWhenPresent() throws IOException {
+        JsonBodyPatch patch = new JsonBodyPatch().header("X-Tenant-Id", "tenantId");
+        assertEquals("{\"name\":\"a\",\"tenantId\":\"t1\"}", apply(patch, "{\"name\":\"a\"}", TENANT));
+        assertEquals("{\"tenantId\":\"t1\"}", apply(patch, "{\"tenantId\":\"old\"}", TENANT));
+        assertEquals("{\"tenantId\":\"old\"}", apply(patch, "{\"tenantId\":\"old\"}", name -> null));
+        assertEquals("{\"name\":\"a\"}", apply(patch, "{\"name\":\"a\"}", name -> null));
+    }
+
+    @Test
+    public void nonObjectBodyIsNotPatched() throws IOException {
+        JsonBodyPatch patch = new JsonBodyPatch().remove("password");
+        assertNull(patch.apply("[1,2]".getBytes(StandardCharsets.UTF_8), TENANT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void conflictingEditsAreRejected() {
+        new JsonBodyPatch().remove("password").add("password", "x");
+    }
+
+    @Test
+    public void rulesMatchMethodRelativePath() {
+        FeignClientBodyTransformer transformer = new FeignClientBodyTransformer();
+        JsonBodyPatch list = transformer.on("post", "instance/list/");
+        JsonBodyPatch any = transformer.on("POST", "/instance/**");
+        assertSame(list, transformer.getPatch("POST", "/instance/list"));
+        assertSame(any, transformer.getPatch("POST", "/instance/detail"));
+        assertNull(transformer.getPatch("GET", "/instance/list"));
+
+        // 拦截器执行时RequestTemplate只有方法上声明的路径（@FeignClient的path前缀尚未拼接）
+        transformer.on("POST", "/instance/list").remove("password");
+        RequestTemplate template = new RequestTemplate().method(Request.HttpMethod.POST).uri("/instance/list");
+        template.body(Request.Body.encoded("{\"name\":\"a\",\"password\":\"p\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        transformer.apply(template);
+        assertEquals("{\"name\":\"a\"}", new String(template.requestBody().asBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static String apply(JsonBodyPatch patch, String body, Function<String, String> headers) throws IOException {
+        return new String(patch.apply(body.getBytes(StandardCharsets.UTF_8), headers), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.tideseng.springcloud.sample.openfeign.cache;
+
+import feign.Request;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link BoundedResponseStore}的分段LRU淘汰、字节数统计，及{@link CacheKey}按完整内容比较
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class BoundedResponseStoreTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CacheKey a = key("/a"), b = key("/b"), c = key("/c"), d = key("/d");
+        long entryWeight = a.weight() + response(1000).weight();
+        // 单段，最多容纳3个条目
+        BoundedResponseStore store = new BoundedResponseStore(entryWeight * 3 + entryWeight / 2, 1);
+        store.put(a, response(1000));
+        store.put(b, response(1000));
+        store.put(c, response(1000));
+        // 访问a后b成为最久未使用的条目
+        assertNotNull(store.get(a));
+        store.put(d, response(1000));
+        assertNull(store.get(b));
+        assertNotNull(store.get(a));
+        assertNotNull(store.get(c));
+        assertNotNull(store.get(d));
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(3, store.getSize());
+        assertEquals(entryWeight * 3, store.getWeight());
+    }
+
+    @Test
+    public void responseLargerThanSegmentIsNotCached() {
+        BoundedResponseStore store = new BoundedResponseStore(16 * 1024, 4);
+        assertFalse(store.put(key("/large"), response(8 * 1024)));
+        assertTrue(store.put(key("/small"), response(1024)));
+        assertEquals(1, store.getSize());
+    }
+
+    @Test
+    public void weightIsTrackedOnReplaceAndRemove() {
+        BoundedResponseStore store = new BoundedResponseStore(1024 * 1024, 4);
+        CacheKey key = key("/a");
+        CachedResponse first = response(100);
+        CachedResponse second = response(300);
+        store.put(key, first);
+        store.put(key, second);
+        assertEquals(key.weight() + second.weight(), store.getWeight());
+        // 缓存的已不是first时不移除
+        store.remove(key, first);
+        assertSame(second, store.get(key));
+        store.remove(key, second);
+        assertEquals(0, store.getWeight());
+        assertEquals(0, store.getSize());
+    }
+
+    @Test
+    public void segmentsAreBoundedIndependently() {
+        BoundedResponseStore store = new BoundedResponseStore(64 * 1024, 8);
+        for (int i = 0; i < 1000; i++) {
+            store.put(key("/item/" + i), response(512));
+        }
+        assertTrue(store.getWeight() <= 64 * 1024);
+        assertTrue(store.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void cacheKeyComparesCanonicalContent() {
+        String[] vary = {"Authorization"};
+        assertEquals(CacheKey.of(request("/a", "Bearer 1", "{}"), vary), CacheKey.of(request("/a", "Bearer 1", "{}"), vary));
+        assertNotEquals(CacheKey.of(request("/a", "Bearer 1", "{}"), vary), CacheKey.of(request("/a", "Bearer 2", "{}"), vary));
+        assertNotEquals(CacheKey.of(request("/a", "Bearer 1", "{}"), vary), CacheKey.of(request("/a", "Bearer 1", "[]"), vary));
+        assertNotEquals(CacheKey.of(request("/a", "Bearer 1", "{}"), vary), CacheKey.of(request("/b", "Bearer 1", "{}"), vary));
+        assertNotEquals(CacheKey.of(request("/a", "Bearer 1", null), vary), CacheKey.of(request("/a", "Bearer 1", ""), vary));
+        // 多个值与包含分隔符的单个值不相同
+        Map<String, Collection<String>> twoValues = new HashMap<>();
+        twoValues.put("Authorization", Arrays.asList("a", "b"));
+        Map<String, Collection<String>> oneValue = new HashMap<>();
+        oneValue.put("Authorization", Collections.singletonList("a:1:b"));
+        assertNotEquals(CacheKey.of(request("/a", twoValues, null), vary), CacheKey.of(request("/a", oneValue, null), vary));
+    }
+
+    private static CacheKey key(String path) {
+        return CacheKey.of(request(path, "Bearer 1", null), new String[]{"Authorization"});
+    }
+
+    private static CachedResponse response(int size) {
+        return new CachedResponse(200, "OK", Collections.emptyMap(), new byte[size], null, null, Long.MAX_VALUE);
+    }
+
+    private static Request request(String path, String authorization, String body) {
+        return request(path, Collections.singletonMap("Authorization", Collections.singletonList(authorization)), body);
+    }
+
+    private static Request request(String path, Map<String, Collection<String>> headers, String body) {
+        return Request.create(Request.HttpMethod.GET, "http://data-model" + path, headers,
+                body != null ? body.getBytes(StandardCharsets.UTF_8) : null, StandardCharsets.UTF_8);
+    }
+
+}
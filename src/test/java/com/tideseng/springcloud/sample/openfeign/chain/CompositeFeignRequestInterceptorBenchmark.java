@@ -0,0 +1,138 @@
+package com.tideseng.springcloud.sample.openfeign.chain;
+
+import com.tideseng.springcloud.sample.openfeign.body.DefaultFeignClientInterceptorBodyConfig;
+import com.tideseng.springcloud.sample.openfeign.body.FeignClientBodyTransformer;
+import com.tideseng.springcloud.sample.openfeign.request.HeaderPropagationPolicy;
+import com.tideseng.springcloud.sample.openfeign.request.QueryRewriteRule;
+import com.tideseng.springcloud.sample.openfeign.request.QueryRewriter;
+import feign.Request;
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比相同的处理（固定请求头、请求头透传、param参数改写、Body流式修改、Body对象修改）分别注册为多个拦截器与合并为{@link CompositeFeignRequestInterceptor}的开销
+ * 运行：执行main方法，或mvn test-compile后以org.openjdk.jmh.Main运行（需将test-classes加入classpath），加-prof gc查看每次调用的内存分配
+ * @author jiahuan
+ * @create 2022/6/20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompositeFeignRequestInterceptorBenchmark {
+
+    private static final byte[] BODY = "{\"name\":\"instance\",\"ids\":[1,2,3],\"password\":\"secret\",\"page\":{\"no\":1,\"size\":20}}".getBytes(StandardCharsets.UTF_8);
+
+    private RequestInterceptor[] separate;
+
+    private CompositeFeignRequestInterceptor composite;
+
+    @Setup
+    public void setup() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/instance/list");
+        request.addHeader("Authorization", "Bearer origin");
+        request.addHeader("X-Trace-Id", "6f1c2a");
+        request.addHeader("X-Tenant-Id", "tenant-1");
+        request.addHeader("Cookie", "SESSION=1");
+        request.addHeader("Accept-Language", "zh-CN");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        HeaderPropagationPolicy policy = HeaderPropagationPolicy.builder().deny("Cookie").rename("Authorization", "X-Origin-Authorization").build();
+        QueryRewriter rewriter = new QueryRewriter(QueryRewriteRule.split("userIds", "userIdList", ','));
+        FeignClientBodyTransformer transformer = new FeignClientBodyTransformer();
+        transformer.on("POST", "/instance/list").remove("password").rename("ids", "idList").header("X-Tenant-Id", "tenantId");
+        TenantBodyConfig bodyConfig = new TenantBodyConfig();
+
+        separate = new RequestInterceptor[]{
+                template -> template.header("Authorization", "Bearer xxx"),
+                template -> {
+                    ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+                    if (attributes != null) {
+                        policy.capture(attributes.getRequest()).applyTo(template);
+                    }
+                },
+                rewriter::rewrite,
+                transformer,
+                bodyConfig
+        };
+        composite = new CompositeFeignRequestInterceptor(
+                new StaticHeaderStage("Authorization", "Bearer xxx"),
+                new HeaderPropagationStage(policy),
+                new QueryRewriteStage(rewriter),
+                new BodyTransformStage(transformer),
+                new BodyConfigStage(bodyConfig));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public RequestTemplate separateInterceptors() {
+        RequestTemplate template = template();
+        for (RequestInterceptor interceptor : separate) {
+            interceptor.apply(template);
+        }
+        return template;
+    }
+
+    @Benchmark
+    public RequestTemplate compositeInterceptor() {
+        RequestTemplate template = template();
+        composite.apply(template);
+        return template;
+    }
+
+    private static RequestTemplate template() {
+        RequestTemplate template = new RequestTemplate();
+        template.method(Request.HttpMethod.POST);
+        template.uri("/instance/list");
+        template.query("userIds", "1,2,3");
+        template.query("type", "all");
+        template.body(Request.Body.encoded(BODY, StandardCharsets.UTF_8));
+        return template;
+    }
+
+    /**
+     * 原地修改反序列化出的Body对象
+     */
+    static class TenantBodyConfig extends DefaultFeignClientInterceptorBodyConfig {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object doFilter(RequestTemplate requestTemplate, HttpServletRequest request) {
+            try {
+                Map<String, Object> body = readBody(requestTemplate, Map.class);
+                if (body != null) {
+                    body.put("source", "feign");
+                }
+                return body;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompositeFeignRequestInterceptorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.tideseng.springcloud.sample.openfeign.compress;
+
+import feign.Request;
+import feign.RequestTemplate;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RequestDecompressionFilter}的gzip解析（多成员、尾部校验、解压长度上限、identity）及与{@link RequestCompressionInterceptor}的配合
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class RequestDecompressionFilterTest {
+
+    private static final byte[] BODY = repeat("{\"id\":1,\"name\":\"instance\"}", 200);
+
+    @Test
+    public void singleMember() throws Exception {
+        assertArrayEquals(BODY, readBody(new RequestDecompressionFilter(), request("gzip", gzip(BODY))));
+    }
+
+    @Test
+    public void multipleMembers() throws Exception {
+        byte[] first = Arrays.copyOfRange(BODY, 0, 1000);
+        byte[] second = Arrays.copyOfRange(BODY, 1000, BODY.length);
+        assertArrayEquals(BODY, readBody(new RequestDecompressionFilter(), request("gzip", concat(gzip(first), gzip(second)))));
+    }
+
+    @Test(expected = ZipException.class)
+    public void corruptTrailer() throws Exception {
+        byte[] compressed = gzip(BODY);
+        // 修改CRC32
+        compressed[compressed.length - 8] ^= 0xff;
+        readBody(new RequestDecompressionFilter(), request("gzip", compressed));
+    }
+
+    @Test(expected = ZipException.class)
+    public void truncatedBody() throws Exception {
+        byte[] compressed = gzip(BODY);
+        readBody(new RequestDecompressionFilter(), request("gzip", Arrays.copyOf(compressed, compressed.length - 4)));
+    }
+
+    @Test
+    public void inflatedSizeLimit() throws Exception {
+        byte[] bomb = gzip(new byte[1024 * 1024]);
+        try {
+            readBody(new RequestDecompressionFilter(64 * 1024), request("gzip", bomb));
+            fail("inflated size limit is not enforced");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("exceeds"));
+        }
+    }
+
+    @Test
+    public void identityIsPassedThrough() throws Exception {
+        RequestDecompressionFilter filter = new RequestDecompressionFilter();
+        for (String encoding : new String[]{"identity", " Identity ", "identity, identity"}) {
+            MockHttpServletRequest request = request(encoding, BODY);
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, chain);
+            assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+            assertSame(request, chain.getRequest());
+        }
+        assertArrayEquals(BODY, readBody(filter, request("identity, gzip", gzip(BODY))));
+    }
+
+    @Test
+    public void stackedOrUnknownEncodingIsRejected() throws Exception {
+        RequestDecompressionFilter filter = new RequestDecompressionFilter();
+        for (String encoding : new String[]{"gzip, deflate", "br"}) {
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request(encoding, gzip(BODY)), response, chain);
+            assertEquals(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, response.getStatus());
+            assertNull(chain.getRequest());
+        }
+    }
+
+    @Test
+    public void roundTripWithCompressionInterceptor() throws Exception {
+        RequestDecompressionFilter filter = new RequestDecompressionFilter();
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            RequestTemplate template = template(BODY);
+            new RequestCompressionInterceptor(1024, encoding).apply(template);
+            assertEquals(encoding.getValue(), template.headers().get(ContentEncoding.HEADER).iterator().next());
+            byte[] compressed = template.requestBody().asBytes();
+            assertTrue(compressed.length < BODY.length);
+            assertArrayEquals(BODY, readBody(filter, request(encoding.getValue(), compressed)));
+        }
+    }
+
+    @Test
+    public void alreadyCompressedBodyIsNotCompressedAgain() throws Exception {
+        byte[] compressed = gzip(BODY);
+        RequestTemplate template = template(compressed);
+        new RequestCompressionInterceptor(16, ContentEncoding.GZIP).apply(template);
+        assertFalse(template.headers().containsKey(ContentEncoding.HEADER));
+        assertSame(compressed, template.requestBody().asBytes());
+    }
+
+    private static byte[] readBody(RequestDecompressionFilter filter, MockHttpServletRequest request) throws Exception {
+        byte[][] body = new byte[1][];
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, javax.servlet.ServletResponse response) throws IOException {
+                assertNull(((HttpServletRequest) request).getHeader(ContentEncoding.HEADER));
+                body[0] = StreamUtils.copyToByteArray(request.getInputStream());
+            }
+        });
+        return body[0];
+    }
+
+    private static MockHttpServletRequest request(String encoding, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/instance/list");
+        request.addHeader(ContentEncoding.HEADER, encoding);
+        request.setContentType("application/json");
+        request.setContent(body);
+        return request;
+    }
+
+    private static RequestTemplate template(byte[] body) {
+        RequestTemplate template = new RequestTemplate().method(Request.HttpMethod.POST).uri("/instance/list");
+        template.header("Content-Type", "application/json");
+        template.body(Request.Body.encoded(body, StandardCharsets.UTF_8));
+        return template;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.tideseng.springcloud.sample.openfeign.dispatch;
+
+import feign.Client;
+import feign.Contract;
+import feign.Feign;
+import feign.Headers;
+import feign.RequestInterceptor;
+import feign.RequestLine;
+import feign.Response;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比Feign默认的ReflectiveFeign与{@link PrecomputedInvocationHandlerFactory}的单次调用开销
+ *      Client直接返回固定响应，测量的是代理分发、请求模板展开（路径变量、param参数、请求头模板）、拦截器及解码，不含网络
+ *      两者的请求模板展开相同（均由Feign的SynchronousMethodHandler完成），差异只在方法分发
+ * 运行：执行main方法，或mvn test-compile后以org.openjdk.jmh.Main运行（需将test-classes加入classpath），加-prof gc查看每次调用的内存分配
+ * @author jiahuan
+ * @create 2022/6/23
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrecomputedDispatchBenchmark {
+
+    private static final byte[] BODY = "{\"id\":1,\"name\":\"instance\"}".getBytes(StandardCharsets.UTF_8);
+
+    private InstanceApi reflective;
+
+    private InstanceApi precomputed;
+
+    @Setup
+    public void setup() {
+        Client client = (request, options) -> Response.builder()
+                .status(200)
+                .request(request)
+                .headers(Collections.emptyMap())
+                .body(BODY)
+                .build();
+        RequestInterceptor interceptor = template -> template.header("Authorization", "Bearer xxx");
+        Contract contract = new Contract.Default();
+        reflective = Feign.builder()
+                .client(client)
+                .contract(contract)
+                .requestInterceptor(interceptor)
+                .target(InstanceApi.class, "http://data-model");
+        precomputed = Feign.builder()
+                .client(client)
+                .contract(contract)
+                .requestInterceptor(interceptor)
+                .invocationHandlerFactory(new PrecomputedInvocationHandlerFactory(contract))
+                .target(InstanceApi.class, "http://data-model");
+    }
+
+    @Benchmark
+    public String reflectiveFeign() {
+        return reflective.get(1L, "all", "tenant-1");
+    }
+
+    @Benchmark
+    public String precomputedDispatch() {
+        return precomputed.get(1L, "all", "tenant-1");
+    }
+
+    interface InstanceApi {
+
+        @RequestLine("GET /instance/{id}?type={type}")
+        @Headers("X-Tenant-Id: {tenant}")
+        String get(@feign.Param("id") Long id, @feign.Param("type") String type, @feign.Param("tenant") String tenant);
+
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PrecomputedDispatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
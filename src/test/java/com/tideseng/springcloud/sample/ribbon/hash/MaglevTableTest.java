@@ -0,0 +1,136 @@
+package com.tideseng.springcloud.sample.ribbon.hash;
+
+import com.netflix.loadbalancer.Server;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link MaglevTable}的槽位均衡、实例变化时的迁移比例及槽位数校验
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class MaglevTableTest {
+
+    private static final int SIZE = 65537;
+
+    @Test
+    public void slotsAreBalanced() {
+        MaglevTable table = MaglevTable.build(servers(0, 10), SIZE, new HashMap<>());
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : owners(table)) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        // 各实例轮流占用槽位，占用数最多相差1
+        assertTrue(Collections.max(counts.values()) - Collections.min(counts.values()) <= 1);
+    }
+
+    @Test
+    public void removingServerMovesFewOtherSlots() {
+        List<Server> servers = servers(0, 10);
+        String[] before = owners(MaglevTable.build(servers, SIZE, new HashMap<>()));
+        String removed = servers.remove(3).getHostPort();
+        String[] after = owners(MaglevTable.build(servers, SIZE, new HashMap<>()));
+        int owned = 0, moved = 0;
+        for (int slot = 0; slot < SIZE; slot++) {
+            if (before[slot].equals(removed)) {
+                owned++;
+                assertNotEquals(removed, after[slot]);
+            } else if (!before[slot].equals(after[slot])) {
+                moved++;
+            }
+        }
+        // 下线实例的槽位全部迁移，其余槽位只有少量改变归属
+        assertTrue(owned > 0);
+        assertTrue("moved " + moved + " slots of remaining servers", moved < SIZE / 50);
+    }
+
+    @Test
+    public void addingServerTakesFairShare() {
+        String[] before = owners(MaglevTable.build(servers(0, 10), SIZE, new HashMap<>()));
+        String[] after = owners(MaglevTable.build(servers(0, 11), SIZE, new HashMap<>()));
+        int moved = 0;
+        for (int slot = 0; slot < SIZE; slot++) {
+            if (!before[slot].equals(after[slot])) {
+                moved++;
+            }
+        }
+        // 新实例占用约1/11的槽位，其余迁移很少
+        assertTrue("moved " + moved + " slots", moved < SIZE / 11 + SIZE / 50);
+    }
+
+    @Test
+    public void tableDoesNotDependOnServerOrder() {
+        List<Server> servers = servers(0, 8);
+        String[] sorted = owners(MaglevTable.build(servers, SIZE, new HashMap<>()));
+        Collections.reverse(servers);
+        assertArrayEquals(sorted, owners(MaglevTable.build(servers, SIZE, new HashMap<>())));
+    }
+
+    @Test
+    public void lookupSkipsDeadAndExcludedServers() {
+        List<Server> servers = servers(0, 3);
+        MaglevTable table = MaglevTable.build(servers, 7, new HashMap<>());
+        String first = table.lookup(0, null).getHostPort();
+        assertNotEquals(first, table.lookup(0, first).getHostPort());
+        for (Server server : servers) {
+            if (server.getHostPort().equals(first)) {
+                server.setAlive(false);
+            }
+        }
+        assertNotEquals(first, table.lookup(0, null).getHostPort());
+        for (Server server : servers) {
+            server.setAlive(false);
+        }
+        assertNull(table.lookup(0, null));
+    }
+
+    @Test
+    public void nonPrimeSizeIsRejected() {
+        for (int size : new int[]{0, 1, 4, 9, 65536, 65535}) {
+            try {
+                MaglevTable.build(servers(0, 1), size, new HashMap<>());
+                fail("size " + size + " is accepted");
+            } catch (IllegalArgumentException e) {
+                // 预期
+            }
+        }
+        try {
+            new ConsistentHashRule(65536);
+            fail("size 65536 is accepted");
+        } catch (IllegalArgumentException e) {
+            // 预期
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeNotLargerThanServerCountIsRejected() {
+        MaglevTable.build(servers(0, 7), 7, new HashMap<>());
+    }
+
+    private static String[] owners(MaglevTable table) {
+        String[] owners = new String[SIZE];
+        for (int slot = 0; slot < SIZE; slot++) {
+            owners[slot] = table.lookup(slot, null).getHostPort();
+        }
+        return owners;
+    }
+
+    private static List<Server> servers(int from, int to) {
+        List<Server> servers = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Server server = new Server("10.0.0." + i, 8080);
+            server.setAlive(true);
+            servers.add(server);
+        }
+        return servers;
+    }
+
+}
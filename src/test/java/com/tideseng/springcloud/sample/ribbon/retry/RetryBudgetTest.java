@@ -0,0 +1,73 @@
+package com.tideseng.springcloud.sample.ribbon.retry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RetryBudget}按请求量存入令牌、令牌上限及每秒保底的重试次数
+ * @author jiahuan
+ * @create 2022/7/6
+ */
+public class RetryBudgetTest {
+
+    @Test
+    public void depositsRatioPerRequest() {
+        RetryBudget budget = new RetryBudget(0.1, 0, 100);
+        assertFalse(budget.tryWithdraw());
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+        }
+        // 9个请求只存入0.9个令牌
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertEquals(1.0, budget.getBalance(), 1e-9);
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        assertEquals(0.0, budget.getBalance(), 1e-9);
+    }
+
+    @Test
+    public void balanceIsCapped() {
+        RetryBudget budget = new RetryBudget(1, 0, 5);
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertEquals(5.0, budget.getBalance(), 1e-9);
+        int withdrawn = 0;
+        while (budget.tryWithdraw()) {
+            withdrawn++;
+        }
+        assertEquals(5, withdrawn);
+    }
+
+    @Test
+    public void minRetriesPerSecondWithoutBalance() {
+        RetryBudget budget = new RetryBudget(0.1, 2, 100);
+        assertTrue(budget.tryWithdraw());
+        int withdrawn = 1;
+        for (int i = 0; i < 100; i++) {
+            if (budget.tryWithdraw()) {
+                withdrawn++;
+            }
+        }
+        // 循环期间最多跨过一次秒的边界
+        assertTrue(withdrawn >= 2 && withdrawn <= 4);
+        assertEquals(0.0, budget.getBalance(), 1e-9);
+    }
+
+    @Test
+    public void zeroRatioOnlyAllowsMinRetries() {
+        RetryBudget budget = new RetryBudget(0, 0, 100);
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeRatioIsRejected() {
+        new RetryBudget(-0.1, 10, 100);
+    }
+
+}